@@ -0,0 +1,63 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decision throughput of each engine through RateLimiterServiceImpl, over uniformly spread keys.
+ * Pair with {@link KeyMemoryBenchmark} for the Redis memory cost of each algorithm.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AlgorithmBenchmark {
+
+    private static final int KEY_COUNT = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Policy {
+
+        @Param({"token_bucket", "gcra", "sliding_window", "fixed_window", "local_token_bucket"})
+        public String algorithm;
+
+        String[] identifiers;
+        RateLimitConfig config;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            identifiers = new String[KEY_COUNT];
+            for (int i = 0; i < KEY_COUNT; i++) {
+                identifiers[i] = "bench:" + algorithm + ":" + i;
+            }
+            config = new RateLimitConfig(1_000_000, 1_000_000, 1);
+            config.setAlgorithm(algorithm);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+    }
+
+    @Benchmark
+    public RateLimitResult checkRateLimit(RedisBenchmarkState redis, Policy policy, Cursor cursor) {
+        String identifier = policy.identifiers[cursor.position++ % KEY_COUNT];
+        return redis.rateLimiterServiceImpl.checkRateLimit(identifier, policy.config);
+    }
+}
@@ -0,0 +1,26 @@
+package com.ratelimiter.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.RateLimiterApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+
+/**
+ * The rate limiter beans without auto-configuration or the web layer, so that only the
+ * decision path is measured.
+ */
+@Configuration
+@EnableConfigurationProperties
+@ComponentScan(basePackages = "com.ratelimiter",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                classes = RateLimiterApplication.class))
+public class BenchmarkConfiguration {
+
+    @Bean
+    public ObjectMapper objectMapper() {
+        return new ObjectMapper();
+    }
+}
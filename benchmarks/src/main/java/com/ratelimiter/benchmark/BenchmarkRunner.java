@@ -0,0 +1,40 @@
+package com.ratelimiter.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks at 1, 8 and 64 threads with the GC profiler attached, writing
+ * one JSON result file per thread count. Any standard JMH option (benchmark regex, -p, -f, ...)
+ * can be passed through, e.g.
+ *
+ * <pre>
+ *   java -jar target/benchmarks.jar DecisionBenchmark -p spread=ZIPF
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 8, 64};
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        for (int threads : THREAD_COUNTS) {
+            OptionsBuilder options = new OptionsBuilder();
+            options.parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "t.json");
+            if (commandLine.getIncludes().isEmpty()) {
+                options.include(DecisionBenchmark.class.getSimpleName());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
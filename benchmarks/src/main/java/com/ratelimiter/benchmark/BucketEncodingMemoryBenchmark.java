@@ -0,0 +1,106 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.service.BucketEncoding;
+import com.ratelimiter.service.RedisKeys;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Redis memory per token bucket for each storage layout: both bucket encodings, with the
+ * identifier in the key as is and hashed to 16 characters. Writes N buckets under long,
+ * API-key style identifiers with the token bucket script of the encoding, pipelined, and reports
+ * the growth of {@code used_memory} divided by the keys held. Active expiry is switched off
+ * while measuring, so keys outliving their TTL during a long run still count.
+ *
+ * <pre>
+ *   java -Dbenchmark.redis.maxmemory=4gb -cp target/benchmarks.jar \
+ *       com.ratelimiter.benchmark.BucketEncodingMemoryBenchmark [keys] [encoding...]
+ * </pre>
+ */
+public class BucketEncodingMemoryBenchmark {
+
+    private static final int PIPELINE_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        List<String> encodings = args.length > 1
+                ? List.of(args).subList(1, args.length)
+                : List.of("hash", "packed");
+
+        System.out.printf("%-10s %-8s %12s %10s %14s %12s%n", "encoding", "keys", "count", "key bytes", "bytes/key", "writes/s");
+        for (String encoding : encodings) {
+            for (boolean hashed : new boolean[]{false, true}) {
+                RedisBenchmarkState redis = new RedisBenchmarkState();
+                redis.setUp("--rate-limiter.bucket-encoding=" + encoding, "--rate-limiter.hashed-keys=" + hashed);
+                try {
+                    Result result = measure(redis, keyCount);
+                    System.out.printf("%-10s %-8s %12d %10d %14.1f %12.0f%n", encoding, hashed ? "hashed" : "plain",
+                            result.keys, result.keyBytes, result.bytesPerKey, result.writesPerSecond);
+                    if (result.keys < keyCount) {
+                        System.out.printf("  %d keys evicted: raise -Dbenchmark.redis.maxmemory (now %s)%n",
+                                keyCount - result.keys, RedisBenchmarkState.REDIS_MAXMEMORY);
+                    }
+                } finally {
+                    redis.tearDown();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Result measure(RedisBenchmarkState redis, int keyCount) {
+        RedisTemplate<String, String> redisTemplate = redis.getBean(RedisTemplate.class);
+        BucketEncoding encoding = redis.getBean(RateLimiterProperties.class).getBucketEncoding();
+        byte[] sha = bytes(encoding.tokenBucket().getSha1());
+        byte[][] args = {
+                bytes("100"), bytes("10"), bytes("60000"), bytes(String.valueOf(System.currentTimeMillis())), bytes("1")};
+
+        KeyMemoryBenchmark.flush(redisTemplate);
+        redisTemplate.execute((RedisConnection connection) ->
+                connection.execute("DEBUG", bytes("SET-ACTIVE-EXPIRE"), bytes("0")));
+        long before = KeyMemoryBenchmark.usedMemory(redisTemplate);
+        long start = System.nanoTime();
+
+        // Spring's Jedis connection does not pipeline scripts: go through the native client
+        redisTemplate.execute((RedisConnection connection) -> {
+            Jedis jedis = (Jedis) connection.getNativeConnection();
+            for (int from = 0; from < keyCount; from += PIPELINE_SIZE) {
+                Pipeline pipeline = jedis.pipelined();
+                for (int i = from; i < Math.min(keyCount, from + PIPELINE_SIZE); i++) {
+                    byte[][] keysAndArgs = new byte[1 + args.length][];
+                    keysAndArgs[0] = bytes(RedisKeys.key(identifier(i)));
+                    System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+                    pipeline.evalsha(sha, 1, keysAndArgs);
+                }
+                pipeline.sync();
+            }
+            return null;
+        });
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long keys = redisTemplate.execute((RedisConnection connection) -> connection.serverCommands().dbSize());
+        long bytes = KeyMemoryBenchmark.usedMemory(redisTemplate) - before;
+        return new Result(keys, RedisKeys.key(identifier(keyCount - 1)).length(),
+                keys > 0 ? (double) bytes / keys : 0, keyCount / seconds);
+    }
+
+    /**
+     * About 50 characters, as for API keys scoped by tenant.
+     */
+    static String identifier(int i) {
+        return "tenant-" + (i % 1000) + ":api-key:" + String.format("%032x", i);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    record Result(long keys, int keyBytes, double bytesPerKey, double writesPerSecond) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.service.RateLimiterServiceImpl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Platform vs virtual thread serving at 1k and 10k concurrent clients. Clients are virtual
+ * threads issuing checks back to back; each check is handed to the "server" executor the way
+ * Tomcat would: a 200-thread platform pool with the default fail-fast Jedis pool, or one virtual
+ * thread per request with the 'virtual-threads' profile (fair, blocking Jedis pool). Latency
+ * includes time spent queued for a server thread or a connection.
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.ratelimiter.benchmark.ConcurrentClientsBenchmark [seconds]
+ * </pre>
+ */
+public class ConcurrentClientsBenchmark {
+
+    private static final int[] CLIENT_COUNTS = {1_000, 10_000};
+    private static final int PLATFORM_SERVER_THREADS = 200;
+    private static final int SAMPLES_PER_CLIENT = 256;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+        System.out.printf("%-10s %8s %12s %10s %10s %10s %10s%n",
+                "mode", "clients", "ops/s", "errors", "p50 ms", "p99 ms", "p99.9 ms");
+        for (String mode : List.of("platform", "virtual")) {
+            RedisBenchmarkState redis = new RedisBenchmarkState();
+            if (mode.equals("virtual")) {
+                redis.setUp("--spring.profiles.active=virtual-threads");
+            } else {
+                redis.setUp();
+            }
+            try {
+                for (int clients : CLIENT_COUNTS) {
+                    ExecutorService server = mode.equals("virtual")
+                            ? Executors.newVirtualThreadPerTaskExecutor()
+                            : Executors.newFixedThreadPool(PLATFORM_SERVER_THREADS);
+                    try {
+                        run(mode, redis.rateLimiterServiceImpl, server, clients, seconds);
+                    } finally {
+                        server.shutdownNow();
+                    }
+                }
+            } finally {
+                redis.tearDown();
+            }
+        }
+    }
+
+    private static void run(String mode, RateLimiterServiceImpl service, ExecutorService server,
+                            int clients, int seconds) throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(1_000_000, 1_000_000, 1);
+        long[][] samples = new long[clients][SAMPLES_PER_CLIENT];
+        int[] sampleCounts = new int[clients];
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                clientThreads.submit(() -> {
+                    String identifier = "clients:" + client;
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            Future<?> check = server.submit(() -> service.checkRateLimit(identifier, config));
+                            try {
+                                check.get();
+                                completed.increment();
+                            } catch (Exception e) {
+                                errors.increment();
+                            }
+                            samples[client][sampleCounts[client]++ % SAMPLES_PER_CLIENT] = System.nanoTime() - start;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+
+        long[] latencies = Arrays.stream(samples)
+                .flatMapToLong(Arrays::stream)
+                .filter(latency -> latency > 0)
+                .sorted()
+                .toArray();
+        System.out.printf("%-10s %8d %12.0f %10d %10.2f %10.2f %10.2f%n",
+                mode, clients, completed.sum() / (double) seconds, errors.sum(),
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(quantile * sorted.length))] / 1e6;
+    }
+}
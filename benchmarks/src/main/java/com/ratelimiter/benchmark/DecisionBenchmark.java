@@ -0,0 +1,78 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit decisions through each entry point against embedded Redis.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DecisionBenchmark {
+
+    private static final int KEY_COUNT = 100_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        @Param({"SINGLE", "UNIFORM", "ZIPF"})
+        public KeySpread spread;
+
+        String[] identifiers;
+        RateLimitConfig config;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            identifiers = new String[KEY_COUNT];
+            for (int i = 0; i < KEY_COUNT; i++) {
+                identifiers[i] = "bench:" + spread.name().toLowerCase() + ":" + i;
+            }
+            // Large enough that most decisions are allowed and every one writes
+            config = new RateLimitConfig(1_000_000, 1_000_000, 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(Keys keys, ThreadParams threadParams) {
+            sequence = keys.spread.sequence(KEY_COUNT, SEQUENCE_LENGTH, threadParams.getThreadIndex());
+        }
+
+        String next(Keys keys) {
+            return keys.identifiers[sequence[position++ & (SEQUENCE_LENGTH - 1)]];
+        }
+    }
+
+    @Benchmark
+    public RateLimitResult rateLimiterServiceImpl(RedisBenchmarkState redis, Keys keys, Cursor cursor) {
+        return redis.rateLimiterServiceImpl.checkRateLimit(cursor.next(keys), keys.config);
+    }
+
+    @Benchmark
+    public RateLimitResult tokenBucketRateLimiter(RedisBenchmarkState redis, Keys keys, Cursor cursor) {
+        return redis.tokenBucketRateLimiter.isAllowed(cursor.next(keys), keys.config);
+    }
+}
@@ -0,0 +1,97 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.service.RateLimiterServiceImpl;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Redis memory per key for each Redis-backed algorithm: writes N distinct keys through the
+ * normal decision path and reports the growth of {@code used_memory} divided by N, plus the
+ * write throughput. Not a JMH benchmark, since the measured quantity is Redis state.
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.ratelimiter.benchmark.KeyMemoryBenchmark [keys] [algorithm...]
+ * </pre>
+ */
+public class KeyMemoryBenchmark {
+
+    private static final int THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<String> algorithms = args.length > 1
+                ? List.of(args).subList(1, args.length)
+                : List.of("token_bucket", "gcra", "sliding_window", "fixed_window");
+
+        RedisBenchmarkState redis = new RedisBenchmarkState();
+        redis.setUp();
+        try {
+            System.out.printf("%-20s %12s %14s %12s%n", "algorithm", "keys", "bytes/key", "ops/s");
+            for (String algorithm : algorithms) {
+                Result result = measure(redis, algorithm, keyCount);
+                System.out.printf("%-20s %12d %14.1f %12.0f%n",
+                        algorithm, result.keys, result.bytesPerKey, result.opsPerSecond);
+            }
+        } finally {
+            redis.tearDown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Result measure(RedisBenchmarkState redis, String algorithm, int keyCount) throws Exception {
+        RedisTemplate<String, String> redisTemplate = redis.getBean(RedisTemplate.class);
+        RateLimiterServiceImpl service = redis.rateLimiterServiceImpl;
+        RateLimitConfig config = new RateLimitConfig(100, 10, 3600);
+        config.setAlgorithm(algorithm);
+
+        flush(redisTemplate);
+        long before = usedMemory(redisTemplate);
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = thread; i < keyCount; i += THREADS) {
+                        service.checkRateLimit("memory:" + algorithm + ":" + i, config);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long keys = redisTemplate.execute((RedisConnection connection) -> connection.serverCommands().dbSize());
+        long bytes = usedMemory(redisTemplate) - before;
+        return new Result(keys, keys > 0 ? (double) bytes / keys : 0, keyCount / seconds);
+    }
+
+    static void flush(RedisTemplate<String, String> redisTemplate) {
+        redisTemplate.execute((RedisConnection connection) -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    static long usedMemory(RedisTemplate<String, String> redisTemplate) {
+        Properties info = redisTemplate.execute((RedisConnection connection) -> connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    record Result(long keys, double bytesPerKey, double opsPerSecond) {
+    }
+}
@@ -0,0 +1,56 @@
+package com.ratelimiter.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * How benchmark requests are spread over identifiers. Sequences are precomputed so the
+ * measured loop only does an array lookup.
+ */
+public enum KeySpread {
+
+    /** Every thread hits the same identifier: worst-case contention on one key */
+    SINGLE {
+        @Override
+        int[] sequence(int keyCount, int length, long seed) {
+            return new int[length];
+        }
+    },
+
+    /** Identifiers drawn uniformly from the key space */
+    UNIFORM {
+        @Override
+        int[] sequence(int keyCount, int length, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = random.nextInt(keyCount);
+            }
+            return sequence;
+        }
+    },
+
+    /** Zipf-distributed identifiers (s = 1.1): a few hot keys and a long tail */
+    ZIPF {
+        @Override
+        int[] sequence(int keyCount, int length, long seed) {
+            double[] cumulative = new double[keyCount];
+            double sum = 0;
+            for (int rank = 0; rank < keyCount; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                cumulative[rank] = sum;
+            }
+
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                int index = java.util.Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                sequence[i] = Math.min(index >= 0 ? index : -index - 1, keyCount - 1);
+            }
+            return sequence;
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    abstract int[] sequence(int keyCount, int length, long seed);
+}
@@ -0,0 +1,81 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.service.DecisionMetricsPipeline;
+import com.ratelimiter.service.LocalTokenBucketEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording decision metrics relative to the cheapest decision there is, an in-process
+ * token bucket. Redis-backed decisions cost one to two orders of magnitude more, so the relative
+ * overhead there is smaller still.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        LocalTokenBucketEngine engine;
+        DecisionMetricsPipeline metrics;
+        RateLimitConfig config;
+        String[] identifiers;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            engine = new LocalTokenBucketEngine(new RateLimiterProperties());
+            metrics = new DecisionMetricsPipeline(new SimpleMeterRegistry());
+            metrics.start();
+            config = new RateLimitConfig(1_000_000, 1_000_000, 1);
+            config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+            identifiers = new String[1024];
+            for (int i = 0; i < identifiers.length; i++) {
+                identifiers[i] = "bench:metrics:" + i;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            metrics.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+    }
+
+    @Benchmark
+    public RateLimitResult decision(Pipeline pipeline, Cursor cursor) {
+        return pipeline.engine.checkRateLimit(pipeline.identifiers[cursor.position++ & 1023], pipeline.config);
+    }
+
+    @Benchmark
+    public RateLimitResult decisionWithMetrics(Pipeline pipeline, Cursor cursor) {
+        long start = System.nanoTime();
+        RateLimitResult result = pipeline.engine.checkRateLimit(pipeline.identifiers[cursor.position++ & 1023], pipeline.config);
+        pipeline.metrics.record(pipeline.config.getPolicy(), pipeline.config.getAlgorithm(), result.isAllowed(), System.nanoTime() - start);
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.service.RateLimiterServiceImpl;
+import com.ratelimiter.service.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.util.stream.Stream;
+
+/**
+ * Embedded Redis plus the rate limiter beans, shared by all benchmark threads of a trial.
+ */
+@State(Scope.Benchmark)
+public class RedisBenchmarkState {
+
+    public static final int REDIS_PORT = Integer.getInteger("benchmark.redis.port", 6390);
+    public static final String REDIS_MAXMEMORY = System.getProperty("benchmark.redis.maxmemory", "1gb");
+
+    private RedisServer redisServer;
+    private ConfigurableApplicationContext context;
+
+    public RateLimiterServiceImpl rateLimiterServiceImpl;
+    public TokenBucketRateLimiter tokenBucketRateLimiter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUp(new String[0]);
+    }
+
+    /**
+     * @param extraArgs additional Spring command line arguments, e.g. {@code --spring.profiles.active=...}
+     */
+    public void setUp(String... extraArgs) {
+        redisServer = RedisServer.builder()
+                .port(REDIS_PORT)
+                .setting("maxmemory " + REDIS_MAXMEMORY)
+                .setting("save \"\"")
+                .build();
+        redisServer.start();
+
+        context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(Stream.of(
+                        "--spring.data.redis.port=" + REDIS_PORT,
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.ratelimiter=WARN",
+                        "--logging.level.org.springframework.data.redis=WARN"), Stream.of(extraArgs))
+                        .toArray(String[]::new));
+
+        rateLimiterServiceImpl = context.getBean(RateLimiterServiceImpl.class);
+        tokenBucketRateLimiter = context.getBean(TokenBucketRateLimiter.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ratelimiter.benchmark;
+
+import com.ratelimiter.service.TokenBucketRateLimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Achieved against configured refill rate of one Redis token bucket under a steady offered load
+ * well above it, 10k requests per second by default. After the initial burst, every allowed
+ * request must be paid for by refill, so the allowed rate should equal the configured one; refill
+ * rounding shows up as a shortfall. Not a JMH benchmark: it measures the limiter, not its cost.
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar com.ratelimiter.benchmark.RefillAccuracyBenchmark [seconds] [offered/s] [rate/s...]
+ * </pre>
+ */
+public class RefillAccuracyBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int CAPACITY = 10;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int offered = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        List<Integer> rates = args.length > 2
+                ? List.of(args).subList(2, args.length).stream().map(Integer::valueOf).toList()
+                : List.of(7, 1_500, 2_500, 7_500);
+
+        RedisBenchmarkState redis = new RedisBenchmarkState();
+        redis.setUp();
+        try {
+            System.out.printf("%10s %10s %12s %12s %9s%n", "rate/s", "offered/s", "sent/s", "allowed/s", "error");
+            for (int rate : rates) {
+                Result result = measure(redis.tokenBucketRateLimiter, "accuracy:" + rate, rate, offered, seconds);
+                System.out.printf("%10d %10d %12.1f %12.1f %8.2f%%%n", rate, offered,
+                        result.sentPerSecond, result.allowedPerSecond, 100.0 * (result.allowedPerSecond - rate) / rate);
+            }
+        } finally {
+            redis.tearDown();
+        }
+    }
+
+    /**
+     * Offers {@code offered} requests per second, spread evenly over the threads, for the given time.
+     */
+    static Result measure(TokenBucketRateLimiter rateLimiter, String identifier, int rate, int offered, int seconds)
+            throws Exception {
+        rateLimiter.resetRateLimit(identifier);
+        Duration window = Duration.ofSeconds(1);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong allowed = new AtomicLong();
+        long intervalNanos = 1_000_000_000L * THREADS / offered;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long offset = intervalNanos * t / THREADS;
+                futures.add(executor.submit(() -> {
+                    // Paced against a fixed schedule, so a slow call is caught up on rather than lost
+                    for (long next = start + offset; next < end; next += intervalNanos) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        sent.incrementAndGet();
+                        if (rateLimiter.isAllowed(identifier, CAPACITY, rate, window, 1).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        // The initial burst is not refill
+        return new Result(sent.get() / elapsed, (allowed.get() - CAPACITY) / elapsed);
+    }
+
+    record Result(double sentPerSecond, double allowedPerSecond) {
+    }
+}
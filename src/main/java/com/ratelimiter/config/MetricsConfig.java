@@ -1,23 +1,15 @@
 package com.ratelimiter.config;
 
-import io.micrometer.core.aop.TimedAspect;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
-import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
-@EnableConfigurationProperties(RateLimiterProperties.class)
 public class MetricsConfig {
     
     @Bean
     public MeterRegistry meterRegistry() {
         return new SimpleMeterRegistry();
     }
-    
-    @Bean
-    public TimedAspect timedAspect(MeterRegistry registry) {
-        return new TimedAspect(registry);
-    }
 } 
\ No newline at end of file
@@ -1,9 +1,14 @@
 package com.ratelimiter.config;
 
+import com.ratelimiter.model.RateLimitTier;
+import com.ratelimiter.service.BucketEncoding;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "rate-limiter")
@@ -15,7 +20,74 @@ public class RateLimiterProperties {
     private String redisHost = "localhost";
     private int redisPort = 6379;
     private boolean enabled = true;
+    // Idle local buckets are dropped after this, checked every rate-limiter.local-bucket-sweep-interval-ms
+    private long localBucketIdleTimeoutMs = 3_600_000;
+
+    // Hot keys: identifiers above hotKeyThreshold requests per decay interval are served from a lease
+    private int hotKeyTopK = 32;
+    private long hotKeyThreshold = 1000;
+    private int hotKeyLeaseSize = 20;
+    private long hotKeyLeaseTtlMs = 250;
+
+    // Active keys are counted per window in a HyperLogLog; the LRU sample (0 disables) is for monitoring only
+    private long activeKeyWindowMs = 300_000;
+    private int activeKeySampleSize = 1024;
+
+    // Denied identifiers are rejected locally until their next token is due
+    private boolean deniedCacheEnabled = true;
+    private int deniedCacheMaxEntries = 100_000;
+
+    // Per-shard circuit breaker over the last circuitWindowSize calls; slow calls count as failures
+    private int circuitWindowSize = 20;
+    private int circuitMinimumCalls = 10;
+    private int circuitFailureRatePercent = 50;
+    private long circuitSlowCallMs = 250;
+    private long circuitOpenMs = 1000;
+
+    // Nodes sharing a policy while Redis is down; 0 uses the nodes seen publishing metrics
+    private int fallbackNodeCount = 0;
+
+    // Server-side policies: the first matching rule of the most specific pattern wins, else the defaults
+    private Defaults defaults = new Defaults();
+    private List<Policy> policies = new ArrayList<>();
+    private int policyCacheMaxEntries = 100_000;
+    // Whether a config sent by the client may override the matched policy
+    private boolean allowClientConfig = false;
+
+    // Keys per SCAN step and per pipelined HMGET round trip of the bulk status scan
+    private int statusScanBatchSize = 500;
+
+    // Token bucket storage: "hash" (readable fields) or "packed" (one 16 byte string per bucket)
+    private BucketEncoding bucketEncoding = BucketEncoding.HASH;
+    // Replace identifiers in keys by a 16 character hash; the status scan then cannot match or report them
+    private boolean hashedKeys = false;
 
     // You can add more configuration properties as needed
     // Spring will automatically map from application.yml/properties
+
+    @Data
+    public static class Defaults {
+        private int requestsPerMinute = 100;
+        private int burstCapacity = 20;
+        private int windowSize = 60; // in seconds
+        private String algorithm = "token_bucket";
+    }
+
+    /**
+     * A named policy and the identifier patterns it applies to. A pattern is matched literally
+     * except for {@code *}, which matches any run of characters, e.g. {@code api:free:*}.
+     */
+    @Data
+    public static class Policy {
+        private String name;
+        private List<String> match = new ArrayList<>();
+        private int capacity = 10;
+        private int refillRate = 1;
+        private int window = 60; // in seconds
+        private String algorithm = "token_bucket";
+        private String failureMode = "local";
+        private int leaseSize = 0;
+        private long leaseTtlMs = 1000;
+        private List<RateLimitTier> tiers;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.ratelimiter.config;
+
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Lettuce connection for the reactive check path. Lettuce multiplexes every in-flight command
+ * over one shared connection, so no pool is configured and callers never wait for a connection.
+ * Client-side shards are not routed here: the two cannot be combined.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "rate-limiter.reactive", name = "enabled", havingValue = "true")
+public class ReactiveRedisConfig {
+
+    @Value("${spring.data.redis.host:localhost}")
+    private String redisHost;
+
+    @Value("${spring.data.redis.port:6379}")
+    private int redisPort;
+
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private List<String> clusterNodes;
+
+    @Value("${spring.data.redis.cluster.max-redirects:3}")
+    private int maxRedirects;
+
+    @Value("${rate-limiter.shards:}")
+    private List<String> shards;
+
+    @Value("${spring.data.redis.timeout:300}")
+    private int timeout;
+
+    @Bean
+    public LettuceConnectionFactory reactiveRedisConnectionFactory() {
+        if (!shards.isEmpty()) {
+            // Every reactive check would land on spring.data.redis.host, apart from the blocking path's shards
+            throw new IllegalStateException(
+                    "rate-limiter.reactive.enabled cannot be combined with rate-limiter.shards; use Redis Cluster instead");
+        }
+        LettuceConnectionFactory factory;
+        if (!clusterNodes.isEmpty()) {
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(clusterNodes);
+            clusterConfig.setMaxRedirects(maxRedirects);
+            // Refresh the slot map on MOVED/ASK redirects and reconnects instead of waiting for a periodic poll
+            ClusterClientOptions clientOptions = ClusterClientOptions.builder()
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enableAllAdaptiveRefreshTriggers()
+                            .build())
+                    .build();
+            LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+                    .commandTimeout(Duration.ofMillis(timeout))
+                    .clientOptions(clientOptions)
+                    .build();
+            factory = new LettuceConnectionFactory(clusterConfig, clientConfig);
+        } else {
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, redisPort);
+            LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+                    .commandTimeout(Duration.ofMillis(timeout))
+                    .build();
+            factory = new LettuceConnectionFactory(config, clientConfig);
+        }
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+
+    @Bean
+    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(LettuceConnectionFactory reactiveRedisConnectionFactory) {
+        return new ReactiveStringRedisTemplate(reactiveRedisConnectionFactory);
+    }
+}
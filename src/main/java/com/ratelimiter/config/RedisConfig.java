@@ -1,17 +1,32 @@
 package com.ratelimiter.config;
 
+import com.ratelimiter.service.PolicyStore;
+import com.ratelimiter.service.RedisCircuitBreaker;
+import com.ratelimiter.service.RedisKeys;
+import com.ratelimiter.service.RedisShardRouter;
+import com.ratelimiter.service.ShaScriptExecutor;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 @Configuration
 public class RedisConfig {
 
@@ -21,7 +36,16 @@ public class RedisConfig {
     @Value("${spring.data.redis.port:6379}")
     private int redisPort;
 
-    @Value("${spring.data.redis.timeout:2000}")
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private List<String> clusterNodes;
+
+    @Value("${spring.data.redis.cluster.max-redirects:3}")
+    private int maxRedirects;
+
+    @Value("${rate-limiter.shards:}")
+    private List<String> shards;
+
+    @Value("${spring.data.redis.timeout:300}")
     private int timeout;
 
     @Value("${spring.data.redis.jedis.pool.max-active:50}")
@@ -33,6 +57,12 @@ public class RedisConfig {
     @Value("${spring.data.redis.jedis.pool.min-idle:5}")
     private int minIdle;
 
+    @Value("${spring.data.redis.jedis.pool.max-wait:2000}")
+    private long maxWait;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Bean
     public JedisPoolConfig jedisPoolConfig() {
         JedisPoolConfig poolConfig = new JedisPoolConfig();
@@ -42,12 +72,31 @@ public class RedisConfig {
         poolConfig.setTestOnBorrow(true);
         poolConfig.setTestOnReturn(true);
         poolConfig.setTestWhileIdle(true);
-        poolConfig.setBlockWhenExhausted(false);
+        // Spring Boot ignores spring.threads.virtual.enabled below Java 21: requests stay on platform threads
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            // Thousands of virtual threads share the pool: queue FIFO for a connection instead of failing fast
+            poolConfig.setBlockWhenExhausted(true);
+            poolConfig.setFairness(true);
+            poolConfig.setMaxWait(Duration.ofMillis(maxWait));
+        } else {
+            poolConfig.setBlockWhenExhausted(false);
+        }
         return poolConfig;
     }
 
     @Bean
+    @Primary
     public RedisConnectionFactory redisConnectionFactory() {
+        if (!clusterNodes.isEmpty()) {
+            // Slot-aware: Jedis keeps the slot map and sends each command to the node owning its key
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(clusterNodes);
+            clusterConfig.setMaxRedirects(maxRedirects);
+
+            JedisConnectionFactory factory = new JedisConnectionFactory(clusterConfig, jedisPoolConfig());
+            factory.setTimeout(timeout);
+            return factory;
+        }
+
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
         config.setHostName(redisHost);
         config.setPort(redisPort);
@@ -58,84 +107,81 @@ public class RedisConfig {
         return factory;
     }
 
+    /**
+     * Applies rate-limiter.hashed-keys to {@link RedisKeys}. Every bean that builds keys reaches
+     * Redis through the template or the shard router, which both depend on this one.
+     */
+    @Bean
+    public InitializingBean redisKeysInitializer(RateLimiterProperties properties) {
+        return () -> RedisKeys.setHashedKeys(properties.isHashedKeys());
+    }
+
     @Bean
+    @DependsOn("redisKeysInitializer")
     public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, String> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new StringRedisSerializer());
-        return template;
+        return stringTemplate(connectionFactory);
     }
 
-    // Lua script for Token Bucket algorithm
+    /**
+     * Client-side sharding over the standalone nodes in rate-limiter.shards (host:port each).
+     * Without shards every key goes to the primary connection. Each shard gets its own circuit breaker.
+     */
     @Bean
-    public DefaultRedisScript<Long> tokenBucketScript() {
-        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-        script.setScriptText("""
-            local key = KEYS[1]
-            local capacity = tonumber(ARGV[1])
-            local tokens = tonumber(ARGV[2])
-            local interval = tonumber(ARGV[3])
-            local requested = tonumber(ARGV[4])
-            local now = tonumber(ARGV[5])
-            
-            local bucket = redis.call('HMGET', key, 'tokens', 'last_refill')
-            local current_tokens = tonumber(bucket[1])
-            local last_refill = tonumber(bucket[2])
-            
-            if current_tokens == nil then
-                current_tokens = capacity
-                last_refill = now
-            end
-            
-            -- Calculate tokens to add based on time elapsed
-            local elapsed = math.max(0, now - last_refill)
-            local tokens_to_add = math.floor(elapsed / interval * tokens)
-            current_tokens = math.min(capacity, current_tokens + tokens_to_add)
-            
-            if current_tokens >= requested then
-                current_tokens = current_tokens - requested
-                redis.call('HMSET', key, 'tokens', current_tokens, 'last_refill', now)
-                redis.call('EXPIRE', key, interval * 2)
-                return {1, current_tokens}
-            else
-                redis.call('HMSET', key, 'tokens', current_tokens, 'last_refill', now)
-                redis.call('EXPIRE', key, interval * 2)
-                return {0, current_tokens}
-            end
-        """);
-        script.setResultType(Long.class);
-        return script;
+    @DependsOn("redisKeysInitializer")
+    public RedisShardRouter redisShardRouter(RedisTemplate<String, String> redisTemplate,
+                                             RateLimiterProperties properties) {
+        Supplier<RedisCircuitBreaker> breakers = () -> new RedisCircuitBreaker(
+                properties.getCircuitWindowSize(),
+                properties.getCircuitMinimumCalls(),
+                properties.getCircuitFailureRatePercent(),
+                properties.getCircuitSlowCallMs(),
+                properties.getCircuitOpenMs());
+        if (shards.isEmpty()) {
+            return new RedisShardRouter(List.of(redisTemplate), List.of(), breakers);
+        }
+
+        List<RedisTemplate<String, String>> templates = new ArrayList<>();
+        List<JedisConnectionFactory> factories = new ArrayList<>();
+        for (String shard : shards) {
+            int separator = shard.lastIndexOf(':');
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                    shard.substring(0, separator), Integer.parseInt(shard.substring(separator + 1)));
+
+            JedisConnectionFactory factory = new JedisConnectionFactory(config);
+            factory.setPoolConfig(jedisPoolConfig());
+            factory.setTimeout(timeout);
+            factory.afterPropertiesSet();
+
+            RedisTemplate<String, String> template = stringTemplate(factory);
+            template.afterPropertiesSet();
+            factories.add(factory);
+            templates.add(template);
+        }
+        return new RedisShardRouter(templates, factories, breakers);
     }
 
-    // Lua script for Fixed Window algorithm
+    /**
+     * Policy change events. The container resubscribes by itself after a lost connection;
+     * events missed meanwhile are picked up by the policy store's version poll.
+     */
     @Bean
-    public DefaultRedisScript<Long> fixedWindowScript() {
-        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-        script.setScriptText("""
-            local key = KEYS[1]
-            local limit = tonumber(ARGV[1])
-            local window = tonumber(ARGV[2])
-            local requested = tonumber(ARGV[3])
-            
-            local current = redis.call('GET', key)
-            if current == false then
-                current = 0
-            else
-                current = tonumber(current)
-            end
-            
-            if current + requested <= limit then
-                local new_count = redis.call('INCRBY', key, requested)
-                if new_count == requested then
-                    redis.call('EXPIRE', key, window)
-                end
-                return {1, limit - new_count}
-            else
-                return {0, limit - current}
-            end
-        """);
-        script.setResultType(Long.class);
-        return script;
+    public RedisMessageListenerContainer policyListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                 PolicyStore policyStore) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(policyStore, new ChannelTopic(PolicyStore.CHANNEL));
+        return container;
+    }
+
+    private static RedisTemplate<String, String> stringTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        // Buckets are hashes written by the scripts as plain strings
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
+        template.setScriptExecutor(new ShaScriptExecutor<>(template));
+        return template;
     }
-}
\ No newline at end of file
+}
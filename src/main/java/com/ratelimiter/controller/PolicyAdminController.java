@@ -0,0 +1,53 @@
+package com.ratelimiter.controller;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.service.PolicyStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Runtime policy changes, applied on every node within one pub/sub round trip.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/policies")
+@RequiredArgsConstructor
+public class PolicyAdminController {
+
+    private final PolicyStore policyStore;
+
+    @GetMapping
+    public List<RateLimiterProperties.Policy> getPolicies() {
+        return policyStore.getPolicies();
+    }
+
+    @PutMapping("/{name}")
+    public ResponseEntity<String> savePolicy(@PathVariable String name, @RequestBody RateLimiterProperties.Policy policy) {
+        log.info("Updating rate limit policy {}", name);
+        policy.setName(name);
+        try {
+            policyStore.save(policy);
+        } catch (RateLimiterException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @DeleteMapping("/{name}")
+    public ResponseEntity<Void> deletePolicy(@PathVariable String name) {
+        log.info("Removing rate limit policy {}", name);
+        policyStore.delete(name);
+        return ResponseEntity.noContent().build();
+    }
+}
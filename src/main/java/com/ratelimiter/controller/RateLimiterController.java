@@ -1,65 +1,119 @@
 package com.ratelimiter.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.model.BatchRateLimitRequest;
+import com.ratelimiter.model.BatchRateLimitResponse;
 import com.ratelimiter.model.RateLimitRequest;
 import com.ratelimiter.model.RateLimitResponse;
+import com.ratelimiter.service.BucketStatusScanner;
+import com.ratelimiter.service.PolicyRegistry;
 import com.ratelimiter.service.RateLimiterService;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@Slf4j
+@RestController
+@ConditionalOnProperty(prefix = "rate-limiter.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class RateLimiterController {
 
     private final RateLimiterService rateLimiterService;
+    private final PolicyRegistry policyRegistry;
+    private final BucketStatusScanner bucketStatusScanner;
+    private final ObjectMapper objectMapper;
 
-    public RateLimiterController(RateLimiterService rateLimiterService) {
+    public RateLimiterController(RateLimiterService rateLimiterService, PolicyRegistry policyRegistry,
+                                 BucketStatusScanner bucketStatusScanner, ObjectMapper objectMapper) {
         this.rateLimiterService = rateLimiterService;
+        this.policyRegistry = policyRegistry;
+        this.bucketStatusScanner = bucketStatusScanner;
+        // Streamed line by line: the writer must leave the response stream open
+        this.objectMapper = objectMapper.copy().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
 
     @PostMapping("/check")
     public ResponseEntity<RateLimitResponse> checkRateLimit(@RequestBody RateLimitRequest request) {
-        System.out.println("Checking rate limit for identifier: " + request.getIdentifier());
+        log.debug("Checking rate limit for identifier: {}", request.getIdentifier());
         
-        var result = request.getConfig() != null ?
-            rateLimiterService.checkRateLimit(request.getIdentifier(), request.getConfig()) :
-            rateLimiterService.checkRateLimit(request.getIdentifier());
+        var result = rateLimiterService.tryAcquire(request.getIdentifier(),
+            policyRegistry.resolve(request.getIdentifier(), request.getConfig()),
+            request.getPermits());
         
         if (result.isAllowed()) {
-            System.out.println("Rate limit check passed for identifier: " + request.getIdentifier());
-            return ResponseEntity.ok(new RateLimitResponse(
-                result.isAllowed(),
-                result.getRemaining(),
-                result.getResetTime(),
-                result.getIdentifier()
-            ));
+            log.debug("Rate limit check passed for identifier: {}", request.getIdentifier());
+            return ResponseEntity.ok(RateLimitResponse.fromResult(result));
         } else {
-            System.out.println("Rate limit exceeded for identifier: " + request.getIdentifier());
-            return ResponseEntity.status(429).body(new RateLimitResponse(
-                result.isAllowed(),
-                result.getRemaining(),
-                result.getResetTime(),
-                result.getIdentifier()
-            ));
+            log.debug("Rate limit exceeded for identifier: {}", request.getIdentifier());
+            return ResponseEntity.status(429).body(RateLimitResponse.fromResult(result));
+        }
+    }
+
+    @PostMapping("/check/batch")
+    public ResponseEntity<BatchRateLimitResponse> checkRateLimitBatch(@RequestBody BatchRateLimitRequest request) {
+        if (request.getRequests() == null || request.getRequests().contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.debug("Checking rate limit batch of {} identifiers", request.getRequests().size());
+
+        resolvePolicies(request);
+        var results = rateLimiterService.checkRateLimitBatch(request.getRequests(), request.isAllOrNothing());
+        var response = BatchRateLimitResponse.fromResults(results);
+
+        return response.isAllowed() ?
+            ResponseEntity.ok(response) :
+            ResponseEntity.status(429).body(response);
+    }
+
+    private void resolvePolicies(BatchRateLimitRequest request) {
+        for (RateLimitRequest item : request.getRequests()) {
+            item.setConfig(policyRegistry.resolve(item.getIdentifier(), item.getConfig()));
         }
     }
 
     @PostMapping("/reset")
     public ResponseEntity<Void> resetRateLimit(@RequestBody RateLimitRequest request) {
-        System.out.println("Resetting rate limit for identifier: " + request.getIdentifier());
+        log.info("Resetting rate limit for identifier: {}", request.getIdentifier());
         rateLimiterService.resetRateLimit(request.getIdentifier());
         return ResponseEntity.ok().build();
     }
 
     @GetMapping("/status/{identifier}")
     public ResponseEntity<RateLimitResponse> getRateLimitStatus(@PathVariable String identifier) {
-        System.out.println("Getting rate limit status for identifier: " + identifier);
-        var result = rateLimiterService.checkRateLimit(identifier);
+        log.debug("Getting rate limit status for identifier: {}", identifier);
+        // A peek: looking at the bucket must not spend from it
+        var result = rateLimiterService.peek(identifier);
         
-        return ResponseEntity.ok(new RateLimitResponse(
-            result.isAllowed(),
-            result.getRemaining(),
-            result.getResetTime(),
-            result.getIdentifier()
-        ));
+        return ResponseEntity.ok(RateLimitResponse.fromResult(result));
+    }
+
+    /**
+     * Every bucket whose identifier matches, one JSON object per line, streamed as the scan goes.
+     */
+    @GetMapping(value = "/status", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> scanRateLimitStatus(@RequestParam(required = false) String match) {
+        log.debug("Scanning rate limit status for identifiers matching: {}", match);
+        StreamingResponseBody body = out -> {
+            try {
+                bucketStatusScanner.scan(match, status -> {
+                    try {
+                        objectMapper.writeValue(out, status);
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.ratelimiter.controller;
+
+import com.ratelimiter.model.RateLimitMetrics;
+import com.ratelimiter.service.ClusterMetricsAggregator;
+import com.ratelimiter.service.RateLimiterService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/ratelimiter} for this node, {@code /actuator/ratelimiter/cluster} for every node merged.
+ */
+@Component
+@Endpoint(id = "ratelimiter")
+@RequiredArgsConstructor
+public class RateLimiterMetricsEndpoint {
+
+    private final RateLimiterService rateLimiterService;
+    private final ClusterMetricsAggregator clusterMetricsAggregator;
+
+    @ReadOperation
+    public RateLimitMetrics metrics() {
+        return rateLimiterService.getMetrics();
+    }
+
+    @ReadOperation
+    public RateLimitMetrics metrics(@Selector String scope) {
+        return switch (scope) {
+            case "local" -> rateLimiterService.getMetrics();
+            case "cluster" -> clusterMetricsAggregator.getClusterMetrics();
+            default -> null;
+        };
+    }
+}
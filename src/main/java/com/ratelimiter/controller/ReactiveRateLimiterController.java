@@ -0,0 +1,129 @@
+package com.ratelimiter.controller;
+
+import com.ratelimiter.model.BatchRateLimitRequest;
+import com.ratelimiter.model.BatchRateLimitResponse;
+import com.ratelimiter.model.BucketStatus;
+import com.ratelimiter.model.RateLimitRequest;
+import com.ratelimiter.model.RateLimitResponse;
+import com.ratelimiter.service.BucketStatusScanner;
+import com.ratelimiter.service.PolicyRegistry;
+import com.ratelimiter.service.ReactiveRateLimiterService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rate-limiter.reactive", name = "enabled", havingValue = "true")
+public class ReactiveRateLimiterController {
+
+    private final ReactiveRateLimiterService rateLimiterService;
+    private final PolicyRegistry policyRegistry;
+    private final BucketStatusScanner bucketStatusScanner;
+
+    @PostMapping("/check")
+    public Mono<ResponseEntity<RateLimitResponse>> checkRateLimit(@RequestBody RateLimitRequest request) {
+        log.debug("Checking rate limit for identifier: {}", request.getIdentifier());
+
+        var result = rateLimiterService.tryAcquire(request.getIdentifier(),
+            policyRegistry.resolve(request.getIdentifier(), request.getConfig()),
+            request.getPermits());
+
+        return result.map(r -> ResponseEntity
+                .status(r.isAllowed() ? 200 : 429)
+                .body(RateLimitResponse.fromResult(r)));
+    }
+
+    @PostMapping("/check/batch")
+    public Mono<ResponseEntity<BatchRateLimitResponse>> checkRateLimitBatch(@RequestBody BatchRateLimitRequest request) {
+        if (request.getRequests() == null || request.getRequests().contains(null)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        log.debug("Checking rate limit batch of {} identifiers", request.getRequests().size());
+
+        resolvePolicies(request);
+        return rateLimiterService.checkRateLimitBatch(request.getRequests(), request.isAllOrNothing())
+                .map(BatchRateLimitResponse::fromResults)
+                .map(response -> ResponseEntity
+                        .status(response.isAllowed() ? 200 : 429)
+                        .body(response));
+    }
+
+    private void resolvePolicies(BatchRateLimitRequest request) {
+        for (RateLimitRequest item : request.getRequests()) {
+            item.setConfig(policyRegistry.resolve(item.getIdentifier(), item.getConfig()));
+        }
+    }
+
+    @PostMapping("/reset")
+    public Mono<ResponseEntity<Void>> resetRateLimit(@RequestBody RateLimitRequest request) {
+        log.info("Resetting rate limit for identifier: {}", request.getIdentifier());
+        return rateLimiterService.resetRateLimit(request.getIdentifier())
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()));
+    }
+
+    @GetMapping("/status/{identifier}")
+    public Mono<ResponseEntity<RateLimitResponse>> getRateLimitStatus(@PathVariable String identifier) {
+        log.debug("Getting rate limit status for identifier: {}", identifier);
+        // A peek: looking at the bucket must not spend from it
+        return rateLimiterService.peek(identifier)
+                .map(r -> ResponseEntity.ok(RateLimitResponse.fromResult(r)));
+    }
+
+    /**
+     * Every bucket whose identifier matches, one JSON object per line, emitted as the scan goes.
+     * The scan blocks on Redis, so it runs on the bounded elastic scheduler, and it waits for the
+     * client's demand before each bucket: a slow client holds back the SCAN rather than a buffer
+     * of the whole result, and one that goes away stops it.
+     */
+    @GetMapping(value = "/status", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BucketStatus> scanRateLimitStatus(@RequestParam(required = false) String match) {
+        log.debug("Scanning rate limit status for identifiers matching: {}", match);
+        return Flux.<BucketStatus>create(sink -> {
+                    Object demand = new Object();
+                    sink.onRequest(n -> signal(demand));
+                    sink.onCancel(() -> signal(demand));
+                    bucketStatusScanner.scanWhile(match, status -> {
+                        if (!awaitDemand(sink, demand)) {
+                            return false;
+                        }
+                        sink.next(status);
+                        return true;
+                    });
+                    sink.complete();
+                }, FluxSink.OverflowStrategy.ERROR) // Only emits on demand, so there is nothing to buffer
+                // Requests must not queue behind the scan on its own worker, which waits for them
+                .subscribeOn(Schedulers.boundedElastic(), false);
+    }
+
+    /**
+     * @return false if the subscriber cancelled, or the scan's thread was interrupted, first
+     */
+    private static boolean awaitDemand(FluxSink<?> sink, Object demand) {
+        synchronized (demand) {
+            while (sink.requestedFromDownstream() == 0 && !sink.isCancelled()) {
+                try {
+                    demand.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return !sink.isCancelled();
+    }
+
+    private static void signal(Object demand) {
+        synchronized (demand) {
+            demand.notifyAll();
+        }
+    }
+}
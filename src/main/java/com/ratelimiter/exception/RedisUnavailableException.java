@@ -0,0 +1,10 @@
+package com.ratelimiter.exception;
+
+/**
+ * Redis cannot serve the decision right now: its shard is marked down or its circuit is open.
+ */
+public class RedisUnavailableException extends RateLimiterException {
+    public RedisUnavailableException(String message) {
+        super(message);
+    }
+}
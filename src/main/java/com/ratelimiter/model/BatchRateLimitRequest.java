@@ -0,0 +1,16 @@
+package com.ratelimiter.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchRateLimitRequest {
+
+    private List<RateLimitRequest> requests = new ArrayList<>();
+
+    @JsonProperty("all_or_nothing")
+    private boolean allOrNothing; // Optional: consume tokens only if every item is allowed
+}
@@ -0,0 +1,24 @@
+package com.ratelimiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRateLimitResponse {
+    private boolean allowed;
+    private List<RateLimitResponse> results;
+
+    public static BatchRateLimitResponse fromResults(List<RateLimitResult> results) {
+        boolean allowed = results.stream().allMatch(RateLimitResult::isAllowed);
+        return new BatchRateLimitResponse(allowed, results.stream()
+                .map(RateLimitResponse::fromResult)
+                .toList());
+    }
+}
@@ -0,0 +1,19 @@
+package com.ratelimiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One token bucket as of the scan, refilled under its identifier's policy.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BucketStatus {
+    private String identifier;
+    private String policy;
+    private long capacity;
+    private long tokens;
+    private long lastRefillTime;
+}
@@ -4,6 +4,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,8 +13,32 @@ public class RateLimitConfig {
     private int capacity = 10;
     private int refillRate = 1;
     private int window = 60; // in seconds
+    private String algorithm = "token_bucket";
+    // Policy name, used as a bounded metrics tag
+    private String policy = "default";
+
+    // Lease mode: tokens reserved from Redis per round trip (0 disables leasing)
+    private int leaseSize = 0;
+    private long leaseTtlMs = 1000;
+
+    // While Redis is unavailable: "local" (per-node share of the limit), "open" (allow) or "closed" (deny)
+    private String failureMode = "local";
+
+    // Hierarchical policy (algorithm "hierarchical"): every tier must pass, checked in this order.
+    // On a cluster or sharded setup all tier identifiers need one hash tag, e.g. {acme}:user:1 and {acme}
+    private List<RateLimitTier> tiers;
+
+    public RateLimitConfig(int capacity, int refillRate, int window) {
+        this.capacity = capacity;
+        this.refillRate = refillRate;
+        this.window = window;
+    }
 
     public int getCapacity() { return capacity; }
     public int getRefillRate() { return refillRate; }
     public int getWindow() { return window; }
-}
\ No newline at end of file
+
+    public boolean isLeaseEnabled() {
+        return leaseSize > 0 && leaseTtlMs > 0;
+    }
+}
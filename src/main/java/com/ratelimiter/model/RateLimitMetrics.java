@@ -1,12 +1,18 @@
 package com.ratelimiter.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class RateLimitMetrics {
     private long totalRequests;
     private long allowedRequests;
@@ -16,7 +22,27 @@ public class RateLimitMetrics {
     private Map<String, Long> topRateLimitedKeys;
     private long lastResetTime;
 
+    // Rolling windows keyed by "1m", "5m" and "15m"
+    private Map<String, Window> windows;
+    // Nodes merged into this view, 1 for a single node
+    private int nodes;
+    private long snapshotTime;
+
     public double getDeniedRate() {
         return totalRequests > 0 ? (double) deniedRequests / totalRequests : 0.0;
     }
-}
\ No newline at end of file
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Window {
+        private long allowedRequests;
+        private long deniedRequests;
+        private double requestsPerSecond;
+
+        public long getTotalRequests() {
+            return allowedRequests + deniedRequests;
+        }
+    }
+}
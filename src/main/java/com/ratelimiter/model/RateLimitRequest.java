@@ -1,5 +1,6 @@
 package com.ratelimiter.model;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
@@ -23,6 +24,10 @@ public class RateLimitRequest {
     private String identifier;
     private RateLimitConfig config;
 
+    // Units this request takes at once, e.g. bytes or query cost
+    @JsonAlias("cost")
+    private int permits = 1;
+
     public String getAlgorithm() {
         return algorithm != null ? algorithm : "token_bucket";
     }
@@ -14,12 +14,20 @@ public class RateLimitResponse {
     private long remainingTokens;
     private long resetTime;
     private String identifier;
+    private long retryAfterMs;
+    private String blockedTier;
+
+    public RateLimitResponse(boolean allowed, long remainingTokens, long resetTime, String identifier) {
+        this(allowed, remainingTokens, resetTime, identifier, 0, null);
+    }
 
     public RateLimitResponse(RateLimitResult result) {
         this.allowed = result.isAllowed();
         this.remainingTokens = result.getRemaining(); // Fixed method name
         this.resetTime = result.getResetTime();
         this.identifier = result.getIdentifier();
+        this.retryAfterMs = result.getRetryAfterMs();
+        this.blockedTier = result.getBlockedTier();
     }
 
     // Removed redundant manual getters - Lombok generates them
@@ -10,6 +10,16 @@ public class RateLimitResult {
     private final int remaining;
     private final long resetTime;
     private final String identifier;
+    private final long retryAfterMs; // 0 when allowed or unknown
+    private final String blockedTier; // name of the hierarchical tier that denied, if any
+
+    public RateLimitResult(boolean allowed, int remaining, long resetTime, String identifier) {
+        this(allowed, remaining, resetTime, identifier, 0);
+    }
+
+    public RateLimitResult(boolean allowed, int remaining, long resetTime, String identifier, long retryAfterMs) {
+        this(allowed, remaining, resetTime, identifier, retryAfterMs, null);
+    }
 
     public static RateLimitResult allowed(int remaining, long resetTime, String identifier) {
         return new RateLimitResult(true, remaining, resetTime, identifier);
@@ -19,6 +29,14 @@ public class RateLimitResult {
         return new RateLimitResult(false, 0, resetTime, identifier);
     }
 
+    public static RateLimitResult denied(long resetTime, long retryAfterMs, String identifier) {
+        return new RateLimitResult(false, 0, resetTime, identifier, retryAfterMs);
+    }
+
+    public static RateLimitResult denied(long resetTime, long retryAfterMs, String identifier, String blockedTier) {
+        return new RateLimitResult(false, 0, resetTime, identifier, retryAfterMs, blockedTier);
+    }
+
     public boolean isAllowed() { return allowed; }
     public int getRemaining() { return remaining; }
     public long getResetTime() { return resetTime; }
@@ -0,0 +1,20 @@
+package com.ratelimiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One level of a hierarchical policy, e.g. user, tenant or global. Each tier is its own
+ * token bucket, keyed by {@code identifier}; without one the request's identifier is used.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RateLimitTier {
+    private String name;
+    private String identifier;
+    private int capacity = 10;
+    private int refillRate = 1;
+    private int window = 60; // in seconds
+}
@@ -0,0 +1,311 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Active key count in constant memory. Keys are counted in HyperLogLog sketches (16 KB each)
+ * for the current and previous window, so the count covers the last one to two windows and
+ * never grows with key cardinality. The sketches use Redis's own hash and register layout, so
+ * a window's sketch can be handed to Redis as is: each flush whose window saw a register rise
+ * writes it in Redis's dense encoding and PFMERGEs it into the window's Redis HyperLogLog,
+ * which stays the exact union of every node's sketch. Nothing is queued per key, so the memory
+ * held is two sketches whatever the traffic. A small LRU sample of recently seen keys is kept
+ * for monitoring.
+ */
+@Slf4j
+@Component
+public class ActiveKeyTracker {
+
+    private static final int P = 14;
+    private static final int REGISTERS = 1 << P;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long windowMillis;
+    private final int sampleSize;
+
+    // Guarded by this for rotation; registers themselves are updated lock-free
+    private volatile Window current;
+    private volatile Window previous;
+
+    // Names this node's staging copy of a sketch next to the window's key
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Boolean> sample;
+
+    public ActiveKeyTracker(RedisTemplate<String, String> redisTemplate, RateLimiterProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.windowMillis = properties.getActiveKeyWindowMs();
+        this.sampleSize = properties.getActiveKeySampleSize();
+        long index = System.currentTimeMillis() / windowMillis;
+        this.current = new Window(index);
+        this.previous = new Window(index - 1);
+        this.sample = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > sampleSize;
+            }
+        };
+    }
+
+    public void record(String key) {
+        windowFor(System.currentTimeMillis()).add(key);
+        if (sampleSize > 0 && ThreadLocalRandom.current().nextInt(16) == 0) {
+            synchronized (sample) {
+                sample.put(key, Boolean.TRUE);
+            }
+        }
+    }
+
+    public void forget(String key) {
+        synchronized (sample) {
+            sample.remove(key);
+        }
+    }
+
+    /**
+     * Keys active on this node over the last one to two windows.
+     */
+    public long estimate() {
+        Window now = current;
+        Window before = previous;
+        return HyperLogLog.estimate(now.registers, before.registers);
+    }
+
+    /**
+     * Keys active on any node, from the merged Redis sketches of the same windows.
+     */
+    public long clusterEstimate() {
+        long index = current.index;
+        Long count = redisTemplate.execute(connection -> connection.hyperLogLogCommands().pfCount(
+                redisKey(index).getBytes(StandardCharsets.UTF_8),
+                redisKey(index - 1).getBytes(StandardCharsets.UTF_8)), true);
+        return count != null ? count : estimate();
+    }
+
+    public Set<String> getSample() {
+        synchronized (sample) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(sample.keySet()));
+        }
+    }
+
+    /**
+     * Merge the sketch of each window that changed since the last flush into Redis. A failed
+     * merge is retried on the next flush; registers only grow, so merging again is harmless.
+     */
+    @Scheduled(fixedDelayString = "${rate-limiter.active-key-flush-interval-ms:1000}")
+    public void flush() {
+        Window before = previous;
+        Window now = current;
+        for (Window window : before == now ? List.of(now) : List.of(before, now)) {
+            if (window.dirty.getAndSet(false)) {
+                merge(window);
+            }
+        }
+    }
+
+    private void merge(Window window) {
+        String redisKey = redisKey(window.index);
+        byte[] key = redisKey.getBytes(StandardCharsets.UTF_8);
+        byte[] staging = (redisKey + ":node:" + nodeId).getBytes(StandardCharsets.UTF_8);
+        byte[] sketch = HyperLogLog.toRedisDense(window.registers);
+        long ttlMillis = 3 * windowMillis;
+        try {
+            redisTemplate.execute(connection -> {
+                connection.stringCommands().set(staging, sketch, Expiration.milliseconds(ttlMillis), SetOption.upsert());
+                connection.hyperLogLogCommands().pfMerge(key, staging);
+                connection.keyCommands().del(staging);
+                connection.keyCommands().pExpire(key, ttlMillis);
+                return null;
+            }, true);
+        } catch (Exception e) {
+            window.dirty.set(true);
+            log.warn("Failed to merge active keys into {}", redisKey, e);
+        }
+    }
+
+    private Window windowFor(long now) {
+        long index = now / windowMillis;
+        Window window = current;
+        if (window.index == index) {
+            return window;
+        }
+        synchronized (this) {
+            if (current.index < index) {
+                previous = current.index == index - 1 ? current : new Window(index - 1);
+                current = new Window(index);
+            }
+            return current.index == index ? current : previous;
+        }
+    }
+
+    private static String redisKey(long windowIndex) {
+        return RedisKeys.internalKey("active:", "active") + ":" + windowIndex;
+    }
+
+    private static final class Window {
+        final long index;
+        final AtomicIntegerArray registers = new AtomicIntegerArray(REGISTERS / 4);
+        // Set when a register rose since the last merge into Redis
+        final AtomicBoolean dirty = new AtomicBoolean();
+
+        Window(long index) {
+            this.index = index;
+        }
+
+        void add(String key) {
+            if (HyperLogLog.add(registers, key)) {
+                dirty.set(true);
+            }
+        }
+    }
+
+    /**
+     * HyperLogLog with Redis's parameters (P = 14, MurmurHash64A with Redis's seed), four
+     * 8-bit registers packed per int.
+     */
+    static final class HyperLogLog {
+
+        private static final long SEED = 0xadc83b19L;
+        private static final int DENSE_HEADER_SIZE = 16;
+        private static final int DENSE_BITS = 6;
+
+        private HyperLogLog() {
+        }
+
+        /**
+         * @return true if a register was raised
+         */
+        static boolean add(AtomicIntegerArray registers, String key) {
+            long hash = murmurHash64A(key);
+            int index = (int) (hash & (REGISTERS - 1));
+            int rank = Long.numberOfTrailingZeros((hash >>> P) | (1L << (64 - P))) + 1;
+
+            int slot = index >>> 2;
+            int shift = (index & 3) * 8;
+            while (true) {
+                int packed = registers.get(slot);
+                if (((packed >>> shift) & 0xff) >= rank) {
+                    return false;
+                }
+                int updated = (packed & ~(0xff << shift)) | (rank << shift);
+                if (registers.compareAndSet(slot, packed, updated)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Cardinality of the union of the given sketches.
+         */
+        static long estimate(AtomicIntegerArray... sketches) {
+            double sum = 0;
+            int zeros = 0;
+            for (int index = 0; index < REGISTERS; index++) {
+                int rank = 0;
+                for (AtomicIntegerArray registers : sketches) {
+                    rank = Math.max(rank, rank(registers, index));
+                }
+                sum += 1.0 / (1L << rank);
+                if (rank == 0) {
+                    zeros++;
+                }
+            }
+            double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+            double estimate = alpha * REGISTERS * REGISTERS / sum;
+            if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+                // Linear counting is more accurate while many registers are still empty
+                estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        /**
+         * The sketch as a Redis dense HyperLogLog string: the "HYLL" header with the cached
+         * cardinality marked stale, then 6-bit registers packed from the least significant bit.
+         */
+        static byte[] toRedisDense(AtomicIntegerArray registers) {
+            byte[] hll = new byte[DENSE_HEADER_SIZE + REGISTERS * DENSE_BITS / 8];
+            hll[0] = 'H';
+            hll[1] = 'Y';
+            hll[2] = 'L';
+            hll[3] = 'L';
+            hll[15] = (byte) 0x80;
+            for (int index = 0; index < REGISTERS; index++) {
+                int rank = rank(registers, index);
+                if (rank == 0) {
+                    continue;
+                }
+                int bit = index * DENSE_BITS;
+                int at = DENSE_HEADER_SIZE + bit / 8;
+                int shift = bit & 7;
+                hll[at] |= (byte) (rank << shift);
+                if (shift > 8 - DENSE_BITS) {
+                    hll[at + 1] |= (byte) (rank >>> (8 - shift));
+                }
+            }
+            return hll;
+        }
+
+        private static int rank(AtomicIntegerArray registers, int index) {
+            return (registers.get(index >>> 2) >>> ((index & 3) * 8)) & 0xff;
+        }
+
+        /**
+         * MurmurHash64A of the key's UTF-8 bytes, encoded char by char as they are hashed so no
+         * byte[] is allocated.
+         */
+        static long murmurHash64A(String key) {
+            final long m = 0xc6a4a7935bd1e995L;
+            final int r = 47;
+            long h = SEED ^ (Utf8.length(key) * m);
+
+            long k = 0;
+            int filled = 0;
+            for (int i = 0; i < key.length(); ) {
+                int codePoint = Utf8.codePointAt(key, i);
+                i += Utf8.charCount(codePoint);
+                int encoded = Utf8.encode(codePoint);
+                int bytes = Utf8.byteCount(codePoint);
+                for (int b = 0; b < bytes; b++) {
+                    k |= (encoded >>> (8 * b) & 0xffL) << (8 * filled);
+                    if (++filled == 8) {
+                        k *= m;
+                        k ^= k >>> r;
+                        k *= m;
+                        h ^= k;
+                        h *= m;
+                        k = 0;
+                        filled = 0;
+                    }
+                }
+            }
+
+            if (filled > 0) {
+                h ^= k;
+                h *= m;
+            }
+
+            h ^= h >>> r;
+            h *= m;
+            h ^= h >>> r;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.TokenBucket;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * How a token bucket is stored in Redis. HASH keeps the readable {@code tokens} and
+ * {@code lastRefillTime} fields. PACKED stores both as two big-endian doubles in one 16 byte
+ * string, with no field names and no hash encoding overhead. The scripts of one encoding fail
+ * with WRONGTYPE on buckets written in the other, so flush, or wait out the bucket TTL, when
+ * switching.
+ */
+public enum BucketEncoding {
+
+    HASH(RedisScripts.TOKEN_BUCKET, RedisScripts.TOKEN_BUCKET_LEASE, RedisScripts.TOKEN_BUCKET_PEEK,
+            RedisScripts.TOKEN_BUCKET_BATCH, RedisScripts.HIERARCHICAL, RedisScripts.HIERARCHICAL_PEEK) {
+        @Override
+        Object fetch(RedisConnection connection, byte[] key) {
+            return connection.hashCommands().hMGet(key, TOKENS, LAST_REFILL_TIME);
+        }
+
+        @Override
+        StoredBucket decode(Object reply) {
+            if (!(reply instanceof List<?> fields) || fields.get(0) == null || fields.get(1) == null) {
+                return null;
+            }
+            // Tokens may carry the fraction of a token earned since the last refill
+            return new StoredBucket(micros(Double.parseDouble(new String((byte[]) fields.get(0), StandardCharsets.UTF_8))),
+                    Long.parseLong(new String((byte[]) fields.get(1), StandardCharsets.UTF_8)));
+        }
+    },
+
+    PACKED(RedisScripts.PACKED_TOKEN_BUCKET, RedisScripts.PACKED_TOKEN_BUCKET_LEASE, RedisScripts.PACKED_TOKEN_BUCKET_PEEK,
+            RedisScripts.PACKED_TOKEN_BUCKET_BATCH, RedisScripts.PACKED_HIERARCHICAL, RedisScripts.PACKED_HIERARCHICAL_PEEK) {
+        @Override
+        Object fetch(RedisConnection connection, byte[] key) {
+            return connection.stringCommands().get(key);
+        }
+
+        @Override
+        StoredBucket decode(Object reply) {
+            if (!(reply instanceof byte[] packed) || packed.length != 16) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(packed);
+            return new StoredBucket(micros(buffer.getDouble()), (long) buffer.getDouble());
+        }
+    };
+
+    /**
+     * Millionths of a token, the unit the scripts count in.
+     */
+    static final long MICRO = 1_000_000;
+
+    private static final byte[] TOKENS = "tokens".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LAST_REFILL_TIME = "lastRefillTime".getBytes(StandardCharsets.UTF_8);
+
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> tokenBucket;
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> tokenBucketLease;
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> tokenBucketPeek;
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> tokenBucketBatch;
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> hierarchical;
+    @SuppressWarnings("rawtypes")
+    private final RedisScripts.Script<List> hierarchicalPeek;
+
+    @SuppressWarnings("rawtypes")
+    BucketEncoding(RedisScripts.Script<List> tokenBucket, RedisScripts.Script<List> tokenBucketLease,
+                   RedisScripts.Script<List> tokenBucketPeek, RedisScripts.Script<List> tokenBucketBatch,
+                   RedisScripts.Script<List> hierarchical, RedisScripts.Script<List> hierarchicalPeek) {
+        this.tokenBucket = tokenBucket;
+        this.tokenBucketLease = tokenBucketLease;
+        this.tokenBucketPeek = tokenBucketPeek;
+        this.tokenBucketBatch = tokenBucketBatch;
+        this.hierarchical = hierarchical;
+        this.hierarchicalPeek = hierarchicalPeek;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> tokenBucket() {
+        return tokenBucket;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> tokenBucketLease() {
+        return tokenBucketLease;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> tokenBucketPeek() {
+        return tokenBucketPeek;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> tokenBucketBatch() {
+        return tokenBucketBatch;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> hierarchical() {
+        return hierarchical;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public RedisScripts.Script<List> hierarchicalPeek() {
+        return hierarchicalPeek;
+    }
+
+    /**
+     * The stored bucket in whole tokens, or null if the key holds none (a full bucket).
+     */
+    public TokenBucket read(RedisTemplate<String, String> template, String key) {
+        StoredBucket bucket = readStored(template, key);
+        return bucket != null ? bucket.toTokenBucket() : null;
+    }
+
+    /**
+     * The stored bucket with its fraction of a token, or null if the key holds none.
+     */
+    StoredBucket readStored(RedisTemplate<String, String> template, String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return template.execute((RedisCallback<StoredBucket>) connection -> decode(fetch(connection, rawKey)));
+    }
+
+    /**
+     * Issues the read of one bucket; inside a pipeline the reply comes from closePipeline.
+     */
+    abstract Object fetch(RedisConnection connection, byte[] key);
+
+    /**
+     * @return the bucket in a reply of {@link #fetch}, or null if there is none
+     */
+    abstract StoredBucket decode(Object reply);
+
+    // Rounded to the nearest millionth, as readBucket of the scripts does
+    private static long micros(double tokens) {
+        return Math.round(tokens * MICRO);
+    }
+
+    /**
+     * A bucket as the scripts see it: tokens in millionths, so the fraction of a token earned
+     * before the last write still counts towards the next one.
+     */
+    record StoredBucket(long microTokens, long lastRefillTime) {
+
+        TokenBucket toTokenBucket() {
+            return new TokenBucket(microTokens / MICRO, lastRefillTime);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.BucketStatus;
+import com.ratelimiter.model.RateLimitConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Every token bucket, read without touching it: keys are walked with SCAN and read with
+ * pipelined HMGETs (GETs for packed buckets), statusScanBatchSize keys per round trip, so a
+ * dashboard can poll many buckets without a KEYS call or a round trip per key. Tokens are
+ * refilled in memory under the identifier's policy; nothing is written.
+ *
+ * <p>With hashedKeys the identifiers are gone from the keys: only a scan of every bucket is
+ * possible, each reported under its hash and the default policy unless a pattern matches that.
+ */
+@Service
+@RequiredArgsConstructor
+public class BucketStatusScanner {
+
+    private final RedisShardRouter shardRouter;
+    private final PolicyRegistry policyRegistry;
+    private final RateLimiterProperties properties;
+
+    /**
+     * @param match identifier pattern, e.g. {@code api:free:*}, where only {@code *} is a wildcard; null or empty for every bucket
+     */
+    public void scan(String match, Consumer<BucketStatus> sink) {
+        scanWhile(match, status -> {
+            sink.accept(status);
+            return true;
+        });
+    }
+
+    /**
+     * As {@link #scan}, until the sink returns false: the cursor is closed and no further keys
+     * are read or shards scanned. At most one batch of keys is read ahead of the sink.
+     */
+    public void scanWhile(String match, Predicate<BucketStatus> sink) {
+        boolean matchAll = match == null || match.isEmpty() || match.equals("*");
+        if (RedisKeys.isHashedKeys() && !matchAll) {
+            throw new RateLimiterException("Identifiers are hashed in keys and cannot be matched");
+        }
+        // Bucket keys are the prefix plus the tagged identifier; engine namespaces never start with '{'
+        String glob = matchGlob(match);
+        String pattern = RedisKeys.PREFIX + (matchAll ? "{*" : RedisKeys.hasHashTag(match) ? glob : "{" + glob + "}");
+        int batchSize = properties.getStatusScanBatchSize();
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(pattern)
+                .count(batchSize)
+                .build();
+
+        boolean more = true;
+        for (int shard = 0; more && shard < shardRouter.getShardCount(); shard++) {
+            more = shardRouter.templateFor(shard).execute((RedisCallback<Boolean>) connection -> {
+                if (connection instanceof RedisClusterConnection cluster) {
+                    for (RedisClusterNode node : cluster.clusterGetNodes()) {
+                        if (node.isMaster()) {
+                            try (Cursor<byte[]> cursor = cluster.scan(node, options)) {
+                                if (!drain(cursor, connection, batchSize, false, sink)) {
+                                    return false;
+                                }
+                            }
+                        }
+                    }
+                    return true;
+                }
+                try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                    return drain(cursor, connection, batchSize, true, sink);
+                }
+            });
+        }
+    }
+
+    /**
+     * The match as a SCAN glob: {@code *} stays a wildcard, every other glob character is literal.
+     */
+    static String matchGlob(String match) {
+        if (match == null) {
+            return null;
+        }
+        StringBuilder glob = new StringBuilder(match.length() + 8);
+        int start = 0;
+        for (int star = match.indexOf('*'); star >= 0; star = match.indexOf('*', start)) {
+            glob.append(RedisKeys.escapeGlob(match.substring(start, star))).append('*');
+            start = star + 1;
+        }
+        return glob.append(RedisKeys.escapeGlob(match.substring(start))).toString();
+    }
+
+    /**
+     * @return false if the sink stopped the scan
+     */
+    private boolean drain(Cursor<byte[]> cursor, RedisConnection connection, int batchSize,
+                          boolean pipelined, Predicate<BucketStatus> sink) {
+        List<byte[]> keys = new ArrayList<>(batchSize);
+        while (cursor.hasNext()) {
+            keys.add(cursor.next());
+            if (keys.size() == batchSize) {
+                if (!read(keys, connection, pipelined, sink)) {
+                    return false;
+                }
+                keys.clear();
+            }
+        }
+        return keys.isEmpty() || read(keys, connection, pipelined, sink);
+    }
+
+    private boolean read(List<byte[]> keys, RedisConnection connection, boolean pipelined, Predicate<BucketStatus> sink) {
+        BucketEncoding encoding = properties.getBucketEncoding();
+        List<Object> replies;
+        if (pipelined) {
+            connection.openPipeline();
+            for (byte[] key : keys) {
+                encoding.fetch(connection, key);
+            }
+            replies = connection.closePipeline();
+        } else {
+            // Cluster connections don't pipeline: one round trip per key, routed to its node
+            replies = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                replies.add(encoding.fetch(connection, key));
+            }
+        }
+
+        long currentTime = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            BucketEncoding.StoredBucket bucket = encoding.decode(replies.get(i));
+            if (bucket == null) {
+                // Expired since the SCAN, or not a bucket
+                continue;
+            }
+            String identifier = identifierOf(new String(keys.get(i), StandardCharsets.UTF_8));
+            RateLimitConfig config = policyRegistry.lookup(identifier);
+            long tokens = TokenBucketRateLimiter.refilledTokens(bucket.microTokens(), bucket.lastRefillTime(),
+                    config.getCapacity(), config.getRefillRate(), config.getWindow() * 1000L, currentTime);
+            if (!sink.test(new BucketStatus(identifier, config.getPolicy(), config.getCapacity(), tokens,
+                    bucket.lastRefillTime()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The identifier a bucket key was built from by {@link RedisKeys#key(String)}.
+     */
+    static String identifierOf(String key) {
+        String tagged = key.substring(RedisKeys.PREFIX.length());
+        boolean wrapped = tagged.startsWith("{") && tagged.indexOf('}') == tagged.length() - 1;
+        return wrapped ? tagged.substring(1, tagged.length() - 1) : tagged;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ratelimiter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.model.RateLimitMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster-wide metrics. Every node publishes its local snapshot into one Redis hash keyed by
+ * node id; the cluster view merges the fresh entries and drops nodes that stopped publishing.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterMetricsAggregator {
+
+    static final String NODES_KEY = RedisKeys.internalKey("metrics:", "nodes");
+
+    private static final long STALE_AFTER_MS = 3 * DecisionCounters.SNAPSHOT_INTERVAL_MS;
+    private static final int TOP_KEYS = 32;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RateLimiterService rateLimiterService;
+    private final ObjectMapper objectMapper;
+    private final ActiveKeyTracker activeKeyTracker;
+    private final FallbackRateLimiter fallbackRateLimiter;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Scheduled(fixedRate = DecisionCounters.SNAPSHOT_INTERVAL_MS)
+    public void publish() {
+        try {
+            redisTemplate.opsForHash().put(NODES_KEY, nodeId, objectMapper.writeValueAsString(rateLimiterService.getMetrics()));
+            // The local fallback splits each limit across the nodes seen here
+            fallbackRateLimiter.updateObservedNodes(1 + peerSnapshots(System.currentTimeMillis()).size());
+        } catch (Exception e) {
+            log.warn("Failed to publish metrics snapshot for node {}", nodeId, e);
+        }
+    }
+
+    public RateLimitMetrics getClusterMetrics() {
+        List<RateLimitMetrics> snapshots = new ArrayList<>();
+        snapshots.add(rateLimiterService.getMetrics());
+        snapshots.addAll(peerSnapshots(System.currentTimeMillis()));
+
+        RateLimitMetrics merged = merge(snapshots);
+        // Per-node counts overlap; the merged HyperLogLog counts each key once
+        try {
+            merged.setActiveKeys(activeKeyTracker.clusterEstimate());
+        } catch (Exception e) {
+            log.warn("Falling back to summed active key counts", e);
+        }
+        return merged;
+    }
+
+    /**
+     * Fresh snapshots of the other nodes; entries of nodes that stopped publishing are removed.
+     */
+    private List<RateLimitMetrics> peerSnapshots(long now) {
+        List<RateLimitMetrics> snapshots = new ArrayList<>();
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(NODES_KEY);
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (nodeId.equals(entry.getKey())) {
+                continue;
+            }
+            try {
+                RateLimitMetrics snapshot = objectMapper.readValue(entry.getValue().toString(), RateLimitMetrics.class);
+                if (now - snapshot.getSnapshotTime() <= STALE_AFTER_MS) {
+                    snapshots.add(snapshot);
+                } else {
+                    redisTemplate.opsForHash().delete(NODES_KEY, entry.getKey());
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Skipping unreadable metrics snapshot of node {}", entry.getKey(), e);
+            }
+        }
+        return snapshots;
+    }
+
+    static RateLimitMetrics merge(List<RateLimitMetrics> snapshots) {
+        long allowed = 0;
+        long denied = 0;
+        long activeKeys = 0;
+        long lastResetTime = Long.MAX_VALUE;
+        long snapshotTime = 0;
+        Map<String, Long> topKeys = new HashMap<>();
+        Map<String, RateLimitMetrics.Window> windows = new LinkedHashMap<>();
+
+        for (RateLimitMetrics snapshot : snapshots) {
+            allowed += snapshot.getAllowedRequests();
+            denied += snapshot.getDeniedRequests();
+            activeKeys += snapshot.getActiveKeys();
+            lastResetTime = Math.min(lastResetTime, snapshot.getLastResetTime());
+            snapshotTime = Math.max(snapshotTime, snapshot.getSnapshotTime());
+            if (snapshot.getTopRateLimitedKeys() != null) {
+                snapshot.getTopRateLimitedKeys().forEach((key, count) -> topKeys.merge(key, count, Long::sum));
+            }
+            if (snapshot.getWindows() != null) {
+                snapshot.getWindows().forEach((name, window) -> windows.merge(name, window, (a, b) ->
+                    new RateLimitMetrics.Window(
+                        a.getAllowedRequests() + b.getAllowedRequests(),
+                        a.getDeniedRequests() + b.getDeniedRequests(),
+                        a.getRequestsPerSecond() + b.getRequestsPerSecond())));
+            }
+        }
+
+        Map<String, Long> top = new LinkedHashMap<>();
+        topKeys.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(TOP_KEYS)
+            .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+
+        long total = allowed + denied;
+        return RateLimitMetrics.builder()
+            .totalRequests(total)
+            .allowedRequests(allowed)
+            .deniedRequests(denied)
+            .allowedRate(total > 0 ? (double) allowed / total : 0.0)
+            .activeKeys(activeKeys)
+            .topRateLimitedKeys(top)
+            .lastResetTime(lastResetTime)
+            .windows(windows)
+            .nodes(snapshots.size())
+            .snapshotTime(snapshotTime)
+            .build();
+    }
+}
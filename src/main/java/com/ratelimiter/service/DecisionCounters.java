@@ -0,0 +1,88 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimitMetrics;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allowed/denied decision counts. The decision path only touches striped {@link LongAdder}
+ * cells; every {@value #SNAPSHOT_INTERVAL_MS} ms the running totals are copied into a ring of
+ * snapshots, and a rolling window is the difference between now and the snapshot that far back.
+ */
+@Component
+public class DecisionCounters {
+
+    static final long SNAPSHOT_INTERVAL_MS = 10_000;
+
+    private static final String[] WINDOW_NAMES = {"1m", "5m", "15m"};
+    private static final Map<String, Long> WINDOWS = Map.of("1m", 60_000L, "5m", 300_000L, "15m", 900_000L);
+    private static final int SLOTS = (int) (900_000 / SNAPSHOT_INTERVAL_MS) + 1;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final long startTime = System.currentTimeMillis();
+
+    // Guarded by this
+    private final long[] allowedAt = new long[SLOTS];
+    private final long[] deniedAt = new long[SLOTS];
+    private final long[] timeAt = new long[SLOTS];
+    private int head = -1;
+    private int size;
+
+    public void record(boolean decisionAllowed) {
+        (decisionAllowed ? allowed : denied).increment();
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getDenied() {
+        return denied.sum();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Scheduled(fixedRate = SNAPSHOT_INTERVAL_MS)
+    public synchronized void snapshot() {
+        head = (head + 1) % SLOTS;
+        allowedAt[head] = allowed.sum();
+        deniedAt[head] = denied.sum();
+        timeAt[head] = System.currentTimeMillis();
+        size = Math.min(size + 1, SLOTS);
+    }
+
+    /**
+     * Counts over the last 1, 5 and 15 minutes, or since start while less history is kept.
+     */
+    public synchronized Map<String, RateLimitMetrics.Window> windows() {
+        long now = System.currentTimeMillis();
+        long currentAllowed = allowed.sum();
+        long currentDenied = denied.sum();
+
+        Map<String, RateLimitMetrics.Window> windows = new LinkedHashMap<>();
+        for (String name : WINDOW_NAMES) {
+            int back = (int) (WINDOWS.get(name) / SNAPSHOT_INTERVAL_MS);
+            long baseAllowed = 0;
+            long baseDenied = 0;
+            long baseTime = startTime;
+            if (back < size) {
+                int slot = Math.floorMod(head - back, SLOTS);
+                baseAllowed = allowedAt[slot];
+                baseDenied = deniedAt[slot];
+                baseTime = timeAt[slot];
+            }
+            long windowAllowed = currentAllowed - baseAllowed;
+            long windowDenied = currentDenied - baseDenied;
+            double seconds = Math.max(1, now - baseTime) / 1000.0;
+            windows.put(name, new RateLimitMetrics.Window(windowAllowed, windowDenied, (windowAllowed + windowDenied) / seconds));
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,222 @@
+package com.ratelimiter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decision metrics off the hot path. Deciding threads claim a slot in a lock-free multi-producer
+ * ring and write one packed {@code long} (tag set id and decision time); a single drain thread
+ * aggregates batches into Micrometer meters. The ring is striped by thread so producers on
+ * different cores rarely contend for the same tail. Tags are limited to policy, algorithm and outcome,
+ * with at most {@value #MAX_POLICIES} policy names, so meter cardinality is bounded. When the
+ * ring is full the decision is counted as dropped rather than blocking the caller.
+ */
+@Slf4j
+@Component
+public class DecisionMetricsPipeline {
+
+    static final int STRIPES = 16;
+    static final int CAPACITY = 1 << 12;
+    static final int MAX_POLICIES = 64;
+    static final int MAX_ALGORITHMS = 16;
+
+    private static final int NANOS_BITS = 40;
+    private static final long NANOS_MASK = (1L << NANOS_BITS) - 1;
+    private static final long WRITTEN = 1L << 63;
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder dropped = new LongAdder();
+
+    private final Map<String, Integer> policyIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> algorithmIds = new ConcurrentHashMap<>();
+    private final List<String> policies = new ArrayList<>();
+    private final List<String> algorithms = new ArrayList<>();
+
+    // Drain thread only
+    private final Counter[] counters = new Counter[MAX_POLICIES * MAX_ALGORITHMS * 2];
+    private final Timer[] timers = new Timer[MAX_POLICIES * MAX_ALGORITHMS];
+    private final long[] counts = new long[counters.length];
+
+    private volatile boolean running;
+    private Thread drainThread;
+
+    public DecisionMetricsPipeline(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        policyIds.put(OTHER, 0);
+        policies.add(OTHER);
+        algorithmIds.put(OTHER, 0);
+        algorithms.add(OTHER);
+    }
+
+    @PostConstruct
+    public void start() {
+        meterRegistry.more().counter("rate_limit_metrics_dropped", List.of(), dropped);
+        running = true;
+        drainThread = new Thread(this::drainLoop, "rate-limit-metrics");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (drainThread != null) {
+            drainThread.join(1000);
+        }
+    }
+
+    /**
+     * Record one decision. Allocation-free once the policy and algorithm have been seen.
+     */
+    public void record(String policy, String algorithm, boolean allowed, long decisionNanos) {
+        int tags = ((tagId(policyIds, policies, policy, MAX_POLICIES) * MAX_ALGORITHMS
+                + tagId(algorithmIds, algorithms, algorithm, MAX_ALGORITHMS)) << 1) | (allowed ? 1 : 0);
+        long entry = WRITTEN | ((long) tags << NANOS_BITS) | Math.min(decisionNanos, NANOS_MASK);
+
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+        long slot;
+        do {
+            slot = stripe.tail.get();
+            if (slot - stripe.head.get() >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!stripe.tail.compareAndSet(slot, slot + 1));
+        stripe.ring.set((int) (slot & (CAPACITY - 1)), entry);
+    }
+
+    /**
+     * Drain every published entry into the meters.
+     *
+     * @return number of decisions drained
+     */
+    int drain() {
+        int drained = 0;
+        for (Stripe stripe : stripes) {
+            long start = stripe.head.get();
+            long position = start;
+            long end = stripe.tail.get();
+            while (position < end) {
+                int index = (int) (position & (CAPACITY - 1));
+                long entry = stripe.ring.get(index);
+                if (entry == 0) {
+                    // Slot claimed but not written yet; pick it up on the next pass
+                    break;
+                }
+                stripe.ring.set(index, 0);
+                int tags = (int) ((entry & ~WRITTEN) >>> NANOS_BITS);
+                counts[tags]++;
+                timer(tags >>> 1).record(entry & NANOS_MASK, TimeUnit.NANOSECONDS);
+                position++;
+            }
+            stripe.head.set(position);
+            drained += (int) (position - start);
+        }
+
+        for (int tags = 0; tags < counts.length; tags++) {
+            if (counts[tags] > 0) {
+                counter(tags).increment(counts[tags]);
+                counts[tags] = 0;
+            }
+        }
+        return drained;
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            } catch (Exception e) {
+                log.warn("Failed to publish decision metrics", e);
+            }
+        }
+        drain();
+    }
+
+    private static int tagId(Map<String, Integer> ids, List<String> names, String name, int max) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            if (names.size() >= max) {
+                return 0;
+            }
+            return ids.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    private Counter counter(int tags) {
+        Counter counter = counters[tags];
+        if (counter == null) {
+            int tagSet = tags >>> 1;
+            counter = Counter.builder("rate_limit_decisions")
+                    .description("Rate limit decisions")
+                    .tag("policy", policyName(tagSet))
+                    .tag("algorithm", algorithmName(tagSet))
+                    .tag("outcome", (tags & 1) == 1 ? "allowed" : "denied")
+                    .register(meterRegistry);
+            counters[tags] = counter;
+        }
+        return counter;
+    }
+
+    private Timer timer(int tagSet) {
+        Timer timer = timers[tagSet];
+        if (timer == null) {
+            timer = Timer.builder("rate_limit_decision_time")
+                    .description("Time taken to make rate limit decision")
+                    .tag("policy", policyName(tagSet))
+                    .tag("algorithm", algorithmName(tagSet))
+                    .register(meterRegistry);
+            timers[tagSet] = timer;
+        }
+        return timer;
+    }
+
+    private static final class Stripe {
+        final AtomicLongArray ring = new AtomicLongArray(CAPACITY);
+        final AtomicLong tail = new AtomicLong();
+        final AtomicLong head = new AtomicLong();
+    }
+
+    private String policyName(int tagSet) {
+        synchronized (policies) {
+            return policies.get(tagSet / MAX_ALGORITHMS);
+        }
+    }
+
+    private String algorithmName(int tagSet) {
+        synchronized (algorithms) {
+            return algorithms.get(tagSet % MAX_ALGORITHMS);
+        }
+    }
+}
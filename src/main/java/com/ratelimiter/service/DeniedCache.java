@@ -0,0 +1,99 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-node negative cache: identifiers denied under a policy, and the time their next token
+ * is due. A client retrying before then is rejected without another Redis round trip. Tokens
+ * only come back with time, so a cached denial never rejects a request Redis would allow,
+ * apart from a reset, which invalidates the entry, and a policy change, which clears the cache.
+ * Holds at most deniedCacheMaxEntries entries;
+ * expired entries are dropped on read and by a periodic sweep.
+ */
+@Component
+public class DeniedCache {
+
+    private final int maxEntries;
+    private final Map<String, Map<String, Long>> deniedUntilByPolicy = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public DeniedCache(RateLimiterProperties properties) {
+        this.maxEntries = properties.getDeniedCacheMaxEntries();
+    }
+
+    /**
+     * @return milliseconds until the identifier may retry, or 0 if no denial is cached
+     */
+    public long retryAfter(String policy, String identifier, long now) {
+        Map<String, Long> deniedUntil = deniedUntilByPolicy.get(policy);
+        if (deniedUntil == null) {
+            return 0;
+        }
+        Long until = deniedUntil.get(identifier);
+        if (until == null) {
+            return 0;
+        }
+        if (until <= now) {
+            if (deniedUntil.remove(identifier, until)) {
+                size.decrementAndGet();
+            }
+            return 0;
+        }
+        return until - now;
+    }
+
+    public void deny(String policy, String identifier, long until) {
+        if (size.get() >= maxEntries) {
+            // Full: the next denial for this identifier simply goes to Redis again
+            return;
+        }
+        Map<String, Long> deniedUntil = deniedUntilByPolicy.computeIfAbsent(policy, p -> new ConcurrentHashMap<>());
+        if (deniedUntil.put(identifier, until) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    public void invalidate(String identifier) {
+        for (Map<String, Long> deniedUntil : deniedUntilByPolicy.values()) {
+            if (deniedUntil.remove(identifier) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops every entry, e.g. once policies changed: a denial cached under the old limits may
+     * outlast the wait under the new ones.
+     */
+    public void clear() {
+        for (Map<String, Long> deniedUntil : deniedUntilByPolicy.values()) {
+            for (String identifier : deniedUntil.keySet()) {
+                if (deniedUntil.remove(identifier) != null) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limiter.denied-cache-sweep-interval-ms:1000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Map<String, Long> deniedUntil : deniedUntilByPolicy.values()) {
+            deniedUntil.forEach((identifier, until) -> {
+                if (until <= now && deniedUntil.remove(identifier, until)) {
+                    size.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+}
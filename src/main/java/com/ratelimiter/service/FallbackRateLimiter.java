@@ -0,0 +1,192 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.model.RateLimitTier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides while Redis is unavailable, following the policy's failure mode. In "local" mode each
+ * node enforces its share of the global limit (capacity and refill rate divided by the number of
+ * nodes) in a {@link LocalTokenBucketEngine} bucket, so the cluster as a whole stays near the
+ * limit. Token bucket tokens spent locally are debited from the Redis bucket once it is back.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FallbackRateLimiter {
+
+    public static final String MODE_LOCAL = "local";
+    public static final String MODE_OPEN = "open";
+    public static final String MODE_CLOSED = "closed";
+
+    private static final String FALLBACK_NAMESPACE = "fallback:";
+    private static final int MAX_PENDING_DEBITS = 100_000;
+
+    private final LocalTokenBucketEngine localEngine;
+    private final TokenBucketRateLimiter tokenBucket;
+    private final RedisShardRouter shardRouter;
+    private final RateLimiterProperties properties;
+    private final Map<String, PendingDebit> pendingDebits = new ConcurrentHashMap<>();
+    private final AtomicBoolean active = new AtomicBoolean();
+    private volatile int observedNodes = 1;
+
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits, Exception cause) {
+        if (active.compareAndSet(false, true)) {
+            log.warn("Redis unavailable, deciding locally until it recovers: {}", cause.getMessage());
+        }
+
+        long resetTime = System.currentTimeMillis() + config.getWindow() * 1000L;
+        // A policy or client config may clear the mode: unset is the default, local
+        String failureMode = config.getFailureMode() != null ? config.getFailureMode() : MODE_LOCAL;
+        switch (failureMode) {
+            case MODE_OPEN:
+                return RateLimitResult.allowed(config.getCapacity(), resetTime, identifier);
+            case MODE_CLOSED:
+                return RateLimitResult.denied(resetTime, identifier);
+            default:
+                return checkLocally(identifier, config, permits, resetTime);
+        }
+    }
+
+    private RateLimitResult checkLocally(String identifier, RateLimitConfig config, int permits, long resetTime) {
+        if (config.getTiers() != null && !config.getTiers().isEmpty()) {
+            return checkTiersLocally(identifier, config, permits, resetTime);
+        }
+
+        RateLimitResult result = localEngine.checkRateLimit(FALLBACK_NAMESPACE + identifier,
+                share(config.getCapacity(), config.getRefillRate(), config.getWindow()), permits);
+        if (!result.isAllowed()) {
+            return RateLimitResult.denied(resetTime, identifier);
+        }
+
+        if (TokenBucketRateLimiter.ALGORITHM.equals(config.getAlgorithm())) {
+            // Added under the map's lock for the key, so reconcile never takes a debit mid-update
+            pendingDebits.compute(identifier, (k, debit) -> {
+                if (debit == null) {
+                    if (pendingDebits.size() >= MAX_PENDING_DEBITS) {
+                        return null;
+                    }
+                    debit = new PendingDebit(config);
+                }
+                debit.tokens.addAndGet(permits);
+                return debit;
+            });
+        }
+        return RateLimitResult.allowed(result.getRemaining(), resetTime, identifier);
+    }
+
+    /**
+     * Tiers are taken one after another here, not atomically: a tier denying after earlier
+     * tiers passed leaves their local tokens spent. Not reconciled with Redis.
+     */
+    private RateLimitResult checkTiersLocally(String identifier, RateLimitConfig config, int permits, long resetTime) {
+        int remaining = Integer.MAX_VALUE;
+        for (RateLimitTier tier : config.getTiers()) {
+            RateLimitResult result = localEngine.checkRateLimit(tierIdentifier(tier, identifier),
+                    share(tier.getCapacity(), tier.getRefillRate(), tier.getWindow()), permits);
+            if (!result.isAllowed()) {
+                return RateLimitResult.denied(resetTime, 0, identifier, tier.getName());
+            }
+            remaining = Math.min(remaining, result.getRemaining());
+        }
+        return RateLimitResult.allowed(remaining, resetTime, identifier);
+    }
+
+    private static String tierIdentifier(RateLimitTier tier, String identifier) {
+        return FALLBACK_NAMESPACE + "tier:" + tier.getName() + ":"
+                + (tier.getIdentifier() != null ? tier.getIdentifier() : identifier);
+    }
+
+    /**
+     * This node's share of a limit: capacity and refill rate divided by the node count.
+     */
+    private RateLimitConfig share(int capacity, int refillRate, int window) {
+        int nodes = getNodeCount();
+        return new RateLimitConfig(Math.max(1, (capacity + nodes - 1) / nodes), refillRate, window * nodes);
+    }
+
+    /**
+     * Once Redis answers again, take the tokens spent locally out of the Redis buckets and drop
+     * the local shares. A debit that fails, e.g. on a shard still down, is kept for the next run
+     * while the other identifiers are reconciled. Debits are only added to inside compute, so
+     * once removed from the map a debit no longer changes and tokens spent meanwhile start a
+     * fresh one.
+     */
+    @Scheduled(fixedDelayString = "${rate-limiter.fallback-reconcile-interval-ms:1000}")
+    public void reconcile() {
+        if (!shardRouter.isDegraded() && active.compareAndSet(true, false)) {
+            log.info("Redis available again, reconciling {} local fallback buckets", pendingDebits.size());
+        }
+        // A copy: a failed debit is put back, where a live iterator could meet it again
+        for (String identifier : List.copyOf(pendingDebits.keySet())) {
+            PendingDebit debit = pendingDebits.remove(identifier);
+            if (debit == null) {
+                continue;
+            }
+            try {
+                tokenBucket.debit(identifier, debit.config, debit.tokens.get());
+                localEngine.resetRateLimit(FALLBACK_NAMESPACE + identifier);
+            } catch (Exception e) {
+                pendingDebits.merge(identifier, debit, (current, failed) -> {
+                    current.tokens.addAndGet(failed.tokens.get());
+                    return current;
+                });
+            }
+        }
+    }
+
+    /**
+     * Drop the local shares of the identifier and the debit they still owe Redis.
+     */
+    public void reset(String identifier, RateLimitConfig config) {
+        pendingDebits.remove(identifier);
+        localEngine.resetRateLimit(FALLBACK_NAMESPACE + identifier);
+        if (config.getTiers() != null) {
+            for (RateLimitTier tier : config.getTiers()) {
+                if (tier.getIdentifier() == null) {
+                    localEngine.resetRateLimit(tierIdentifier(tier, identifier));
+                }
+            }
+        }
+    }
+
+    public boolean isActive() {
+        return active.get();
+    }
+
+    public int getPendingDebits() {
+        return pendingDebits.size();
+    }
+
+    public int getNodeCount() {
+        int configured = properties.getFallbackNodeCount();
+        return configured > 0 ? configured : observedNodes;
+    }
+
+    /**
+     * Called with the number of nodes currently publishing metrics snapshots.
+     */
+    public void updateObservedNodes(int nodes) {
+        observedNodes = Math.max(1, nodes);
+    }
+
+    private static final class PendingDebit {
+        private final RateLimitConfig config;
+        private final AtomicLong tokens = new AtomicLong();
+
+        PendingDebit(RateLimitConfig config) {
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed window counter: {@code capacity} requests per {@code window} seconds, the window
+ * starting with the first request. Cheapest algorithm, but allows up to twice the limit
+ * across a window boundary.
+ */
+@Service
+@RequiredArgsConstructor
+public class FixedWindowRateLimiter implements RateLimitEngine {
+
+    public static final String ALGORITHM = "fixed_window";
+
+    private static final String FIXED_WINDOW_NAMESPACE = "fw:";
+
+    private final RedisShardRouter shardRouter;
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        long currentTime = System.currentTimeMillis();
+
+        String key = RedisKeys.key(FIXED_WINDOW_NAMESPACE, identifier);
+        List<?> result = shardRouter.execute(key, redisTemplate -> redisTemplate.execute(
+                RedisScripts.FIXED_WINDOW,
+                Collections.singletonList(key),
+                String.valueOf(config.getCapacity()),
+                String.valueOf(config.getWindow()),
+                String.valueOf(permits)
+        ));
+
+        if (result == null) {
+            return RateLimitResult.denied(currentTime + config.getWindow() * 1000L, identifier);
+        }
+        boolean allowed = ((Number) result.get(0)).longValue() == 1;
+        return decision(identifier, config, permits, allowed, ((Number) result.get(1)).longValue(),
+            ((Number) result.get(2)).longValue(), currentTime);
+    }
+
+    /**
+     * The window's count as the next request would find it, from a GET and a PTTL; nothing is written.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        long currentTime = System.currentTimeMillis();
+        String key = RedisKeys.key(FIXED_WINDOW_NAMESPACE, identifier);
+        String count = shardRouter.execute(key, redisTemplate -> redisTemplate.opsForValue().get(key));
+        Long ttl = count != null ?
+            shardRouter.execute(key, redisTemplate -> redisTemplate.getExpire(key, TimeUnit.MILLISECONDS)) : null;
+
+        long remaining = config.getCapacity() - (count != null ? Long.parseLong(count) : 0);
+        return decision(identifier, config, 1, remaining > 0, remaining, ttl != null ? ttl : -1, currentTime);
+    }
+
+    /**
+     * The window resets when its counter expires, which the script set on the window's first
+     * request; without a counter a new window would start now.
+     */
+    private static RateLimitResult decision(String identifier, RateLimitConfig config, int permits,
+                                            boolean allowed, long remaining, long ttlMillis, long currentTime) {
+        long resetAfter = ttlMillis > 0 ? ttlMillis : config.getWindow() * 1000L;
+        long resetTime = currentTime + resetAfter;
+        if (allowed) {
+            return RateLimitResult.allowed((int) remaining, resetTime, identifier);
+        }
+        // More than a whole window admits is not worth retrying
+        return permits > config.getCapacity() ?
+            RateLimitResult.denied(resetTime, identifier) :
+            RateLimitResult.denied(resetTime, resetAfter, identifier);
+    }
+
+    @Override
+    public void resetRateLimit(String identifier) {
+        String key = RedisKeys.key(FIXED_WINDOW_NAMESPACE, identifier);
+        shardRouter.execute(key, redisTemplate -> redisTemplate.delete(key));
+    }
+}
@@ -0,0 +1,101 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generic cell rate algorithm. Same burst and rate semantics as the token bucket
+ * ({@code capacity} burst, {@code refillRate} tokens per {@code window} seconds), but the only
+ * state is the theoretical arrival time (TAT) of the next request, stored as a single integer
+ * in microseconds and updated with one GET and one SET PX.
+ */
+@Service
+@RequiredArgsConstructor
+public class GcraRateLimiter implements RateLimitEngine {
+
+    public static final String ALGORITHM = "gcra";
+
+    private static final String GCRA_NAMESPACE = "gcra:";
+
+    private final RedisShardRouter shardRouter;
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        requireValid(config);
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        if (permits > config.getCapacity()) {
+            // More than the burst can ever admit: no point in asking Redis or retrying
+            return RateLimitResult.denied(currentTime + windowMillis, identifier);
+        }
+        long emissionIntervalMicros = config.getWindow() * 1_000_000L / config.getRefillRate();
+
+        String key = RedisKeys.key(GCRA_NAMESPACE, identifier);
+        List<?> result = shardRouter.execute(key, redisTemplate -> redisTemplate.execute(
+                RedisScripts.GCRA,
+                Collections.singletonList(key),
+                String.valueOf(config.getCapacity()),
+                String.valueOf(emissionIntervalMicros),
+                String.valueOf(currentTime * 1000),
+                String.valueOf(permits)
+        ));
+
+        if (result == null) {
+            return RateLimitResult.denied(currentTime + windowMillis, identifier);
+        }
+        boolean allowed = ((Number) result.get(0)).longValue() == 1;
+        long resetTime = currentTime + microsToMillis(((Number) result.get(3)).longValue());
+        return allowed ?
+            RateLimitResult.allowed(((Number) result.get(1)).intValue(), resetTime, identifier) :
+            RateLimitResult.denied(resetTime, microsToMillis(((Number) result.get(2)).longValue()), identifier);
+    }
+
+    /**
+     * What the script would decide for one request, from a GET of the TAT; nothing is written.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        requireValid(config);
+        long currentTime = System.currentTimeMillis();
+        long emissionIntervalMicros = config.getWindow() * 1_000_000L / config.getRefillRate();
+        String key = RedisKeys.key(GCRA_NAMESPACE, identifier);
+        String stored = shardRouter.execute(key, redisTemplate -> redisTemplate.opsForValue().get(key));
+
+        long now = currentTime * 1000;
+        long tat = Math.max(now, stored != null ? Long.parseLong(stored) : now);
+        long resetTime = currentTime + microsToMillis(tat - now);
+        long allowAt = tat + emissionIntervalMicros - emissionIntervalMicros * config.getCapacity();
+        if (now < allowAt) {
+            return RateLimitResult.denied(resetTime, microsToMillis(allowAt - now), identifier);
+        }
+        // The requests that fit before the TAT runs a whole burst ahead, this one included
+        return RateLimitResult.allowed((int) ((now - allowAt) / emissionIntervalMicros + 1), resetTime, identifier);
+    }
+
+    @Override
+    public void resetRateLimit(String identifier) {
+        String key = RedisKeys.key(GCRA_NAMESPACE, identifier);
+        shardRouter.execute(key, redisTemplate -> redisTemplate.delete(key));
+    }
+
+    private static void requireValid(RateLimitConfig config) {
+        if (config.getRefillRate() < 1 || config.getWindow() < 1) {
+            throw new RateLimiterException("GCRA needs a positive refill rate and window");
+        }
+    }
+
+    private static long microsToMillis(long micros) {
+        return (micros + 999) / 1000;
+    }
+}
@@ -0,0 +1,175 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.model.RateLimitTier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several token buckets, e.g. user, tenant and global, checked in one script: a token is taken
+ * from every tier only if every tier has one, so a request denied by the tenant tier costs the
+ * user nothing. The result names the first tier that denied.
+ */
+@Service
+@RequiredArgsConstructor
+public class HierarchicalRateLimiter implements RateLimitEngine {
+
+    public static final String ALGORITHM = "hierarchical";
+
+    private static final String TIER_NAMESPACE = "tier:";
+
+    private final RedisShardRouter shardRouter;
+    private final ActiveKeyTracker activeKeyTracker;
+    private final RateLimiterProperties properties;
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        List<RateLimitTier> tiers = config.getTiers();
+        if (tiers == null || tiers.isEmpty()) {
+            throw new RateLimiterException("A hierarchical policy needs at least one tier");
+        }
+
+        long currentTime = System.currentTimeMillis();
+        for (RateLimitTier tier : tiers) {
+            if (permits > tier.getCapacity()) {
+                // More than the tier can ever hold: no point in asking Redis or retrying
+                return RateLimitResult.denied(currentTime + tier.getWindow() * 1000L, 0, identifier, tier.getName());
+            }
+        }
+        List<String> keys = tierKeys(identifier, tiers);
+        requireSingleNode(keys);
+
+        List<?> result = shardRouter.execute(keys.get(0), template -> template.execute(
+                properties.getBucketEncoding().hierarchical(), keys, tierArgs(tiers, currentTime, permits)));
+
+        RateLimitResult decision = decision(identifier, tiers, result, currentTime);
+        if (decision.isAllowed()) {
+            activeKeyTracker.record(keys.get(0));
+        }
+        return decision;
+    }
+
+    /**
+     * What {@link #checkRateLimit} would decide for one request, read in one script that writes
+     * nothing.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        List<RateLimitTier> tiers = config.getTiers();
+        if (tiers == null || tiers.isEmpty()) {
+            throw new RateLimiterException("A hierarchical policy needs at least one tier");
+        }
+        long currentTime = System.currentTimeMillis();
+        List<String> keys = tierKeys(identifier, tiers);
+        requireSingleNode(keys);
+
+        List<?> result = shardRouter.execute(keys.get(0), template -> template.execute(
+                properties.getBucketEncoding().hierarchicalPeek(), keys, tierArgs(tiers, currentTime, 0)));
+        return decision(identifier, tiers, result, currentTime);
+    }
+
+    /**
+     * The current time, the permits unless 0 (a peek takes none), then each tier's limits.
+     */
+    private static Object[] tierArgs(List<RateLimitTier> tiers, long currentTime, int permits) {
+        List<Object> args = new ArrayList<>(2 + tiers.size() * 3);
+        args.add(String.valueOf(currentTime));
+        if (permits > 0) {
+            args.add(String.valueOf(permits));
+        }
+        for (RateLimitTier tier : tiers) {
+            args.add(String.valueOf(tier.getCapacity()));
+            args.add(String.valueOf(tier.getRefillRate()));
+            args.add(String.valueOf(tier.getWindow() * 1000L));
+        }
+        return args.toArray();
+    }
+
+    /**
+     * Reads an {allowed, blockedTier, remaining, retryAfterMs} reply of either tier script.
+     */
+    private static RateLimitResult decision(String identifier, List<RateLimitTier> tiers, List<?> result, long currentTime) {
+        long longestWindow = 0;
+        for (RateLimitTier tier : tiers) {
+            longestWindow = Math.max(longestWindow, tier.getWindow() * 1000L);
+        }
+        long resetTime = currentTime + longestWindow;
+        if (result != null && ((Number) result.get(0)).longValue() == 1) {
+            return RateLimitResult.allowed(((Number) result.get(2)).intValue(), resetTime, identifier);
+        }
+        int blocked = result != null ? ((Number) result.get(1)).intValue() : 0;
+        long retryAfterMs = result != null ? ((Number) result.get(3)).longValue() : 0;
+        return RateLimitResult.denied(resetTime, retryAfterMs, identifier,
+                blocked > 0 ? tiers.get(blocked - 1).getName() : null);
+    }
+
+    static List<String> tierKeys(String identifier, List<RateLimitTier> tiers) {
+        List<String> keys = new ArrayList<>(tiers.size());
+        for (RateLimitTier tier : tiers) {
+            requireValid(tier);
+            String tierIdentifier = tier.getIdentifier() != null ? tier.getIdentifier() : identifier;
+            keys.add(RedisKeys.key(TIER_NAMESPACE + tier.getName() + ":", tierIdentifier));
+        }
+        return keys;
+    }
+
+    static void requireValid(RateLimitTier tier) {
+        if (tier.getName() == null) {
+            throw new RateLimiterException("Every tier of a hierarchical policy needs a name");
+        }
+        if (tier.getCapacity() < 1 || tier.getRefillRate() < 1 || tier.getWindow() < 1) {
+            throw new RateLimiterException("Tier " + tier.getName() + " needs a positive capacity, refill rate and window");
+        }
+    }
+
+    /**
+     * One script only sees keys of one cluster slot and one shard.
+     */
+    private void requireSingleNode(List<String> keys) {
+        boolean cluster = shardRouter.isCluster();
+        int slot = RedisKeys.slot(keys.get(0));
+        int shard = shardRouter.shardFor(keys.get(0));
+        for (String key : keys) {
+            if ((cluster && RedisKeys.slot(key) != slot) || shardRouter.shardFor(key) != shard) {
+                throw new RateLimiterException(
+                        "hierarchical tiers must share a hash tag when keys span slots or shards, e.g. {tenant}:user");
+            }
+        }
+    }
+
+    /**
+     * The tier keys follow from the policy's tiers; without it they could only be found by a scan.
+     */
+    @Override
+    public void resetRateLimit(String identifier) {
+        throw new RateLimiterException("Resetting hierarchical limits needs the identifier's policy");
+    }
+
+    /**
+     * Reset the tier buckets keyed by this identifier. Tiers keyed by another identifier, e.g.
+     * a tenant, are shared with other identifiers and kept.
+     */
+    @Override
+    public void resetRateLimit(String identifier, RateLimitConfig config) {
+        List<RateLimitTier> own = config.getTiers() == null ? List.of() : config.getTiers().stream()
+                .filter(tier -> tier.getIdentifier() == null || tier.getIdentifier().equals(identifier))
+                .toList();
+        if (own.isEmpty()) {
+            return;
+        }
+        List<String> keys = tierKeys(identifier, own);
+        // Every one of them carries the identifier's hash tag, so one shard holds them all
+        shardRouter.execute(keys.get(0), template -> template.delete(keys));
+    }
+}
@@ -0,0 +1,159 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streaming heavy-hitter detection over every decision. A count-min sketch estimates each
+ * identifier's request count with lock-free increments; its rows are indexed by double hashing
+ * one 64-bit MurmurHash64A of the identifier, so keys that collide in one row, e.g. under
+ * {@link String#hashCode()}, are unlikely to collide in the others. Identifiers whose
+ * estimate beats the smallest entry of a fixed top-K table take that entry over (Space-Saving
+ * style replacement of the minimum). Counts are halved every decay interval, so the estimate
+ * tracks recent traffic and a key stops being hot once it calms down.
+ */
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 14;
+    private static final int OFFER_EVERY = 16;
+
+    private final RateLimiterProperties properties;
+    private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+
+    // Guarded by this; minTopCount lets record() skip the lock for keys that cannot enter
+    private final String[] topKeys;
+    private final long[] topCounts;
+    private volatile long minTopCount;
+
+    public HotKeyDetector(RateLimiterProperties properties) {
+        this.properties = properties;
+        this.topKeys = new String[properties.getHotKeyTopK()];
+        this.topCounts = new long[properties.getHotKeyTopK()];
+    }
+
+    /**
+     * Count one decision for the identifier. The top-K table is only offered every
+     * {@value #OFFER_EVERY}th count of a key, so even hot keys rarely take its lock.
+     *
+     * @return whether the identifier is hot, from the same hash and estimate as the count
+     */
+    public boolean record(String identifier) {
+        long estimate = increment(hash(identifier));
+        if ((estimate & (OFFER_EVERY - 1)) == 0 && estimate > minTopCount) {
+            offer(identifier, estimate);
+        }
+        return estimate >= properties.getHotKeyThreshold();
+    }
+
+    public boolean isHot(String identifier) {
+        return estimate(identifier) >= properties.getHotKeyThreshold();
+    }
+
+    public long estimate(String identifier) {
+        long hash = hash(identifier);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, sketch.get(cell(row, hash)));
+        }
+        return min;
+    }
+
+    /**
+     * @return the top-K identifiers by estimated recent requests, highest first
+     */
+    public synchronized Map<String, Long> getTopKeys() {
+        Integer[] order = new Integer[topKeys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(topCounts[b], topCounts[a]));
+
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (int i : order) {
+            if (topKeys[i] != null) {
+                top.put(topKeys[i], topCounts[i]);
+            }
+        }
+        return top;
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limiter.hot-key-decay-interval-ms:10000}")
+    public void decay() {
+        for (int i = 0; i < sketch.length(); i++) {
+            long count = sketch.get(i);
+            if (count > 0) {
+                // Racing increments may be halved too; the sketch is an estimate either way
+                sketch.set(i, count >>> 1);
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < topCounts.length; i++) {
+                topCounts[i] >>>= 1;
+                if (topCounts[i] == 0) {
+                    topKeys[i] = null;
+                }
+            }
+            updateMinTopCount();
+        }
+    }
+
+    private long increment(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, sketch.incrementAndGet(cell(row, hash)));
+        }
+        return min;
+    }
+
+    private synchronized void offer(String identifier, long estimate) {
+        int min = 0;
+        for (int i = 0; i < topKeys.length; i++) {
+            if (identifier.equals(topKeys[i])) {
+                topCounts[i] = estimate;
+                updateMinTopCount();
+                return;
+            }
+            if (countAt(i) < countAt(min)) {
+                min = i;
+            }
+        }
+        if (estimate > countAt(min)) {
+            topKeys[min] = identifier;
+            topCounts[min] = estimate;
+            updateMinTopCount();
+        }
+    }
+
+    private long countAt(int i) {
+        return topKeys[i] == null ? 0 : topCounts[i];
+    }
+
+    private void updateMinTopCount() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < topKeys.length; i++) {
+            min = Math.min(min, countAt(i));
+        }
+        minTopCount = min;
+    }
+
+    private static long hash(String identifier) {
+        return ActiveKeyTracker.HyperLogLog.murmurHash64A(identifier);
+    }
+
+    /**
+     * Kirsch and Mitzenmacher: row i uses h1 + i * h2, the two halves of the 64-bit hash.
+     */
+    private static int cell(int row, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+    }
+}
@@ -0,0 +1,175 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept entirely in process memory. Limits hold per node only, but a decision
+ * never leaves the JVM: each bucket is a single {@code long} packing the token count
+ * (high 24 bits) and the last refill time in milliseconds since engine start (low 40 bits),
+ * updated with one CAS and no locks or allocation.
+ */
+@Service
+@RequiredArgsConstructor
+public class LocalTokenBucketEngine implements RateLimitEngine {
+
+    public static final String ALGORITHM = "local_token_bucket";
+
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long MAX_TOKENS = (1L << (Long.SIZE - TIME_BITS)) - 1;
+    // A bucket being evicted: MAX_TOKENS at the last representable millisecond, never a real state
+    private static final long EVICTED = -1L;
+
+    private final RateLimiterProperties properties;
+    private final long epochBase = System.currentTimeMillis();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        long capacity = Math.min(config.getCapacity(), MAX_TOKENS);
+        long resetTime = currentTime + windowMillis;
+
+        if (permits > capacity) {
+            // More than the bucket can ever hold: no retry time would help
+            return RateLimitResult.denied(resetTime, identifier);
+        }
+
+        long now = currentTime - epochBase;
+        long remaining = tryAcquire(identifier, capacity, config.getRefillRate(), windowMillis, now, permits);
+        return remaining >= 0 ?
+            RateLimitResult.allowed((int) remaining, resetTime, identifier) :
+            RateLimitResult.denied(resetTime, retryAfter(identifier, config.getRefillRate(), windowMillis, now, permits), identifier);
+    }
+
+    /**
+     * The bucket refilled to now, read without a CAS; an absent bucket is full and is not created.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        long capacity = Math.min(config.getCapacity(), MAX_TOKENS);
+        long resetTime = currentTime + windowMillis;
+        long now = currentTime - epochBase;
+
+        AtomicLong bucket = buckets.get(identifier);
+        long state = bucket != null ? bucket.get() : EVICTED;
+        long tokens = capacity;
+        if (state != EVICTED) {
+            long elapsed = Math.max(0, now - (state & TIME_MASK));
+            tokens = Math.min(capacity, (state >>> TIME_BITS) + (long) (elapsed * (double) config.getRefillRate() / windowMillis));
+        }
+        return tokens > 0 ?
+            RateLimitResult.allowed((int) tokens, resetTime, identifier) :
+            RateLimitResult.denied(resetTime, retryAfter(identifier, config.getRefillRate(), windowMillis, now, 1), identifier);
+    }
+
+    long tryAcquire(String identifier, long capacity, long refillRate, long windowMillis, long now) {
+        return tryAcquire(identifier, capacity, refillRate, windowMillis, now, 1);
+    }
+
+    /**
+     * @return tokens left after taking permits, or -1 if the bucket holds fewer
+     */
+    long tryAcquire(String identifier, long capacity, long refillRate, long windowMillis, long now, long permits) {
+        AtomicLong bucket = buckets.get(identifier);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(identifier, k -> new AtomicLong(pack(capacity, now)));
+        }
+
+        while (true) {
+            long state = bucket.get();
+            if (state == EVICTED) {
+                // Taken off the map, or about to be: a token taken from it would be lost
+                buckets.remove(identifier, bucket);
+                bucket = buckets.computeIfAbsent(identifier, k -> new AtomicLong(pack(capacity, now)));
+                continue;
+            }
+            long tokens = state >>> TIME_BITS;
+            long lastRefillTime = state & TIME_MASK;
+            long elapsed = Math.max(0, now - lastRefillTime);
+
+            long tokensToAdd = (long) (elapsed * (double) refillRate / windowMillis);
+            if (tokens + tokensToAdd >= capacity) {
+                tokens = capacity;
+                lastRefillTime = now;
+            } else if (tokensToAdd > 0) {
+                // Advance only by the time that produced whole tokens so fractions carry over
+                tokens += tokensToAdd;
+                lastRefillTime += (long) (tokensToAdd * (double) windowMillis / refillRate);
+            }
+
+            if (tokens < permits) {
+                return -1;
+            }
+            if (bucket.compareAndSet(state, pack(tokens - permits, lastRefillTime))) {
+                return tokens - permits;
+            }
+        }
+    }
+
+    /**
+     * Milliseconds until the bucket holds permits tokens; read only, for a request just denied.
+     */
+    long retryAfter(String identifier, long refillRate, long windowMillis, long now, long permits) {
+        AtomicLong bucket = buckets.get(identifier);
+        long state = bucket != null ? bucket.get() : EVICTED;
+        if (state == EVICTED || refillRate <= 0) {
+            // Evicted, so full again; or never refilled
+            return 0;
+        }
+        long tokens = state >>> TIME_BITS;
+        // lastRefillTime only advances by whole tokens, so the deficit is earned from there
+        long enoughAt = (state & TIME_MASK) + (long) Math.ceil((permits - tokens) * (double) windowMillis / refillRate);
+        return Math.max(1, enoughAt - now);
+    }
+
+    @Override
+    public void resetRateLimit(String identifier) {
+        buckets.remove(identifier);
+    }
+
+    /**
+     * Drop buckets that have not changed for longer than any window we expect to serve;
+     * such buckets are full, and a missing bucket is recreated full. The sweep runs more
+     * often than the timeout, so an idle bucket is held at most one interval past it. A bucket
+     * is marked {@link #EVICTED} before it is removed, so a request still holding it takes its
+     * token from the bucket that replaces it instead.
+     */
+    @Scheduled(fixedDelayString = "${rate-limiter.local-bucket-sweep-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.currentTimeMillis() - epochBase;
+        long idleTimeout = properties.getLocalBucketIdleTimeoutMs();
+        buckets.forEach((identifier, bucket) -> {
+            long state = bucket.get();
+            if (state != EVICTED && now - (state & TIME_MASK) > idleTimeout
+                    && bucket.compareAndSet(state, EVICTED)) {
+                buckets.remove(identifier, bucket);
+            }
+        });
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    private static long pack(long tokens, long time) {
+        return (tokens << TIME_BITS) | (time & TIME_MASK);
+    }
+}
@@ -0,0 +1,179 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitTier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-side policies: maps an identifier to the policy of the most specific matching
+ * pattern, or to the defaults. The rules are compiled once into a {@link PolicyTrie}, and the
+ * resolved policy is cached per identifier, so a repeat lookup is one map read. Resolved
+ * configs are shared between requests and must be treated as read-only.
+ *
+ * <p>Runtime policies from the {@link PolicyStore} are overlaid by name on the configured ones.
+ * Every change compiles a new immutable snapshot, cache included, and swaps it in with one
+ * volatile write: a lookup sees either the old policies or the new ones, never a mix.
+ */
+@Slf4j
+@Component
+public class PolicyRegistry {
+
+    public static final String DEFAULT_POLICY = "default";
+
+    private final RateLimiterProperties properties;
+    private volatile Snapshot snapshot;
+
+    public PolicyRegistry(RateLimiterProperties properties) {
+        this.properties = properties;
+        this.snapshot = compile(properties.getDefaults(), properties.getPolicies());
+        log.info("Compiled {} rate limit policies", properties.getPolicies().size());
+    }
+
+    public RateLimitConfig resolve(String identifier) {
+        Snapshot current = snapshot;
+        RateLimitConfig config = current.byIdentifier.get(identifier);
+        if (config != null) {
+            return config;
+        }
+        config = current.trie.match(identifier);
+        if (config == null) {
+            config = current.defaultPolicy;
+        }
+        // Full: further identifiers are matched against the trie on every call
+        if (current.cacheSize.get() < properties.getPolicyCacheMaxEntries()
+                && current.byIdentifier.putIfAbsent(identifier, config) == null) {
+            current.cacheSize.incrementAndGet();
+        }
+        return config;
+    }
+
+    /**
+     * Like {@link #resolve(String)} but leaves the cache alone, for walking many identifiers
+     * once, e.g. a status scan.
+     */
+    public RateLimitConfig lookup(String identifier) {
+        Snapshot current = snapshot;
+        RateLimitConfig config = current.byIdentifier.get(identifier);
+        if (config == null) {
+            config = current.trie.match(identifier);
+        }
+        return config != null ? config : current.defaultPolicy;
+    }
+
+    /**
+     * The config sent by a client only counts when allowClientConfig is set, and is held to the
+     * same limits as a policy.
+     */
+    public RateLimitConfig resolve(String identifier, RateLimitConfig clientConfig) {
+        if (clientConfig == null || !properties.isAllowClientConfig()) {
+            return resolve(identifier);
+        }
+        if (clientConfig.getCapacity() < 1 || clientConfig.getRefillRate() < 1 || clientConfig.getWindow() < 1) {
+            throw new RateLimiterException("A client config needs a positive capacity, refill rate and window");
+        }
+        validateTiers(clientConfig.getTiers());
+        return clientConfig;
+    }
+
+    public RateLimitConfig getDefaultPolicy() {
+        return snapshot.defaultPolicy;
+    }
+
+    /**
+     * Swap in the configured policies overlaid with these runtime ones; a runtime policy replaces
+     * the configured one of the same name. Runtime policies are applied in name order, so every
+     * node resolves alike whatever order they were read in.
+     */
+    public void apply(Collection<RateLimiterProperties.Policy> runtimePolicies) {
+        Map<String, RateLimiterProperties.Policy> byName = new LinkedHashMap<>();
+        for (RateLimiterProperties.Policy policy : properties.getPolicies()) {
+            byName.put(policy.getName(), policy);
+        }
+        runtimePolicies.stream()
+                .sorted(Comparator.comparing(RateLimiterProperties.Policy::getName))
+                .forEach(policy -> byName.put(policy.getName(), policy));
+        snapshot = compile(properties.getDefaults(), new ArrayList<>(byName.values()));
+    }
+
+    public static void validate(RateLimiterProperties.Policy policy) {
+        if (policy.getName() == null || policy.getName().isBlank()
+                || policy.getMatch() == null || policy.getMatch().isEmpty()) {
+            throw new RateLimiterException("Every rate limit policy needs a name and at least one match pattern");
+        }
+        if (policy.getCapacity() < 1 || policy.getRefillRate() < 1 || policy.getWindow() < 1) {
+            throw new RateLimiterException("Policy " + policy.getName() + " needs a positive capacity, refill rate and window");
+        }
+        validateTiers(policy.getTiers());
+    }
+
+    /**
+     * Each tier is a token bucket of its own: one without refill would never expire its key.
+     */
+    static void validateTiers(List<RateLimitTier> tiers) {
+        if (tiers == null) {
+            return;
+        }
+        for (RateLimitTier tier : tiers) {
+            HierarchicalRateLimiter.requireValid(tier);
+        }
+    }
+
+    static Snapshot compile(RateLimiterProperties.Defaults defaults, List<RateLimiterProperties.Policy> policies) {
+        Map<String, RateLimitConfig> byPattern = new LinkedHashMap<>();
+        for (RateLimiterProperties.Policy policy : policies) {
+            validate(policy);
+            RateLimitConfig config = toConfig(policy);
+            for (String pattern : policy.getMatch()) {
+                // First declaration wins, as in the lookup itself
+                byPattern.putIfAbsent(pattern, config);
+            }
+        }
+        return new Snapshot(PolicyTrie.compile(byPattern), defaultPolicy(defaults));
+    }
+
+    static RateLimitConfig toConfig(RateLimiterProperties.Policy policy) {
+        RateLimitConfig config = new RateLimitConfig(policy.getCapacity(), policy.getRefillRate(), policy.getWindow());
+        config.setAlgorithm(policy.getAlgorithm());
+        config.setPolicy(policy.getName());
+        config.setFailureMode(policy.getFailureMode());
+        config.setLeaseSize(policy.getLeaseSize());
+        config.setLeaseTtlMs(policy.getLeaseTtlMs());
+        config.setTiers(policy.getTiers() != null ? List.copyOf(policy.getTiers()) : null);
+        return config;
+    }
+
+    /**
+     * burstCapacity tokens, refilled at requestsPerMinute over windowSize seconds.
+     */
+    static RateLimitConfig defaultPolicy(RateLimiterProperties.Defaults defaults) {
+        int refillRate = Math.max(1, (int) ((long) defaults.getRequestsPerMinute() * defaults.getWindowSize() / 60));
+        RateLimitConfig config = new RateLimitConfig(defaults.getBurstCapacity(), refillRate, defaults.getWindowSize());
+        config.setAlgorithm(defaults.getAlgorithm());
+        config.setPolicy(DEFAULT_POLICY);
+        return config;
+    }
+
+    static final class Snapshot {
+        private final PolicyTrie trie;
+        private final RateLimitConfig defaultPolicy;
+        private final Map<String, RateLimitConfig> byIdentifier = new ConcurrentHashMap<>();
+        private final AtomicInteger cacheSize = new AtomicInteger();
+
+        Snapshot(PolicyTrie trie, RateLimitConfig defaultPolicy) {
+            this.trie = trie;
+            this.defaultPolicy = defaultPolicy;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.ratelimiter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Policies changed at runtime. The admin API writes them into one Redis hash, bumps a version
+ * counter and publishes the new version; every node then reloads the whole hash and swaps a
+ * new snapshot into the {@link PolicyRegistry}. A node that missed messages, e.g. while its
+ * connection was down, catches up on the next version poll, and the first poll after a failure
+ * always reloads in full. Every reload clears the {@link DeniedCache}, whose entries were timed
+ * under the old limits.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PolicyStore implements MessageListener {
+
+    public static final String CHANNEL = RedisKeys.PREFIX + "policies:changed";
+
+    // One hash tag: both keys live in one slot and are written by one script
+    static final String POLICIES_KEY = RedisKeys.internalKey("policies:", "store");
+    static final String VERSION_KEY = RedisKeys.internalKey("policies:version:", "store");
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final PolicyRegistry policyRegistry;
+    private final DeniedCache deniedCache;
+    private final ObjectMapper objectMapper;
+
+    // Guarded by this
+    private long appliedVersion = -1;
+    private volatile boolean stale = true;
+    private volatile List<RateLimiterProperties.Policy> runtimePolicies = List.of();
+
+    @PostConstruct
+    public void start() {
+        try {
+            resync(true);
+        } catch (Exception e) {
+            // The configured policies stay in force; the poll retries
+            log.warn("Could not load runtime rate limit policies at startup", e);
+        }
+    }
+
+    public List<RateLimiterProperties.Policy> getPolicies() {
+        return runtimePolicies;
+    }
+
+    public void save(RateLimiterProperties.Policy policy) {
+        PolicyRegistry.validate(policy);
+        try {
+            write(policy.getName(), objectMapper.writeValueAsString(policy));
+        } catch (JsonProcessingException e) {
+            throw new RateLimiterException("Could not serialize policy " + policy.getName(), e);
+        }
+    }
+
+    public void delete(String name) {
+        write(name, "");
+    }
+
+    private void write(String name, String json) {
+        Long version = redisTemplate.execute(RedisScripts.POLICY_WRITE, List.of(POLICIES_KEY, VERSION_KEY), name, json, CHANNEL);
+        log.info("Stored rate limit policy {} at version {}", name, version);
+        // Visible here at once, without waiting for our own message
+        resync(false);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            resync(false);
+        } catch (Exception e) {
+            stale = true;
+            log.warn("Failed to reload rate limit policies after a change event", e);
+        }
+    }
+
+    /**
+     * One GET per interval; reloads only when the version moved or the last attempt failed.
+     */
+    @Scheduled(fixedDelayString = "${rate-limiter.policy-resync-interval-ms:5000}")
+    public void poll() {
+        try {
+            String version = redisTemplate.opsForValue().get(VERSION_KEY);
+            boolean changed = (version != null ? Long.parseLong(version) : 0) != currentVersion();
+            if (stale || changed) {
+                resync(true);
+            }
+        } catch (Exception e) {
+            if (!stale) {
+                log.warn("Lost track of runtime rate limit policies, reloading once Redis is back", e);
+            }
+            stale = true;
+        }
+    }
+
+    /**
+     * @param force reload even if the version is the one already applied, e.g. after a flush
+     */
+    synchronized void resync(boolean force) {
+        List<?> result = redisTemplate.execute(RedisScripts.POLICY_READ, List.of(POLICIES_KEY, VERSION_KEY));
+        if (result == null) {
+            throw new RateLimiterException("No reply reading runtime rate limit policies");
+        }
+        long version = Long.parseLong(result.get(0).toString());
+        if (!force && version == appliedVersion) {
+            return;
+        }
+
+        List<?> entries = (List<?>) result.get(1);
+        List<RateLimiterProperties.Policy> policies = new ArrayList<>(entries.size() / 2);
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            try {
+                RateLimiterProperties.Policy policy =
+                        objectMapper.readValue(entries.get(i + 1).toString(), RateLimiterProperties.Policy.class);
+                // The hash field is the name the policy was stored and is deleted under
+                policy.setName(entries.get(i).toString());
+                PolicyRegistry.validate(policy);
+                policies.add(policy);
+            } catch (JsonProcessingException | RateLimiterException e) {
+                log.warn("Skipping unreadable rate limit policy {}", entries.get(i), e);
+            }
+        }
+
+        policyRegistry.apply(policies);
+        deniedCache.clear();
+        runtimePolicies = List.copyOf(policies);
+        appliedVersion = version;
+        stale = false;
+        log.info("Applied {} runtime rate limit policies at version {}", policies.size(), version);
+    }
+
+    synchronized long currentVersion() {
+        return appliedVersion;
+    }
+}
@@ -0,0 +1,147 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.model.RateLimitConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifier patterns compiled into a character trie over their literal prefix, the part before
+ * the first {@code *}. A lookup walks the identifier once and checks only the patterns hanging off
+ * the nodes it passes. The most specific pattern wins: the longest literal prefix, then an exact
+ * pattern over a wildcard one, then declaration order. Lookups allocate nothing.
+ */
+final class PolicyTrie {
+
+    private final Node root;
+
+    private PolicyTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param patterns pattern to policy, in declaration order
+     */
+    static PolicyTrie compile(Map<String, RateLimitConfig> patterns) {
+        Builder root = new Builder();
+        patterns.forEach((pattern, config) -> {
+            int star = pattern.indexOf('*');
+            String prefix = star < 0 ? pattern : pattern.substring(0, star);
+            Builder node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Builder());
+            }
+            // Exact patterns first; each list keeps declaration order
+            (star < 0 ? node.exact : node.wildcard).add(new Rule(star < 0 ? "" : pattern.substring(star), config));
+        });
+        return new PolicyTrie(root.build());
+    }
+
+    /**
+     * @return the policy of the most specific matching pattern, or null if none matches
+     */
+    RateLimitConfig match(String identifier) {
+        Node node = root;
+        RateLimitConfig best = node.match(identifier, 0);
+        for (int i = 0; i < identifier.length(); i++) {
+            node = node.child(identifier.charAt(i));
+            if (node == null) {
+                break;
+            }
+            RateLimitConfig matched = node.match(identifier, i + 1);
+            if (matched != null) {
+                best = matched;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * {@code *} matches any run of characters; everything else is literal.
+     */
+    static boolean globMatches(String pattern, String text, int textStart) {
+        int p = 0;
+        int t = textStart;
+        int star = -1;
+        int mark = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private record Rule(String rest, RateLimitConfig config) {
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final Rule[] rules;
+
+        Node(char[] keys, Node[] children, Rule[] rules) {
+            this.keys = keys;
+            this.children = children;
+            this.rules = rules;
+        }
+
+        Node child(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < c) {
+                    low = mid + 1;
+                } else if (keys[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        RateLimitConfig match(String identifier, int position) {
+            for (Rule rule : rules) {
+                if (rule.rest.isEmpty() ? position == identifier.length() : globMatches(rule.rest, identifier, position)) {
+                    return rule.config;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        private final List<Rule> exact = new ArrayList<>();
+        private final List<Rule> wildcard = new ArrayList<>();
+
+        Node build() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                nodes[i++] = child.getValue().build();
+            }
+            List<Rule> rules = new ArrayList<>(exact);
+            rules.addAll(wildcard);
+            return new Node(keys, nodes, rules.toArray(new Rule[0]));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+
+/**
+ * A rate limiting algorithm, selected per policy through {@link RateLimitConfig#getAlgorithm()}.
+ */
+public interface RateLimitEngine {
+
+    /**
+     * Name matched against {@link RateLimitConfig#getAlgorithm()}
+     */
+    String getAlgorithm();
+
+    default RateLimitResult checkRateLimit(String identifier, RateLimitConfig config) {
+        return checkRateLimit(identifier, config, 1);
+    }
+
+    /**
+     * Take {@code permits} units (tokens, bytes, query cost) at once; all or none are taken.
+     */
+    RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits);
+
+    /**
+     * As {@link #checkRateLimit(String, RateLimitConfig, int)}, with whether the hot key
+     * detector flagged the identifier when it counted this decision. Engines that shadow hot
+     * keys locally use it instead of hashing the identifier again.
+     */
+    default RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits, boolean hot) {
+        return checkRateLimit(identifier, config, permits);
+    }
+
+    /**
+     * The result a request would get now, without taking anything.
+     */
+    default RateLimitResult peek(String identifier, RateLimitConfig config) {
+        throw new RateLimiterException("Status is not available for algorithm: " + getAlgorithm());
+    }
+
+    void resetRateLimit(String identifier);
+
+    /**
+     * Reset under the identifier's policy. Engines whose keys depend on it, such as window
+     * counters or tiers, need it to find their keys without a scan.
+     */
+    default void resetRateLimit(String identifier, RateLimitConfig config) {
+        resetRateLimit(identifier);
+    }
+}
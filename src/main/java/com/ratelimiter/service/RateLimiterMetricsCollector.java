@@ -1,16 +1,21 @@
 package com.ratelimiter.service;
 
 import com.ratelimiter.model.RateLimitMetrics;
-import com.ratelimiter.model.RateLimitResult;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Aggregate gauges from {@link RateLimiterService#getMetrics()}. Per-decision counters and
+ * timers are published by {@link DecisionMetricsPipeline}.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -18,35 +23,30 @@ public class RateLimiterMetricsCollector {
     
     private final MeterRegistry meterRegistry;
     private final RateLimiterService rateLimiterService;
+    private final AtomicReference<RateLimitMetrics> latest = new AtomicReference<>();
     
-    @EventListener
-    @Async
-    public void handleRateLimitEvent(RateLimitResult result) {
-        // Record custom metrics
-        Timer.Sample sample = Timer.start(meterRegistry);
-        sample.stop(Timer.builder("rate_limit_decision_time")
-                .description("Time taken to make rate limit decision")
-                .register(meterRegistry));
-        
-        // Record by result type
-        meterRegistry.counter("rate_limit_decisions", 
-                "result", result.isAllowed() ? "allowed" : "denied",
-                "identifier", result.getIdentifier())
-                .increment();
+    @PostConstruct
+    public void registerGauges() {
+        gauge("rate_limiter_active_keys_total", RateLimitMetrics::getActiveKeys);
+        gauge("rate_limiter_allowed_rate", RateLimitMetrics::getAllowedRate);
+        gauge("rate_limiter_denied_rate", RateLimitMetrics::getDeniedRate);
     }
     
     @Scheduled(fixedRate = 60000) // Every minute
     public void recordMetrics() {
         try {
             RateLimitMetrics metrics = rateLimiterService.getMetrics();
-            
-            meterRegistry.gauge("rate_limiter_active_keys_total", metrics.getActiveKeys());
-            meterRegistry.gauge("rate_limiter_allowed_rate", metrics.getAllowedRate());
-            meterRegistry.gauge("rate_limiter_denied_rate", metrics.getDeniedRate());
+            latest.set(metrics);
             
             log.debug("Recorded rate limiter metrics: {}", metrics);
         } catch (Exception e) {
             log.error("Error recording metrics", e);
         }
     }
-} 
\ No newline at end of file
+    
+    private void gauge(String name, ToDoubleFunction<RateLimitMetrics> value) {
+        // Gauges read the latest snapshot; registering a boxed value instead would be garbage collected
+        Gauge.builder(name, latest, ref -> ref.get() != null ? value.applyAsDouble(ref.get()) : Double.NaN)
+                .register(meterRegistry);
+    }
+}
@@ -1,100 +1,218 @@
 package com.ratelimiter.service;
 
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
 import com.ratelimiter.model.RateLimitConfig;
 import com.ratelimiter.model.RateLimitMetrics;
+import com.ratelimiter.model.RateLimitRequest;
 import com.ratelimiter.model.RateLimitResult;
 import com.ratelimiter.model.TokenBucket;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.ToIntFunction;
 
+/**
+ * The rate limiting API and the token bucket batch plumbing shared by its implementations.
+ * {@link RateLimiterServiceImpl} is the bean that decides, metrics included.
+ */
 @Slf4j
-@Service
-public class RateLimiterService {
-
-    @Autowired
-    private RedisTemplate<String, String> redisTemplate;
-    
-    private static final String RATE_LIMIT_SCRIPT = """
-            local key = KEYS[1]
-            local maxTokens = tonumber(ARGV[1])
-            local refillRate = tonumber(ARGV[2])
-            local refillTime = tonumber(ARGV[3])
-            local currentTime = tonumber(ARGV[4])
-            
-            local lastRefillTime = tonumber(redis.call('hget', key, 'lastRefillTime') or currentTime)
-            local currentTokens = tonumber(redis.call('hget', key, 'tokens') or maxTokens)
-            
-            local timePassed = currentTime - lastRefillTime
-            local tokensToAdd = math.floor(timePassed * refillRate / refillTime)
-            local newTokens = math.min(maxTokens, currentTokens + tokensToAdd)
-            
-            if newTokens < 1 then
-                return 0
-            end
-            
-            redis.call('hset', key, 'tokens', newTokens - 1)
-            redis.call('hset', key, 'lastRefillTime', currentTime)
-            redis.call('expire', key, 60)
-            
-            return 1
-            """;
-
-    private final DefaultRedisScript<Long> rateLimitScript = new DefaultRedisScript<>(RATE_LIMIT_SCRIPT, Long.class);
+public abstract class RateLimiterService {
+
+    protected final RedisShardRouter shardRouter;
+    protected final RateLimiterProperties properties;
+
+    protected RateLimiterService(RedisShardRouter shardRouter, RateLimiterProperties properties) {
+        this.shardRouter = shardRouter;
+        this.properties = properties;
+    }
 
     public RateLimitResult checkRateLimit(String identifier) {
         return checkRateLimit(identifier, new RateLimitConfig());
     }
 
     public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config) {
-        boolean allowed = tryAcquire(identifier, config.getCapacity(), config.getRefillRate(), config.getWindow());
+        return tryAcquire(identifier, config, 1);
+    }
+
+    public RateLimitResult tryAcquire(String identifier, int permits) {
+        return tryAcquire(identifier, new RateLimitConfig(), permits);
+    }
+
+    /**
+     * Take {@code permits} units at once, e.g. the bytes of a payload or the cost of a query.
+     * Either all of them are taken or none. Decided by the engine of the config's algorithm.
+     */
+    public abstract RateLimitResult tryAcquire(String identifier, RateLimitConfig config, int permits);
+
+    public List<RateLimitResult> checkRateLimitBatch(List<RateLimitRequest> requests) {
+        return checkRateLimitBatch(requests, false);
+    }
+
+    /**
+     * Check every request in one Redis round trip. With allOrNothing set, tokens are only
+     * consumed if every item is allowed; otherwise each item is decided independently.
+     */
+    public abstract List<RateLimitResult> checkRateLimitBatch(List<RateLimitRequest> requests, boolean allOrNothing);
+
+    /**
+     * Runs the batch script once per group of keys one call may touch, see {@link #batchGroups}.
+     */
+    protected List<RateLimitResult> checkTokenBucketBatch(List<RateLimitRequest> requests, boolean allOrNothing) {
         long currentTime = System.currentTimeMillis();
-        long resetTime = currentTime + (config.getWindow() * 1000);
-        
-        return new RateLimitResult(allowed, allowed ? 1 : 0, resetTime, identifier);
+        RateLimitResult[] results = new RateLimitResult[requests.size()];
+        for (List<Integer> positions : batchGroups(shardRouter, requests, allOrNothing)) {
+            place(results, positions, checkBatchGroup(pick(requests, positions), currentTime, allOrNothing));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * One call of the batch script, for requests whose keys share a slot or shard.
+     */
+    protected abstract List<RateLimitResult> checkBatchGroup(List<RateLimitRequest> requests, long currentTime,
+                                                             boolean allOrNothing);
+
+    static List<RateLimitResult> runBatchScript(RedisShardRouter router, BucketEncoding encoding,
+                                                List<RateLimitRequest> requests, long currentTime, boolean allOrNothing) {
+        List<String> keys = batchKeys(requests);
+        List<?> raw = router.execute(keys.get(0), template -> template.execute(
+            encoding.tokenBucketBatch(),
+            keys,
+            batchArgs(requests, currentTime, allOrNothing)
+        ));
+        return batchResults(requests, raw, currentTime);
     }
 
-    public void resetRateLimit(String identifier) {
-        String redisKey = "rate_limit:" + identifier;
-        redisTemplate.delete(redisKey);
+    static boolean isBatchable(RateLimitRequest request) {
+        return TokenBucketRateLimiter.ALGORITHM.equals(configOf(request).getAlgorithm());
     }
 
-    public Optional<TokenBucket> getRateLimitStatus(String identifier) {
-        String redisKey = "rate_limit:" + identifier;
-        String tokens = redisTemplate.opsForHash().get(redisKey, "tokens").toString();
-        String lastRefillTime = redisTemplate.opsForHash().get(redisKey, "lastRefillTime").toString();
-        
-        if (tokens != null && lastRefillTime != null) {
-            return Optional.of(new TokenBucket(Long.parseLong(tokens), Long.parseLong(lastRefillTime)));
+    /**
+     * A script may only touch keys of one slot (cluster) or one shard: positions grouped so each
+     * group is one call, routed to its node. On a single standalone node that is one group.
+     */
+    static List<List<Integer>> batchGroups(RedisShardRouter router, List<RateLimitRequest> requests, boolean allOrNothing) {
+        if (router.isSharded()) {
+            return batchGroups(requests, allOrNothing, router::shardFor);
+        }
+        if (router.isCluster()) {
+            return batchSlotGroups(requests, allOrNothing);
         }
-        
-        return Optional.empty();
+        List<Integer> all = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            all.add(i);
+        }
+        return List.of(all);
     }
 
-    private boolean tryAcquire(String key, int maxTokens, int refillRate, int refillTimeSeconds) {
-        String redisKey = "rate_limit:" + key;
-        long currentTime = System.currentTimeMillis();
-        
-        Long result = redisTemplate.execute(
-            rateLimitScript,
-            Collections.singletonList(redisKey),
-            String.valueOf(maxTokens),
-            String.valueOf(refillRate),
-            String.valueOf(refillTimeSeconds),
-            String.valueOf(currentTime)
-        );
-        
-        return result != null && result == 1;
-    }
-
-    public RateLimitMetrics getMetrics() {
-        // Implementation needed
-        throw new UnsupportedOperationException("Method not implemented");
+    static List<List<Integer>> batchSlotGroups(List<RateLimitRequest> requests, boolean allOrNothing) {
+        return batchGroups(requests, allOrNothing, RedisKeys::slot);
+    }
+
+    /**
+     * Request positions grouped by the slot or shard of their key, in first-seen order.
+     * An all-or-nothing batch must fit in one group, since only a single script call is atomic.
+     */
+    static List<List<Integer>> batchGroups(List<RateLimitRequest> requests, boolean allOrNothing,
+                                           ToIntFunction<String> groupOfKey) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        List<String> keys = batchKeys(requests);
+        for (int i = 0; i < keys.size(); i++) {
+            groups.computeIfAbsent(groupOfKey.applyAsInt(keys.get(i)), group -> new ArrayList<>()).add(i);
+        }
+        if (allOrNothing && groups.size() > 1) {
+            throw new RateLimiterException(
+                "all_or_nothing batches must share a hash tag when keys span slots or shards, e.g. {tenant}:user");
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    static <T> List<T> pick(List<T> items, List<Integer> positions) {
+        List<T> picked = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            picked.add(items.get(position));
+        }
+        return picked;
     }
+
+    static void place(RateLimitResult[] results, List<Integer> positions, List<RateLimitResult> groupResults) {
+        for (int i = 0; i < positions.size(); i++) {
+            results[positions.get(i)] = groupResults.get(i);
+        }
+    }
+
+    static List<String> batchKeys(List<RateLimitRequest> requests) {
+        List<String> keys = new ArrayList<>(requests.size());
+        for (RateLimitRequest request : requests) {
+            keys.add(RedisKeys.key(request.getIdentifier()));
+        }
+        return keys;
+    }
+
+    static Object[] batchArgs(List<RateLimitRequest> requests, long currentTime, boolean allOrNothing) {
+        List<String> args = new ArrayList<>(2 + requests.size() * 4);
+        args.add(String.valueOf(currentTime));
+        args.add(allOrNothing ? "1" : "0");
+        for (RateLimitRequest request : requests) {
+            RateLimitConfig config = configOf(request);
+            args.add(String.valueOf(config.getCapacity()));
+            args.add(String.valueOf(config.getRefillRate()));
+            args.add(String.valueOf(config.getWindow() * 1000L));
+            args.add(String.valueOf(request.getPermits()));
+        }
+        return args.toArray();
+    }
+
+    static List<RateLimitResult> batchResults(List<RateLimitRequest> requests, List<?> raw, long currentTime) {
+        List<RateLimitResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            RateLimitRequest request = requests.get(i);
+            long resetTime = currentTime + (configOf(request).getWindow() * 1000L);
+            boolean allowed = raw != null && ((Number) raw.get(3 * i)).longValue() == 1;
+            int remaining = raw != null ? ((Number) raw.get(3 * i + 1)).intValue() : 0;
+            long retryAfterMs = raw != null ? ((Number) raw.get(3 * i + 2)).longValue() : 0;
+            results.add(allowed ?
+                RateLimitResult.allowed(remaining, resetTime, request.getIdentifier()) :
+                RateLimitResult.denied(resetTime, retryAfterMs, request.getIdentifier()));
+        }
+        return results;
+    }
+
+    static RateLimitConfig configOf(RateLimitRequest request) {
+        return request.getConfig() != null ? request.getConfig() : new RateLimitConfig();
+    }
+
+    static void requirePermits(int permits) {
+        if (permits < 1) {
+            throw new RateLimiterException("permits must be at least 1, got " + permits);
+        }
+    }
+
+    public abstract void resetRateLimit(String identifier);
+
+    /**
+     * The raw bucket as stored, or empty if the identifier has none (a full bucket).
+     */
+    public Optional<TokenBucket> getRateLimitStatus(String identifier) {
+        String redisKey = RedisKeys.key(identifier);
+        return Optional.ofNullable(shardRouter.execute(redisKey, template ->
+            properties.getBucketEncoding().read(template, redisKey)));
+    }
+
+    public RateLimitResult peek(String identifier) {
+        return peek(identifier, new RateLimitConfig());
+    }
+
+    /**
+     * What {@link #checkRateLimit(String, RateLimitConfig)} would answer now, without taking a token.
+     */
+    public abstract RateLimitResult peek(String identifier, RateLimitConfig config);
+
+    public abstract RateLimitMetrics getMetrics();
 }
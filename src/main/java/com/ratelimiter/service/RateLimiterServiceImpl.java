@@ -1,99 +1,317 @@
 package com.ratelimiter.service;
 
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.exception.RedisUnavailableException;
 import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitMetrics;
+import com.ratelimiter.model.RateLimitRequest;
 import com.ratelimiter.model.RateLimitResult;
-import com.ratelimiter.model.TokenBucket;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.List;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
+@Primary
 public class RateLimiterServiceImpl extends RateLimiterService {
 
-    private final RedisTemplate<String, String> redisTemplate;
-    
-    private static final String RATE_LIMIT_SCRIPT = """
-            local key = KEYS[1]
-            local maxTokens = tonumber(ARGV[1])
-            local refillRate = tonumber(ARGV[2])
-            local refillTime = tonumber(ARGV[3])
-            local currentTime = tonumber(ARGV[4])
-            
-            local lastRefillTime = tonumber(redis.call('hget', key, 'lastRefillTime') or currentTime)
-            local currentTokens = tonumber(redis.call('hget', key, 'tokens') or maxTokens)
-            
-            local timePassed = currentTime - lastRefillTime
-            local tokensToAdd = math.floor(timePassed * refillRate / refillTime)
-            local newTokens = math.min(maxTokens, currentTokens + tokensToAdd)
-            
-            if newTokens < 1 then
-                return 0
-            end
-            
-            redis.call('hset', key, 'tokens', newTokens - 1)
-            redis.call('hset', key, 'lastRefillTime', currentTime)
-            redis.call('expire', key, 60)
-            
-            return 1
-            """;
-
-    private final DefaultRedisScript<Long> rateLimitScript = new DefaultRedisScript<>(RATE_LIMIT_SCRIPT, Long.class);
+    private final List<RateLimitEngine> engines;
+    private final HotKeyDetector hotKeyDetector;
+    private final DecisionCounters decisionCounters;
+    private final ActiveKeyTracker activeKeyTracker;
+    private final DecisionMetricsPipeline decisionMetrics;
+    private final DeniedCache deniedCache;
+    private final FallbackRateLimiter fallback;
+    private final PolicyRegistry policyRegistry;
+
+    public RateLimiterServiceImpl(RedisShardRouter shardRouter, List<RateLimitEngine> engines,
+                                  HotKeyDetector hotKeyDetector, DecisionCounters decisionCounters,
+                                  ActiveKeyTracker activeKeyTracker, DecisionMetricsPipeline decisionMetrics,
+                                  DeniedCache deniedCache, FallbackRateLimiter fallback,
+                                  PolicyRegistry policyRegistry, RateLimiterProperties properties) {
+        super(shardRouter, properties);
+        this.engines = engines;
+        this.hotKeyDetector = hotKeyDetector;
+        this.decisionCounters = decisionCounters;
+        this.activeKeyTracker = activeKeyTracker;
+        this.decisionMetrics = decisionMetrics;
+        this.deniedCache = deniedCache;
+        this.fallback = fallback;
+        this.policyRegistry = policyRegistry;
+    }
 
     @Override
     public RateLimitResult checkRateLimit(String identifier) {
-        return checkRateLimit(identifier, new RateLimitConfig());
+        return tryAcquire(identifier, policyRegistry.resolve(identifier), 1);
     }
 
     @Override
-    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config) {
-        boolean allowed = tryAcquire(identifier, config.getCapacity(), config.getRefillRate(), config.getWindow());
-        long currentTime = System.currentTimeMillis();
-        long resetTime = currentTime + (config.getWindow() * 1000);
-        
-        return allowed ? 
-            RateLimitResult.allowed(1, resetTime, identifier) :
-            RateLimitResult.denied(resetTime, identifier);
+    public RateLimitResult tryAcquire(String identifier, int permits) {
+        return tryAcquire(identifier, policyRegistry.resolve(identifier), permits);
     }
 
     @Override
-    public void resetRateLimit(String identifier) {
-        String redisKey = "rate_limit:" + identifier;
-        redisTemplate.delete(redisKey);
+    public RateLimitResult tryAcquire(String identifier, RateLimitConfig config, int permits) {
+        requirePermits(permits);
+        long start = System.nanoTime();
+        long currentTime = System.currentTimeMillis();
+        boolean hot = hotKeyDetector.record(identifier);
+        RateLimitResult result = cachedDenial(identifier, config, currentTime);
+        if (result == null) {
+            result = evaluate(identifier, config, permits, hot);
+            rememberDenial(identifier, config, permits, currentTime, result);
+        }
+        recordDecision(config, result, System.nanoTime() - start);
+        return result;
     }
 
+    /**
+     * Token bucket items share the batch script; items for any other algorithm have none and are
+     * decided one by one, as {@link #tryAcquire} would. An all-or-nothing batch is one atomic
+     * script call, so it may only hold token bucket items.
+     */
     @Override
-    public Optional<TokenBucket> getRateLimitStatus(String identifier) {
-        String redisKey = "rate_limit:" + identifier;
-        String tokens = redisTemplate.opsForHash().get(redisKey, "tokens").toString();
-        String lastRefillTime = redisTemplate.opsForHash().get(redisKey, "lastRefillTime").toString();
-        
-        if (tokens != null && lastRefillTime != null) {
-            return Optional.of(new TokenBucket(Long.parseLong(tokens), Long.parseLong(lastRefillTime)));
+    public List<RateLimitResult> checkRateLimitBatch(List<RateLimitRequest> requests, boolean allOrNothing) {
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> batched = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            RateLimitRequest request = requests.get(i);
+            requirePermits(request.getPermits());
+            if (isBatchable(request)) {
+                batched.add(i);
+            } else if (allOrNothing) {
+                throw new RateLimiterException("all_or_nothing batches only support the token_bucket algorithm, got "
+                    + configOf(request).getAlgorithm());
+            }
+        }
+
+        RateLimitResult[] results = new RateLimitResult[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            RateLimitRequest request = requests.get(i);
+            if (!isBatchable(request)) {
+                results[i] = tryAcquire(request.getIdentifier(), configOf(request), request.getPermits());
+            }
         }
-        
-        return Optional.empty();
+        if (!batched.isEmpty()) {
+            place(results, batched, checkBatched(pick(requests, batched), allOrNothing));
+        }
+        return Arrays.asList(results);
     }
 
-    private boolean tryAcquire(String key, int maxTokens, int refillRate, int refillTimeSeconds) {
-        String redisKey = "rate_limit:" + key;
+    /**
+     * The batch script with the hooks of {@link #tryAcquire}: hot key sampling, the denied cache
+     * and decision metrics. Each item is timed as the whole batch, its real latency.
+     */
+    private List<RateLimitResult> checkBatched(List<RateLimitRequest> requests, boolean allOrNothing) {
+        long start = System.nanoTime();
         long currentTime = System.currentTimeMillis();
-        
-        Long result = redisTemplate.execute(
-            rateLimitScript,
-            Collections.singletonList(redisKey),
-            String.valueOf(maxTokens),
-            String.valueOf(refillRate),
-            String.valueOf(refillTimeSeconds),
-            String.valueOf(currentTime)
-        );
-        
-        return result != null && result == 1;
-    }
-}
\ No newline at end of file
+        RateLimitResult[] results = beforeBatch(requests, currentTime, allOrNothing);
+        List<Integer> pending = pending(results);
+        if (!pending.isEmpty()) {
+            place(results, pending, checkTokenBucketBatch(pick(requests, pending), allOrNothing));
+        }
+        afterBatch(requests, pending, results, currentTime, System.nanoTime() - start);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Samples every identifier for hot keys and answers the items the denied cache still denies.
+     * In an all-or-nothing batch one cached denial denies every item without a round trip.
+     *
+     * @return the results so far, null where the batch script has to decide
+     */
+    RateLimitResult[] beforeBatch(List<RateLimitRequest> requests, long currentTime, boolean allOrNothing) {
+        RateLimitResult[] results = new RateLimitResult[requests.size()];
+        boolean anyCached = false;
+        for (int i = 0; i < requests.size(); i++) {
+            RateLimitRequest request = requests.get(i);
+            results[i] = beforeDecision(request.getIdentifier(), configOf(request), currentTime);
+            anyCached |= results[i] != null;
+        }
+        if (allOrNothing && anyCached) {
+            for (int i = 0; i < requests.size(); i++) {
+                if (results[i] == null) {
+                    RateLimitRequest request = requests.get(i);
+                    results[i] = RateLimitResult.denied(currentTime + configOf(request).getWindow() * 1000L, request.getIdentifier());
+                }
+            }
+        }
+        return results;
+    }
+
+    static List<Integer> pending(RateLimitResult[] results) {
+        List<Integer> pending = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                pending.add(i);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Caches the denials the batch script answered and records every item's decision.
+     */
+    void afterBatch(List<RateLimitRequest> requests, List<Integer> pending, RateLimitResult[] results,
+                    long currentTime, long elapsedNanos) {
+        for (int i : pending) {
+            RateLimitRequest request = requests.get(i);
+            rememberDenial(request.getIdentifier(), configOf(request), request.getPermits(), currentTime, results[i]);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            recordDecision(configOf(requests.get(i)), results[i], elapsedNanos);
+        }
+    }
+
+    /**
+     * A group whose shard is unavailable is decided item by item by the fallback. For an
+     * all-or-nothing group one local denial denies every item; tokens the allowed items took
+     * from their local shares are not returned.
+     */
+    @Override
+    protected List<RateLimitResult> checkBatchGroup(List<RateLimitRequest> requests, long currentTime, boolean allOrNothing) {
+        List<RateLimitResult> results;
+        try {
+            results = runBatchScript(shardRouter, properties.getBucketEncoding(), requests, currentTime, allOrNothing);
+        } catch (RedisUnavailableException | DataAccessException e) {
+            return fallbackBatch(requests, allOrNothing, e);
+        }
+        recordActiveKeys(requests, results);
+        return results;
+    }
+
+    List<RateLimitResult> fallbackBatch(List<RateLimitRequest> requests, boolean allOrNothing, Exception cause) {
+        List<RateLimitResult> results = new ArrayList<>(requests.size());
+        boolean allAllowed = true;
+        for (RateLimitRequest request : requests) {
+            RateLimitResult result = fallback.checkRateLimit(request.getIdentifier(), configOf(request), request.getPermits(), cause);
+            allAllowed &= result.isAllowed();
+            results.add(result);
+        }
+        if (allOrNothing && !allAllowed) {
+            results.replaceAll(result -> RateLimitResult.denied(result.getResetTime(), result.getIdentifier()));
+        }
+        return results;
+    }
+
+    void recordActiveKeys(List<RateLimitRequest> requests, List<RateLimitResult> results) {
+        for (int i = 0; i < requests.size(); i++) {
+            if (results.get(i).isAllowed()) {
+                activeKeyTracker.record(RedisKeys.key(requests.get(i).getIdentifier()));
+            }
+        }
+    }
+
+    /**
+     * Samples the identifier for hot keys and answers from the denied cache while it still
+     * holds a denial for it.
+     *
+     * @return the cached denial, or null if the engine has to decide
+     */
+    RateLimitResult beforeDecision(String identifier, RateLimitConfig config, long currentTime) {
+        hotKeyDetector.record(identifier);
+        return cachedDenial(identifier, config, currentTime);
+    }
+
+    private RateLimitResult cachedDenial(String identifier, RateLimitConfig config, long currentTime) {
+        if (!properties.isDeniedCacheEnabled()) {
+            return null;
+        }
+        long retryAfterMs = deniedCache.retryAfter(config.getPolicy(), identifier, currentTime);
+        return retryAfterMs > 0 ?
+            RateLimitResult.denied(currentTime + config.getWindow() * 1000L, retryAfterMs, identifier) : null;
+    }
+
+    void recordDecision(RateLimitConfig config, RateLimitResult result, long elapsedNanos) {
+        decisionMetrics.record(config.getPolicy(), config.getAlgorithm(), result.isAllowed(), elapsedNanos);
+        decisionCounters.record(result.isAllowed());
+    }
+
+    /**
+     * Only single-permit denials are cached (fewer permits could pass sooner), and no hierarchical
+     * ones: the blocking tier may be shared and reset under another identifier.
+     */
+    void rememberDenial(String identifier, RateLimitConfig config, int permits, long currentTime,
+                        RateLimitResult result) {
+        if (properties.isDeniedCacheEnabled() && !result.isAllowed() && result.getRetryAfterMs() > 0
+                && permits == 1 && result.getBlockedTier() == null) {
+            // Measured from before the engine call, so the entry never outlives the real wait
+            deniedCache.deny(config.getPolicy(), identifier, currentTime + result.getRetryAfterMs());
+        }
+    }
+
+    private RateLimitResult evaluate(String identifier, RateLimitConfig config, int permits, boolean hot) {
+        RateLimitEngine engine = engineFor(config);
+        try {
+            return engine.checkRateLimit(identifier, config, permits, hot);
+        } catch (RedisUnavailableException | DataAccessException e) {
+            return fallback.checkRateLimit(identifier, config, permits, e);
+        }
+    }
+
+    /**
+     * Whether a failure is Redis being unreachable or erroring, which the fallback answers.
+     */
+    static boolean isRedisFailure(Throwable e) {
+        return e instanceof RedisUnavailableException || e instanceof DataAccessException;
+    }
+
+    /**
+     * Resets the engine of the identifier's policy and its local fallback share; other engines
+     * never held state for it.
+     */
+    @Override
+    public void resetRateLimit(String identifier) {
+        RateLimitConfig config = policyRegistry.resolve(identifier);
+        engineFor(config).resetRateLimit(identifier, config);
+        fallback.reset(identifier, config);
+        deniedCache.invalidate(identifier);
+    }
+
+    @Override
+    public RateLimitResult peek(String identifier) {
+        return peek(identifier, policyRegistry.resolve(identifier));
+    }
+
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        return engineFor(config).peek(identifier, config);
+    }
+
+    @Override
+    public RateLimitMetrics getMetrics() {
+        long allowed = decisionCounters.getAllowed();
+        long denied = decisionCounters.getDenied();
+        long total = allowed + denied;
+        return RateLimitMetrics.builder()
+                .totalRequests(total)
+                .allowedRequests(allowed)
+                .deniedRequests(denied)
+                .allowedRate(total > 0 ? (double) allowed / total : 0.0)
+                .activeKeys(activeKeyTracker.estimate())
+                .topRateLimitedKeys(hotKeyDetector.getTopKeys())
+                .lastResetTime(decisionCounters.getStartTime())
+                .windows(decisionCounters.windows())
+                .nodes(1)
+                .snapshotTime(System.currentTimeMillis())
+                .build();
+    }
+
+    private RateLimitEngine engineFor(RateLimitConfig config) {
+        for (RateLimitEngine engine : engines) {
+            if (engine.getAlgorithm().equals(config.getAlgorithm())) {
+                return engine;
+            }
+        }
+        throw new RateLimiterException("Unsupported rate limit algorithm: " + config.getAlgorithm());
+    }
+}
@@ -0,0 +1,178 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitRequest;
+import com.ratelimiter.model.RateLimitResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link RateLimiterService}. Token bucket checks run as async
+ * Lettuce script calls, so thousands of checks can be in flight without a thread each.
+ * Engines without an async path are offloaded to the bounded elastic scheduler. Async calls go
+ * through the same breaker, fallback, denied cache and decision hooks as blocking ones.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rate-limiter.reactive", name = "enabled", havingValue = "true")
+public class ReactiveRateLimiterService {
+
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+    private final RateLimiterServiceImpl rateLimiterService;
+    private final RedisShardRouter shardRouter;
+    private final ActiveKeyTracker activeKeyTracker;
+    private final FallbackRateLimiter fallback;
+    private final PolicyRegistry policyRegistry;
+    private final RateLimiterProperties properties;
+
+    public Mono<RateLimitResult> checkRateLimit(String identifier) {
+        return checkRateLimit(identifier, policyRegistry.resolve(identifier));
+    }
+
+    public Mono<RateLimitResult> checkRateLimit(String identifier, RateLimitConfig config) {
+        return tryAcquire(identifier, config, 1);
+    }
+
+    public Mono<RateLimitResult> tryAcquire(String identifier, RateLimitConfig config, int permits) {
+        if (LocalTokenBucketEngine.ALGORITHM.equals(config.getAlgorithm())) {
+            // In-process decision, no I/O to wait for
+            return Mono.fromSupplier(() -> rateLimiterService.tryAcquire(identifier, config, permits));
+        }
+        if (!TokenBucketRateLimiter.ALGORITHM.equals(config.getAlgorithm()) || config.isLeaseEnabled()
+                || permits < 1 || permits > config.getCapacity()) {
+            return Mono.fromCallable(() -> rateLimiterService.tryAcquire(identifier, config, permits))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+
+        long start = System.nanoTime();
+        long currentTime = System.currentTimeMillis();
+        RateLimitResult cached = rateLimiterService.beforeDecision(identifier, config, currentTime);
+        if (cached != null) {
+            rateLimiterService.recordDecision(config, cached, System.nanoTime() - start);
+            return Mono.just(cached);
+        }
+
+        long windowMillis = config.getWindow() * 1000L;
+        long resetTime = currentTime + windowMillis;
+        String key = RedisKeys.key(identifier);
+        return shardRouter.executeAsync(key, () -> reactiveRedisTemplate.execute(
+                        properties.getBucketEncoding().tokenBucket(),
+                        Collections.singletonList(key),
+                        List.of(
+                                String.valueOf(config.getCapacity()),
+                                String.valueOf(config.getRefillRate()),
+                                String.valueOf(windowMillis),
+                                String.valueOf(currentTime),
+                                String.valueOf(permits)))
+                        .collectList())
+                .map(ReactiveRateLimiterService::flatten)
+                .map(result -> ((Number) result.get(0)).longValue() == 1 ?
+                    RateLimitResult.allowed(((Number) result.get(1)).intValue(), resetTime, identifier) :
+                    RateLimitResult.denied(resetTime, ((Number) result.get(2)).longValue(), identifier))
+                .doOnNext(result -> {
+                    if (result.isAllowed()) {
+                        activeKeyTracker.record(key);
+                    }
+                })
+                .onErrorResume(RateLimiterServiceImpl::isRedisFailure,
+                    e -> Mono.fromSupplier(() -> fallback.checkRateLimit(identifier, config, permits, (Exception) e)))
+                .doOnNext(result -> {
+                    rateLimiterService.rememberDenial(identifier, config, permits, currentTime, result);
+                    rateLimiterService.recordDecision(config, result, System.nanoTime() - start);
+                });
+    }
+
+    public Mono<List<RateLimitResult>> checkRateLimitBatch(List<RateLimitRequest> requests, boolean allOrNothing) {
+        if (requests == null || requests.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        for (RateLimitRequest request : requests) {
+            RateLimiterService.requirePermits(request.getPermits());
+        }
+        if (!requests.stream().allMatch(RateLimiterService::isBatchable)) {
+            // Other algorithms have no batch script: decided item by item by the blocking service
+            return Mono.fromCallable(() -> rateLimiterService.checkRateLimitBatch(requests, allOrNothing))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+
+        long start = System.nanoTime();
+        long currentTime = System.currentTimeMillis();
+        RateLimitResult[] results = rateLimiterService.beforeBatch(requests, currentTime, allOrNothing);
+        List<Integer> pending = RateLimiterServiceImpl.pending(results);
+        Mono<List<RateLimitResult>> checked = pending.isEmpty() ?
+                Mono.just(Collections.emptyList()) :
+                checkTokenBucketBatch(RateLimiterService.pick(requests, pending), currentTime, allOrNothing);
+        return checked.map(checkedResults -> {
+            RateLimiterService.place(results, pending, checkedResults);
+            rateLimiterService.afterBatch(requests, pending, results, currentTime, System.nanoTime() - start);
+            return Arrays.asList(results);
+        });
+    }
+
+    private Mono<List<RateLimitResult>> checkTokenBucketBatch(List<RateLimitRequest> requests, long currentTime,
+                                                              boolean allOrNothing) {
+        if (!isCluster()) {
+            return checkBatchGroup(requests, currentTime, allOrNothing);
+        }
+
+        // One script call per slot; Lettuce pipelines the calls for each node over its connection
+        List<List<Integer>> slotGroups = RateLimiterService.batchSlotGroups(requests, allOrNothing);
+        RateLimitResult[] results = new RateLimitResult[requests.size()];
+        return Flux.fromIterable(slotGroups)
+                .flatMap(positions -> checkBatchGroup(RateLimiterService.pick(requests, positions), currentTime, allOrNothing)
+                        .doOnNext(groupResults -> RateLimiterService.place(results, positions, groupResults)))
+                .then(Mono.fromSupplier(() -> Arrays.asList(results)));
+    }
+
+    /**
+     * Resets run a few deletes each and are rare: offloaded to the blocking service.
+     */
+    public Mono<Void> resetRateLimit(String identifier) {
+        return Mono.<Void>fromRunnable(() -> rateLimiterService.resetRateLimit(identifier))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<RateLimitResult> peek(String identifier) {
+        return Mono.fromCallable(() -> rateLimiterService.peek(identifier))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * A group whose Redis call fails is decided item by item by the fallback, as in the blocking service.
+     */
+    private Mono<List<RateLimitResult>> checkBatchGroup(List<RateLimitRequest> requests, long currentTime, boolean allOrNothing) {
+        List<String> keys = RateLimiterService.batchKeys(requests);
+        return shardRouter.executeAsync(keys.get(0), () -> reactiveRedisTemplate.execute(
+                        properties.getBucketEncoding().tokenBucketBatch(),
+                        keys,
+                        List.of(RateLimiterService.batchArgs(requests, currentTime, allOrNothing)))
+                        .collectList())
+                .map(raw -> RateLimiterService.batchResults(requests, flatten(raw), currentTime))
+                .doOnNext(results -> rateLimiterService.recordActiveKeys(requests, results))
+                .onErrorResume(RateLimiterServiceImpl::isRedisFailure,
+                    e -> Mono.fromSupplier(() -> rateLimiterService.fallbackBatch(requests, allOrNothing, (Exception) e)));
+    }
+
+    private boolean isCluster() {
+        return reactiveRedisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory factory
+                && factory.isClusterAware();
+    }
+
+    /**
+     * Lettuce emits a multi-bulk script reply either element by element or as one list.
+     */
+    private static List<?> flatten(List<?> raw) {
+        return raw.size() == 1 && raw.get(0) instanceof List<?> nested ? nested : raw;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ratelimiter.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Count-based circuit breaker for one Redis node. The outcome of the last {@code windowSize}
+ * calls is kept in a ring; a call counts as failed when Redis errored or answered slower than
+ * {@code slowCallMillis}. Once at least {@code minimumCalls} were seen and the failed share
+ * reaches {@code failureRatePercent}, the circuit opens and callers skip Redis entirely. After
+ * {@code openMillis} a single probe call is let through; its outcome closes or reopens the circuit.
+ */
+public class RedisCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** What {@link #tryAcquirePermission()} returns when the caller must skip Redis. */
+    public static final long NOT_PERMITTED = -1;
+
+    /**
+     * The state, numbered by generation: every transition starts a new one, so an outcome can
+     * be matched to the state its call was admitted in.
+     */
+    private record Phase(State state, long generation, long openedAt) {
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final long openMillis;
+
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(State.CLOSED, 0, 0));
+    private final AtomicIntegerArray outcomes;
+    private final AtomicInteger position = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public RedisCircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent,
+                               long slowCallMillis, long openMillis) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openMillis = openMillis;
+        this.outcomes = new AtomicIntegerArray(windowSize);
+    }
+
+    /**
+     * @return a permit to hand to {@link #onResult} once the call is done, or
+     *         {@link #NOT_PERMITTED} when the caller must skip Redis
+     */
+    public long tryAcquirePermission() {
+        Phase current = phase.get();
+        if (current.state() == State.CLOSED) {
+            return current.generation();
+        }
+        if (current.state() == State.OPEN && System.currentTimeMillis() - current.openedAt() >= openMillis) {
+            // Exactly one caller wins the probe
+            Phase probe = new Phase(State.HALF_OPEN, current.generation() + 1, current.openedAt());
+            return phase.compareAndSet(current, probe) ? probe.generation() : NOT_PERMITTED;
+        }
+        return NOT_PERMITTED;
+    }
+
+    public void onResult(long permit, boolean succeeded, long elapsedNanos) {
+        Phase current = phase.get();
+        if (permit != current.generation()) {
+            // Admitted before the circuit last changed state, e.g. a slow call finishing during the probe
+            return;
+        }
+        boolean failed = !succeeded || elapsedNanos > slowCallNanos;
+        if (current.state() == State.HALF_OPEN) {
+            if (failed) {
+                open(current);
+            } else {
+                phase.compareAndSet(current, new Phase(State.CLOSED, current.generation() + 1, 0));
+            }
+            return;
+        }
+
+        int slot = Math.floorMod(position.getAndIncrement(), windowSize);
+        int previous = outcomes.getAndSet(slot, failed ? 1 : 0);
+        int failedCalls = failures.addAndGet((failed ? 1 : 0) - previous);
+        int seen = calls.updateAndGet(count -> Math.min(count + 1, windowSize));
+        if (seen >= minimumCalls && failedCalls * 100 >= failureRatePercent * seen) {
+            open(current);
+        }
+    }
+
+    public State getState() {
+        return phase.get().state();
+    }
+
+    /**
+     * Outcomes are cleared on the way out of CLOSED: while the circuit is open or probing no
+     * call of the current generation records any, so the next CLOSED starts from an empty ring.
+     */
+    private void open(Phase from) {
+        if (phase.compareAndSet(from, new Phase(State.OPEN, from.generation() + 1, System.currentTimeMillis()))) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < windowSize; i++) {
+            outcomes.set(i, 0);
+        }
+        failures.set(0);
+        calls.set(0);
+    }
+}
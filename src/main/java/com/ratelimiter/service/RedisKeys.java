@@ -0,0 +1,131 @@
+package com.ratelimiter.service;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Redis key layout shared by every engine. The identifier part of a key is wrapped in a hash
+ * tag, so all keys of one identifier (e.g. both sliding window counters) hash to the same
+ * cluster slot and can be touched by one script. Identifiers that already carry a hash tag,
+ * such as {@code {tenant-42}:user:7}, are kept as is: every identifier sharing that tag lands
+ * in one slot, which lets a tenant's limits be checked together.
+ *
+ * <p>With hashed keys on, the identifier is replaced by the first 96 bits of its MD5 in
+ * base64url, 16 characters whatever its length; a hash tag of its own is hashed the same way
+ * and kept in front, so tenants still share a slot. Keys the service owns, such as the policy
+ * store, are never hashed.
+ */
+public final class RedisKeys {
+
+    public static final String PREFIX = "rate_limit:";
+
+    private static final Base64.Encoder DIGEST_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    // Set once from rate-limiter.hashed-keys before any key is built
+    private static volatile boolean hashedKeys;
+
+    private RedisKeys() {
+    }
+
+    public static String key(String identifier) {
+        return key("", identifier);
+    }
+
+    /**
+     * @param namespace engine specific segment after the prefix, e.g. {@code "gcra:"}
+     */
+    public static String key(String namespace, String identifier) {
+        return PREFIX + namespace + tagged(identifier);
+    }
+
+    /**
+     * A key of the service itself, e.g. the policy store: never hashed, so every node finds it.
+     */
+    public static String internalKey(String namespace, String name) {
+        return PREFIX + namespace + "{" + name + "}";
+    }
+
+    /**
+     * The identifier as it appears in keys: wrapped in a hash tag unless it already has one.
+     */
+    public static String tagged(String identifier) {
+        if (hashedKeys) {
+            String digest = digest(identifier);
+            return hasHashTag(identifier) ? "{" + digest(hashTag(identifier)) + "}" + digest : "{" + digest + "}";
+        }
+        return hasHashTag(identifier) ? identifier : "{" + identifier + "}";
+    }
+
+    public static boolean isHashedKeys() {
+        return hashedKeys;
+    }
+
+    public static void setHashedKeys(boolean hashed) {
+        hashedKeys = hashed;
+    }
+
+    static String digest(String text) {
+        MessageDigest md5 = MD5.get();
+        byte[] hash = md5.digest(text.getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = new byte[12];
+        System.arraycopy(hash, 0, truncated, 0, truncated.length);
+        return DIGEST_ENCODER.encodeToString(truncated);
+    }
+
+    /**
+     * The text as a literal inside a SCAN MATCH glob: {@code * ? [ ] \} are escaped with a backslash.
+     */
+    public static String escapeGlob(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    public static int slot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * The part of a key Redis Cluster hashes: the first non-empty {@code {...}} section, or the whole key.
+     */
+    public static String hashTag(String key) {
+        long range = hashTagRange(key);
+        return key.substring((int) (range >>> 32), (int) range);
+    }
+
+    /**
+     * {@link #hashTag} as {@code start << 32 | end} within the key, for hashing it without a substring.
+     */
+    static long hashTagRange(String key) {
+        int open = key.indexOf('{');
+        if (open >= 0) {
+            int close = key.indexOf('}', open + 1);
+            if (close > open + 1) {
+                return (long) (open + 1) << 32 | close;
+            }
+        }
+        return key.length();
+    }
+
+    static boolean hasHashTag(String identifier) {
+        int open = identifier.indexOf('{');
+        return open >= 0 && identifier.indexOf('}', open + 1) > open + 1;
+    }
+}
@@ -0,0 +1,535 @@
+package com.ratelimiter.service;
+
+import org.springframework.data.redis.core.script.DigestUtils;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every Lua script the service runs, in one place. Each script has a name and a version,
+ * bumped whenever its behaviour or the state it reads and writes changes; the
+ * {@link ScriptRegistry} loads them all at startup and checks the versions against those
+ * other nodes have registered. Scripts are invoked by SHA only, and the SHA is computed once.
+ */
+public final class RedisScripts {
+
+    private static final List<Script<?>> ALL = new ArrayList<>();
+
+    /*
+     * Token bucket storage. Every bucket script is built twice, once per BucketEncoding: the
+     * body only goes through readBucket, which returns nil for an absent key, and writeBucket.
+     * An absent key is a full bucket, so a bucket written full is deleted instead, and any other
+     * expires when it would have refilled: an identifier that stops sending costs nothing.
+     *
+     * Inside the scripts tokens are counted in millionths (MICRO), so the part of a token earned
+     * since the last refill is kept when the bucket is written, rather than dropped with the
+     * refill time reset. Stored tokens are still in tokens, with up to six decimals.
+     */
+    private static final String MICRO_TOKENS = """
+            local MICRO = 1000000
+            
+            -- Millionths of a token earned over elapsed milliseconds
+            local function refill(elapsed, refillRate, refillTime)
+                return math.floor(elapsed * refillRate * MICRO / refillTime)
+            end
+            
+            -- Milliseconds until micros millionths of a token are earned
+            local function timeToEarn(micros, refillRate, refillTime)
+                return math.ceil(micros * refillTime / (refillRate * MICRO))
+            end
+            
+            """;
+
+    private static final String HASH_BUCKET = MICRO_TOKENS + """
+            local function readBucket(key)
+                local bucket = redis.call('hmget', key, 'tokens', 'lastRefillTime')
+                local tokens = tonumber(bucket[1])
+                return tokens and math.floor(tokens * MICRO + 0.5), tonumber(bucket[2])
+            end
+            
+            local function writeBucket(key, tokens, lastRefillTime, maxTokens, refillRate, refillTime)
+                if tokens >= maxTokens then
+                    redis.call('del', key)
+                    return
+                end
+                -- Whole tokens as integers, which most buckets hold
+                local stored = tokens % MICRO == 0 and tokens / MICRO or string.format('%.6f', tokens / MICRO)
+                redis.call('hmset', key, 'tokens', stored, 'lastRefillTime', lastRefillTime)
+                redis.call('pexpire', key, timeToEarn(maxTokens - tokens, refillRate, refillTime))
+            end
+            
+            """;
+
+    // Two big-endian doubles: exact for integers up to 2^53, epoch millis included
+    private static final String PACKED_BUCKET = MICRO_TOKENS + """
+            local function readBucket(key)
+                local packed = redis.call('get', key)
+                if not packed then
+                    return nil, nil
+                end
+                local tokens, lastRefillTime = struct.unpack('>dd', packed)
+                return math.floor(tokens * MICRO + 0.5), lastRefillTime
+            end
+            
+            local function writeBucket(key, tokens, lastRefillTime, maxTokens, refillRate, refillTime)
+                if tokens >= maxTokens then
+                    redis.call('del', key)
+                    return
+                end
+                local ttl = timeToEarn(maxTokens - tokens, refillRate, refillTime)
+                redis.call('set', key, struct.pack('>dd', tokens / MICRO, lastRefillTime), 'px', ttl)
+            end
+            
+            """;
+
+    private static final String TOKEN_BUCKET_BODY = """
+            local key = KEYS[1]
+            local maxTokens = tonumber(ARGV[1]) * MICRO
+            local refillRate = tonumber(ARGV[2])
+            local refillTime = tonumber(ARGV[3])
+            local currentTime = tonumber(ARGV[4])
+            local requested = tonumber(ARGV[5]) * MICRO
+            
+            local currentTokens, lastRefillTime = readBucket(key)
+            currentTokens = currentTokens or maxTokens
+            lastRefillTime = lastRefillTime or currentTime
+            
+            local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+            local newTokens = math.min(maxTokens, currentTokens + tokensToAdd)
+            
+            if newTokens < requested then
+                local enoughAt = lastRefillTime + timeToEarn(requested - currentTokens, refillRate, refillTime)
+                return {0, 0, math.max(1, enoughAt - currentTime)}
+            end
+            
+            writeBucket(key, newTokens - requested, currentTime, maxTokens, refillRate, refillTime)
+            
+            return {1, math.floor((newTokens - requested) / MICRO), 0}
+            """;
+
+    private static final String TOKEN_BUCKET_LEASE_BODY = """
+            local key = KEYS[1]
+            local maxTokens = tonumber(ARGV[1]) * MICRO
+            local refillRate = tonumber(ARGV[2])
+            local refillTime = tonumber(ARGV[3])
+            local currentTime = tonumber(ARGV[4])
+            local returned = tonumber(ARGV[5]) * MICRO
+            local requested = tonumber(ARGV[6])
+            local needed = tonumber(ARGV[7])
+            
+            local currentTokens, lastRefillTime = readBucket(key)
+            currentTokens = currentTokens or maxTokens
+            lastRefillTime = lastRefillTime or currentTime
+            
+            local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+            local newTokens = math.min(maxTokens, currentTokens + tokensToAdd + returned)
+            local granted = math.min(requested, math.floor(newTokens / MICRO))
+            if granted < needed then
+                granted = 0
+            end
+            
+            writeBucket(key, newTokens - granted * MICRO, currentTime, maxTokens, refillRate, refillTime)
+            
+            if granted == 0 and needed > 0 then
+                return {0, math.max(1, timeToEarn(needed * MICRO - newTokens, refillRate, refillTime))}
+            end
+            return {granted, 0}
+            """;
+
+    private static final String TOKEN_BUCKET_PEEK_BODY = """
+            local key = KEYS[1]
+            local maxTokens = tonumber(ARGV[1]) * MICRO
+            local refillRate = tonumber(ARGV[2])
+            local refillTime = tonumber(ARGV[3])
+            local currentTime = tonumber(ARGV[4])
+            
+            local currentTokens, lastRefillTime = readBucket(key)
+            currentTokens = currentTokens or maxTokens
+            lastRefillTime = lastRefillTime or currentTime
+            
+            local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+            local tokens = math.min(maxTokens, currentTokens + tokensToAdd)
+            if tokens >= MICRO then
+                return {math.floor(tokens / MICRO), 0}
+            end
+            
+            local nextAt = lastRefillTime + timeToEarn(MICRO - currentTokens, refillRate, refillTime)
+            return {0, math.max(1, nextAt - currentTime)}
+            """;
+
+    private static final String TOKEN_BUCKET_BATCH_BODY = """
+            local currentTime = tonumber(ARGV[1])
+            local allOrNothing = ARGV[2] == '1'
+            local tokens = {}
+            local limits = {}
+            local earnedFrom = {}
+            local taken = {}
+            local results = {}
+            local allAllowed = true
+            
+            for i, key in ipairs(KEYS) do
+                local offset = 2 + (i - 1) * 4
+                local requested = tonumber(ARGV[offset + 4]) * MICRO
+                if tokens[key] == nil then
+                    local maxTokens = tonumber(ARGV[offset + 1]) * MICRO
+                    local refillRate = tonumber(ARGV[offset + 2])
+                    local refillTime = tonumber(ARGV[offset + 3])
+                    local currentTokens, lastRefillTime = readBucket(key)
+                    currentTokens = currentTokens or maxTokens
+                    lastRefillTime = lastRefillTime or currentTime
+                    local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+                    tokens[key] = math.min(maxTokens, currentTokens + tokensToAdd)
+                    limits[key] = {maxTokens, refillRate, refillTime}
+                    -- Where refill counts from: a bucket that filled up starts over now
+                    if tokens[key] == maxTokens then
+                        earnedFrom[key] = {maxTokens, currentTime}
+                    else
+                        earnedFrom[key] = {currentTokens, lastRefillTime}
+                    end
+                    taken[key] = 0
+                end
+                if tokens[key] >= requested then
+                    tokens[key] = tokens[key] - requested
+                    taken[key] = taken[key] + requested
+                    results[3 * i - 2] = 1
+                    results[3 * i] = 0
+                else
+                    allAllowed = false
+                    local limit = limits[key]
+                    local from = earnedFrom[key]
+                    local enoughAt = from[2] + timeToEarn(requested + taken[key] - from[1], limit[2], limit[3])
+                    results[3 * i - 2] = 0
+                    results[3 * i] = math.max(1, enoughAt - currentTime)
+                end
+                results[3 * i - 1] = math.floor(tokens[key] / MICRO)
+            end
+            
+            if allOrNothing and not allAllowed then
+                for i = 1, #KEYS do
+                    results[3 * i - 2] = 0
+                end
+                return results
+            end
+            
+            for key, amount in pairs(taken) do
+                if amount > 0 then
+                    local limit = limits[key]
+                    writeBucket(key, tokens[key], currentTime, limit[1], limit[2], limit[3])
+                end
+            end
+            
+            return results
+            """;
+
+    private static final String HIERARCHICAL_BODY = """
+            local currentTime = tonumber(ARGV[1])
+            local requested = tonumber(ARGV[2]) * MICRO
+            local tokens = {}
+            local limits = {}
+            local blocked = 0
+            local remaining = -1
+            local retryAfter = 0
+
+            for i, key in ipairs(KEYS) do
+                local offset = 2 + (i - 1) * 3
+                local maxTokens = tonumber(ARGV[offset + 1]) * MICRO
+                local refillRate = tonumber(ARGV[offset + 2])
+                local refillTime = tonumber(ARGV[offset + 3])
+                local currentTokens, lastRefillTime = readBucket(key)
+                currentTokens = currentTokens or maxTokens
+                lastRefillTime = lastRefillTime or currentTime
+                local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+                tokens[i] = math.min(maxTokens, currentTokens + tokensToAdd)
+                limits[i] = {maxTokens, refillRate, refillTime}
+                if tokens[i] < requested then
+                    if blocked == 0 then
+                        blocked = i
+                    end
+                    local enoughAt = lastRefillTime + timeToEarn(requested - currentTokens, refillRate, refillTime)
+                    retryAfter = math.max(retryAfter, enoughAt - currentTime, 1)
+                elseif remaining < 0 or tokens[i] - requested < remaining then
+                    remaining = tokens[i] - requested
+                end
+            end
+
+            if blocked > 0 then
+                return {0, blocked, 0, retryAfter}
+            end
+
+            for i, key in ipairs(KEYS) do
+                local limit = limits[i]
+                writeBucket(key, tokens[i] - requested, currentTime, limit[1], limit[2], limit[3])
+            end
+
+            return {1, 0, math.floor(remaining / MICRO), 0}
+            """;
+
+    private static final String HIERARCHICAL_PEEK_BODY = """
+            local currentTime = tonumber(ARGV[1])
+            local blocked = 0
+            local remaining = -1
+            local retryAfter = 0
+
+            for i, key in ipairs(KEYS) do
+                local offset = 1 + (i - 1) * 3
+                local maxTokens = tonumber(ARGV[offset + 1]) * MICRO
+                local refillRate = tonumber(ARGV[offset + 2])
+                local refillTime = tonumber(ARGV[offset + 3])
+                local currentTokens, lastRefillTime = readBucket(key)
+                currentTokens = currentTokens or maxTokens
+                lastRefillTime = lastRefillTime or currentTime
+                local tokensToAdd = refill(currentTime - lastRefillTime, refillRate, refillTime)
+                local tokens = math.min(maxTokens, currentTokens + tokensToAdd)
+                if tokens < MICRO then
+                    if blocked == 0 then
+                        blocked = i
+                    end
+                    local nextAt = lastRefillTime + timeToEarn(MICRO - currentTokens, refillRate, refillTime)
+                    retryAfter = math.max(retryAfter, nextAt - currentTime, 1)
+                elseif remaining < 0 or tokens < remaining then
+                    remaining = tokens
+                end
+            end
+
+            if blocked > 0 then
+                return {0, blocked, 0, retryAfter}
+            end
+            return {1, 0, math.floor(remaining / MICRO), 0}
+            """;
+
+    /**
+     * Takes ARGV[5] tokens. Returns {allowed, remaining, retryAfterMs}; retryAfterMs is the
+     * exact time until the bucket holds enough tokens when denied, and 0 when allowed.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> TOKEN_BUCKET = register("token_bucket", 4, List.class, HASH_BUCKET + TOKEN_BUCKET_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_TOKEN_BUCKET = register("packed_token_bucket", 3, List.class, PACKED_BUCKET + TOKEN_BUCKET_BODY);
+
+    /**
+     * Returns the unused part of a previous lease (ARGV[5]) and reserves up to
+     * ARGV[6] tokens in the same call, or none if fewer than ARGV[7] are left. Returns
+     * {granted, retryAfterMs}; retryAfterMs is the time until ARGV[7] tokens are left when
+     * nothing was granted, and 0 otherwise.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> TOKEN_BUCKET_LEASE = register("token_bucket_lease", 5, List.class, HASH_BUCKET + TOKEN_BUCKET_LEASE_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_TOKEN_BUCKET_LEASE = register("packed_token_bucket_lease", 4, List.class, PACKED_BUCKET + TOKEN_BUCKET_LEASE_BODY);
+
+    /**
+     * Read-only: the tokens the bucket would hold now, without writing the refill back. An
+     * absent key is a full bucket. Returns {tokens, retryAfterMs}, retryAfterMs being the time
+     * until the next token when the bucket is empty.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> TOKEN_BUCKET_PEEK = register("token_bucket_peek", 4, List.class, HASH_BUCKET + TOKEN_BUCKET_PEEK_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_TOKEN_BUCKET_PEEK = register("packed_token_bucket_peek", 3, List.class, PACKED_BUCKET + TOKEN_BUCKET_PEEK_BODY);
+
+    /**
+     * Evaluates one token bucket per key in a single call. ARGV holds the current time,
+     * the all-or-nothing flag and then (maxTokens, refillRate, refillTime, permits) per key.
+     * Returns a flat {allowed, remaining, retryAfterMs} triple per key, retryAfterMs as for
+     * {@link #TOKEN_BUCKET} and 0 for items denied only because another item was.
+     * Repeated keys share one bucket.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> TOKEN_BUCKET_BATCH = register("token_bucket_batch", 5, List.class, HASH_BUCKET + TOKEN_BUCKET_BATCH_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_TOKEN_BUCKET_BATCH = register("packed_token_bucket_batch", 4, List.class, PACKED_BUCKET + TOKEN_BUCKET_BATCH_BODY);
+
+    /**
+     * ARGV holds the current time, the permits to take and then (maxTokens, refillRate,
+     * refillTime) per tier. Returns {allowed, blockedTier, remaining, retryAfterMs}: blockedTier
+     * is the 1-based index of the first tier short of permits, remaining the fewest tokens left
+     * over all tiers, and retryAfterMs the time until every such tier holds enough again.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> HIERARCHICAL = register("hierarchical", 4, List.class, HASH_BUCKET + HIERARCHICAL_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_HIERARCHICAL = register("packed_hierarchical", 3, List.class, PACKED_BUCKET + HIERARCHICAL_BODY);
+
+    /**
+     * Read-only counterpart of {@link #HIERARCHICAL}: ARGV holds the current time and then
+     * (maxTokens, refillRate, refillTime) per tier. Returns {allowed, blockedTier, remaining,
+     * retryAfterMs} for one more request, remaining being the fewest tokens any tier holds now
+     * and retryAfterMs the time until every empty tier has a token again.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> HIERARCHICAL_PEEK = register("hierarchical_peek", 1, List.class, HASH_BUCKET + HIERARCHICAL_PEEK_BODY);
+
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> PACKED_HIERARCHICAL_PEEK = register("packed_hierarchical_peek", 1, List.class, PACKED_BUCKET + HIERARCHICAL_PEEK_BODY);
+
+    /**
+     * KEYS are the current and previous window counters, ARGV[3] the time into the current
+     * window. Takes ARGV[4] requests. Returns {allowed, remaining}.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> SLIDING_WINDOW = register("sliding_window", 1, List.class, """
+            local currentKey = KEYS[1]
+            local previousKey = KEYS[2]
+            local limit = tonumber(ARGV[1])
+            local window = tonumber(ARGV[2])
+            local elapsed = tonumber(ARGV[3])
+            local requested = tonumber(ARGV[4])
+            
+            local previous = tonumber(redis.call('get', previousKey) or 0)
+            local current = tonumber(redis.call('get', currentKey) or 0)
+            local estimate = previous * (window - elapsed) / window + current
+            
+            if estimate + requested > limit then
+                return {0, 0}
+            end
+            
+            current = redis.call('incrby', currentKey, requested)
+            if current == requested then
+                redis.call('pexpire', currentKey, window * 2)
+            end
+            
+            return {1, math.floor(limit - estimate - requested)}
+            """);
+
+    /**
+     * Takes ARGV[3] requests from a counter that expires ARGV[2] seconds after the first.
+     * Returns {allowed, remaining, resetAfterMillis}, the last being the counter's PTTL
+     * (negative when there is no counter).
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> FIXED_WINDOW = register("fixed_window", 2, List.class, """
+            local key = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local window = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            
+            local current = redis.call('GET', key)
+            if current == false then
+                current = 0
+            else
+                current = tonumber(current)
+            end
+            
+            if current + requested <= limit then
+                local new_count = redis.call('INCRBY', key, requested)
+                if new_count == requested then
+                    redis.call('EXPIRE', key, window)
+                end
+                return {1, limit - new_count, redis.call('PTTL', key)}
+            else
+                return {0, limit - current, redis.call('PTTL', key)}
+            end
+            """);
+
+    /**
+     * Returns {allowed, remaining, retryAfterMicros, resetAfterMicros}.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> GCRA = register("gcra", 1, List.class, """
+            local key = KEYS[1]
+            local burst = tonumber(ARGV[1])
+            local interval = tonumber(ARGV[2])
+            local now = tonumber(ARGV[3])
+            local requested = tonumber(ARGV[4])
+            
+            local tat = tonumber(redis.call('get', key) or now)
+            if tat < now then
+                tat = now
+            end
+            
+            local newTat = tat + interval * requested
+            local allowAt = newTat - interval * burst
+            if now < allowAt then
+                return {0, 0, allowAt - now, tat - now}
+            end
+            
+            local resetAfter = newTat - now
+            redis.call('set', key, string.format('%.0f', newTat), 'px', math.ceil(resetAfter / 1000))
+            return {1, math.floor((now - allowAt) / interval), 0, resetAfter}
+            """);
+
+    /**
+     * ARGV holds the policy name, its JSON (empty to delete) and the channel. Returns the new version.
+     */
+    public static final Script<Long> POLICY_WRITE = register("policy_write", 1, Long.class, """
+            if ARGV[2] == '' then
+                redis.call('hdel', KEYS[1], ARGV[1])
+            else
+                redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            end
+            local version = redis.call('incr', KEYS[2])
+            redis.call('publish', ARGV[3], version)
+            return version
+            """);
+
+    /**
+     * Returns {version, {name, json, ...}} read together, so the policies match the version.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final Script<List> POLICY_READ = register("policy_read", 1, List.class, """
+            return {redis.call('get', KEYS[2]) or '0', redis.call('hgetall', KEYS[1])}
+            """);
+
+    private RedisScripts() {
+    }
+
+    public static List<Script<?>> all() {
+        return Collections.unmodifiableList(ALL);
+    }
+
+    private static <T> Script<T> register(String name, int version, Class<T> resultType, String source) {
+        Script<T> script = new Script<>(name, version, resultType, source);
+        ALL.add(script);
+        return script;
+    }
+
+    /**
+     * A named, versioned script. Unlike {@link org.springframework.data.redis.core.script.DefaultRedisScript}
+     * its SHA is fixed at construction, so invoking it takes no lock and no digest.
+     */
+    public static final class Script<T> implements RedisScript<T> {
+        private final String name;
+        private final int version;
+        private final Class<T> resultType;
+        private final String source;
+        private final String sha1;
+
+        private Script(String name, int version, Class<T> resultType, String source) {
+            this.name = name;
+            this.version = version;
+            this.resultType = resultType;
+            this.source = source;
+            this.sha1 = DigestUtils.sha1DigestAsHex(source);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getSha1() {
+            return sha1;
+        }
+
+        @Override
+        public Class<T> getResultType() {
+            return resultType;
+        }
+
+        @Override
+        public String getScriptAsString() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RedisUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Routes rate limit keys over independent standalone Redis nodes with a jump consistent hash of
+ * the key's hash tag, so all keys of one identifier (or one tagged tenant) live on the same
+ * shard. Growing from N to N + 1 shards moves about 1/(N + 1) of the keys. Each shard has a
+ * health flag and a circuit breaker: while a shard is down or too slow its keys fail fast with
+ * {@link RedisUnavailableException} and every other shard keeps serving.
+ * With no shards configured the router wraps the primary template as its only shard.
+ */
+@Slf4j
+public class RedisShardRouter implements DisposableBean {
+
+    private final List<RedisTemplate<String, String>> templates;
+    private final List<JedisConnectionFactory> ownedFactories;
+    private final AtomicBoolean[] healthy;
+    private final RedisCircuitBreaker[] breakers;
+
+    public RedisShardRouter(List<RedisTemplate<String, String>> templates,
+                            List<JedisConnectionFactory> ownedFactories,
+                            Supplier<RedisCircuitBreaker> breakerFactory) {
+        this.templates = List.copyOf(templates);
+        this.ownedFactories = List.copyOf(ownedFactories);
+        this.healthy = new AtomicBoolean[templates.size()];
+        this.breakers = new RedisCircuitBreaker[templates.size()];
+        for (int i = 0; i < healthy.length; i++) {
+            healthy[i] = new AtomicBoolean(true);
+            breakers[i] = breakerFactory.get();
+        }
+    }
+
+    public int getShardCount() {
+        return templates.size();
+    }
+
+    public boolean isSharded() {
+        return templates.size() > 1;
+    }
+
+    /**
+     * Whether a shard is a Redis Cluster, where one script may only touch keys of one slot.
+     */
+    public boolean isCluster() {
+        for (RedisTemplate<String, String> template : templates) {
+            if (template.getConnectionFactory() instanceof JedisConnectionFactory factory
+                    && factory.isRedisClusterAware()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int shardFor(String key) {
+        long tag = RedisKeys.hashTagRange(key);
+        return jumpHash(fnv1a64(key, (int) (tag >>> 32), (int) tag), templates.size());
+    }
+
+    public RedisTemplate<String, String> templateFor(int shard) {
+        return templates.get(shard);
+    }
+
+    public boolean isHealthy(int shard) {
+        return healthy[shard].get();
+    }
+
+    public RedisCircuitBreaker.State getCircuitState(int shard) {
+        return breakers[shard].getState();
+    }
+
+    /**
+     * @return whether any shard is marked down or has a circuit that is not closed
+     */
+    public boolean isDegraded() {
+        for (int shard = 0; shard < templates.size(); shard++) {
+            if (!healthy[shard].get() || breakers[shard].getState() != RedisCircuitBreaker.State.CLOSED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run a call against the shard owning the key. Failed and slow calls feed the shard's
+     * breaker; only the health check marks a shard down, so one dropped connection does not.
+     */
+    public <T> T execute(String key, Function<RedisTemplate<String, String>, T> call) {
+        return executeOnShard(shardFor(key), call);
+    }
+
+    public <T> T executeOnShard(int shard, Function<RedisTemplate<String, String>, T> call) {
+        RedisCircuitBreaker breaker = breakers[shard];
+        long permit = admit(shard);
+        long start = System.nanoTime();
+        try {
+            T result = call.apply(templates.get(shard));
+            breaker.onResult(permit, true, System.nanoTime() - start);
+            return result;
+        } catch (DataAccessResourceFailureException | QueryTimeoutException e) {
+            breaker.onResult(permit, false, System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            // Redis answered, e.g. with a script error: not an availability problem
+            breaker.onResult(permit, true, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * {@link #execute} for a non-blocking call on another client of the same Redis: the shard's
+     * health flag and breaker guard it, and its outcome feeds the breaker once it completes.
+     */
+    public <T> Mono<T> executeAsync(String key, Supplier<Mono<T>> call) {
+        int shard = shardFor(key);
+        return Mono.defer(() -> {
+            RedisCircuitBreaker breaker = breakers[shard];
+            long permit = admit(shard);
+            long start = System.nanoTime();
+            return call.get()
+                    .doOnSuccess(result -> breaker.onResult(permit, true, System.nanoTime() - start))
+                    .doOnError(e -> breaker.onResult(permit, !isAvailabilityFailure(e), System.nanoTime() - start))
+                    // A cancelled probe must still settle a half-open circuit
+                    .doOnCancel(() -> breaker.onResult(permit, true, System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * @return the breaker's permit for the call
+     */
+    private long admit(int shard) {
+        if (!healthy[shard].get()) {
+            throw new RedisUnavailableException("Redis shard " + shard + " is unavailable");
+        }
+        long permit = breakers[shard].tryAcquirePermission();
+        if (permit == RedisCircuitBreaker.NOT_PERMITTED) {
+            throw new RedisUnavailableException("Redis shard " + shard + " circuit is open");
+        }
+        return permit;
+    }
+
+    private static boolean isAvailabilityFailure(Throwable e) {
+        return e instanceof DataAccessResourceFailureException || e instanceof QueryTimeoutException;
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limiter.shard-health-check-interval-ms:1000}")
+    public void checkHealth() {
+        for (int shard = 0; shard < templates.size(); shard++) {
+            boolean up = ping(templates.get(shard));
+            if (healthy[shard].getAndSet(up) != up) {
+                log.warn("Redis shard {} is {}", shard, up ? "back up" : "down");
+            }
+        }
+    }
+
+    private static boolean ping(RedisTemplate<String, String> template) {
+        try {
+            return "PONG".equals(template.execute(RedisConnection::ping, true));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        ownedFactories.forEach(JedisConnectionFactory::destroy);
+    }
+
+    /**
+     * Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm".
+     */
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * FNV-1a of the UTF-8 bytes of value[from, to), encoded as they are hashed so routing a
+     * key allocates nothing.
+     */
+    static long fnv1a64(String value, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; ) {
+            // A hash tag ends at '}' or at the end of the key, so no surrogate pair straddles to
+            int codePoint = Utf8.codePointAt(value, i);
+            i += Utf8.charCount(codePoint);
+            int encoded = Utf8.encode(codePoint);
+            for (int b = Utf8.byteCount(codePoint); b > 0; b--) {
+                hash ^= encoded & 0xff;
+                hash *= 0x100000001b3L;
+                encoded >>>= 8;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,72 @@
+package com.ratelimiter.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Loads every script of {@link RedisScripts} on every shard at startup, so the first calls
+ * already run by SHA. Each shard also keeps the name, version and SHA of every script in one
+ * hash: a node finding a newer version registered, or a different source under its own
+ * version, says so at boot instead of silently disagreeing about the stored state.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScriptRegistry {
+
+    static final String VERSIONS_KEY = RedisKeys.internalKey("scripts:", "versions");
+
+    private final RedisShardRouter shardRouter;
+
+    @PostConstruct
+    public void loadAll() {
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            try {
+                load(shardRouter.templateFor(shard));
+            } catch (Exception e) {
+                // Not fatal: a script missing later is loaded on its first NOSCRIPT
+                log.warn("Could not preload scripts on shard {}", shard, e);
+            }
+        }
+    }
+
+    void load(RedisTemplate<String, String> template) {
+        template.execute((RedisCallback<Void>) connection -> {
+            for (RedisScripts.Script<?> script : RedisScripts.all()) {
+                // On a cluster connection SCRIPT LOAD goes to every node
+                String sha = connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                if (!script.getSha1().equals(sha)) {
+                    throw new IllegalStateException("Redis loaded " + sha + " for script " + script.getName());
+                }
+            }
+            return null;
+        });
+        checkVersions(template);
+        log.info("Loaded {} scripts", RedisScripts.all().size());
+    }
+
+    private void checkVersions(RedisTemplate<String, String> template) {
+        Map<Object, Object> registered = template.opsForHash().entries(VERSIONS_KEY);
+        for (RedisScripts.Script<?> script : RedisScripts.all()) {
+            Object entry = registered.get(script.getName());
+            String[] parts = entry != null ? entry.toString().split(":", 2) : null;
+            int version = parts != null ? Integer.parseInt(parts[0]) : 0;
+            if (version > script.getVersion()) {
+                log.warn("Script {} is at v{} on other nodes, this node runs v{}; state they write may not read back here",
+                        script.getName(), version, script.getVersion());
+            } else if (version == script.getVersion() && !parts[1].equals(script.getSha1())) {
+                log.error("Script {} v{} differs from the one other nodes registered under the same version; bump its version",
+                        script.getName(), version);
+            } else if (version < script.getVersion()) {
+                template.opsForHash().put(VERSIONS_KEY, script.getName(), script.getVersion() + ":" + script.getSha1());
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ratelimiter.service;
+
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultScriptExecutor;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Runs scripts by SHA only. Where the default executor falls back to EVAL, shipping the
+ * script body on every call until something loads it, a NOSCRIPT reply here (Redis restarted,
+ * failed over or had its script cache flushed) loads the script once and retries the EVALSHA.
+ */
+public class ShaScriptExecutor<K> extends DefaultScriptExecutor<K> {
+
+    public ShaScriptExecutor(RedisTemplate<K, ?> template) {
+        super(template);
+    }
+
+    @Override
+    protected <T> T eval(RedisConnection connection, RedisScript<T> script, ReturnType returnType, int numKeys,
+                         byte[][] keysAndArgs, RedisSerializer<T> resultSerializer) {
+        Object result;
+        try {
+            result = connection.scriptingCommands().evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            String sha = connection.scriptingCommands().scriptLoad(scriptBytes(script));
+            if (!script.getSha1().equals(sha)) {
+                throw new RedisSystemException("Redis loaded " + sha + " for script " + script.getSha1(), e);
+            }
+            result = connection.scriptingCommands().evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+        }
+        return script.getResultType() == null ? null : deserializeResult(resultSerializer, result);
+    }
+
+    static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Approximate sliding window counter. Each window is a plain counter key; the request rate is
+ * estimated as the previous window's count, weighted by how much of it still overlaps the
+ * sliding window, plus the current count. Allows {@code capacity} requests per {@code window}
+ * seconds without the boundary bursts of a fixed window.
+ */
+@Service
+@RequiredArgsConstructor
+public class SlidingWindowRateLimiter implements RateLimitEngine {
+
+    public static final String ALGORITHM = "sliding_window";
+
+    private static final String SLIDING_WINDOW_NAMESPACE = "sw:";
+
+    private final RedisShardRouter shardRouter;
+
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        long windowIndex = currentTime / windowMillis;
+        long windowStart = windowIndex * windowMillis;
+        List<String> keys = windowKeys(identifier, windowIndex);
+        List<?> result = shardRouter.execute(keys.get(0), redisTemplate -> redisTemplate.execute(
+                RedisScripts.SLIDING_WINDOW,
+                keys,
+                String.valueOf(config.getCapacity()),
+                String.valueOf(windowMillis),
+                String.valueOf(currentTime - windowStart),
+                String.valueOf(permits)
+        ));
+
+        long resetTime = windowStart + windowMillis;
+        boolean allowed = result != null && ((Number) result.get(0)).longValue() == 1;
+        return allowed ?
+            RateLimitResult.allowed(((Number) result.get(1)).intValue(), resetTime, identifier) :
+            RateLimitResult.denied(resetTime, identifier);
+    }
+
+    /**
+     * The estimate the next request would be checked against, from one MGET of both windows;
+     * nothing is written.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        long windowIndex = currentTime / windowMillis;
+        long windowStart = windowIndex * windowMillis;
+        List<String> keys = windowKeys(identifier, windowIndex);
+        List<String> counts = shardRouter.execute(keys.get(0), redisTemplate -> redisTemplate.opsForValue().multiGet(keys));
+
+        long current = count(counts, 0);
+        long previous = count(counts, 1);
+        double estimate = previous * (double) (windowMillis - (currentTime - windowStart)) / windowMillis + current;
+        long remaining = (long) Math.floor(config.getCapacity() - estimate);
+        long resetTime = windowStart + windowMillis;
+        return remaining > 0 ?
+            RateLimitResult.allowed((int) remaining, resetTime, identifier) :
+            RateLimitResult.denied(resetTime, identifier);
+    }
+
+    private static long count(List<String> counts, int index) {
+        return counts != null && counts.get(index) != null ? Long.parseLong(counts.get(index)) : 0;
+    }
+
+    /**
+     * The window keys follow from the policy's window; without it they could only be found by a scan.
+     */
+    @Override
+    public void resetRateLimit(String identifier) {
+        throw new RateLimiterException("Resetting a sliding window needs the identifier's policy");
+    }
+
+    /**
+     * Delete the two windows a check reads, the current and the previous one.
+     */
+    @Override
+    public void resetRateLimit(String identifier, RateLimitConfig config) {
+        long windowIndex = System.currentTimeMillis() / (config.getWindow() * 1000L);
+        List<String> keys = windowKeys(identifier, windowIndex);
+        shardRouter.execute(keys.get(0), redisTemplate -> redisTemplate.delete(keys));
+    }
+
+    private static List<String> windowKeys(String identifier, long windowIndex) {
+        String prefix = RedisKeys.key(SLIDING_WINDOW_NAMESPACE, identifier) + ":";
+        return List.of(prefix + windowIndex, prefix + (windowIndex - 1));
+    }
+}
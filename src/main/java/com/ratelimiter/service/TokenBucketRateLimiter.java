@@ -1,55 +1,37 @@
 package com.ratelimiter.service;
 
 import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
 import com.ratelimiter.model.RateLimitResult;
 import com.ratelimiter.model.TokenBucket;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
-public class TokenBucketRateLimiter {
+public class TokenBucketRateLimiter implements RateLimitEngine {
 
-    private final RedisTemplate<String, String> redisTemplate;
+    public static final String ALGORITHM = "token_bucket";
+
+    private final RedisShardRouter shardRouter;
     private final RateLimiterProperties properties;
-    private final Set<String> activeKeys = ConcurrentHashMap.newKeySet();
-
-    private static final String RATE_LIMIT_SCRIPT = """
-            local key = KEYS[1]
-            local maxTokens = tonumber(ARGV[1])
-            local refillRate = tonumber(ARGV[2])
-            local refillTime = tonumber(ARGV[3])
-            local currentTime = tonumber(ARGV[4])
-            
-            local lastRefillTime = tonumber(redis.call('hget', key, 'lastRefillTime') or currentTime)
-            local currentTokens = tonumber(redis.call('hget', key, 'tokens') or maxTokens)
-            
-            local timePassed = currentTime - lastRefillTime
-            local tokensToAdd = math.floor(timePassed * refillRate / refillTime)
-            local newTokens = math.min(maxTokens, currentTokens + tokensToAdd)
-            
-            if newTokens < 1 then
-                return 0
-            end
-            
-            redis.call('hset', key, 'tokens', newTokens - 1)
-            redis.call('hset', key, 'lastRefillTime', currentTime)
-            redis.call('expire', key, 60)
-            
-            return 1
-            """;
-
-    private final DefaultRedisScript<Long> rateLimitScript = new DefaultRedisScript<>(RATE_LIMIT_SCRIPT, Long.class);
-
-    private static final String RATE_LIMIT_KEY_PREFIX = "rate_limit:";
+    private final HotKeyDetector hotKeyDetector;
+    private final ActiveKeyTracker activeKeyTracker;
+    private final Map<String, TokenLease> leases = new ConcurrentHashMap<>();
 
     /**
      * Check if request is allowed based on rate limiting rules
@@ -61,69 +43,360 @@ public class TokenBucketRateLimiter {
                 Duration.ofMillis(properties.getDefaultRefillPeriodMs()));
     }
 
+    @Override
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits) {
+        return isAllowed(identifier, config, permits);
+    }
+
+    @Override
+    public RateLimitResult checkRateLimit(String identifier, RateLimitConfig config, int permits, boolean hot) {
+        return isAllowed(identifier, config, permits, hot);
+    }
+
+    /**
+     * The bucket as the next request would find it; takes nothing and writes nothing.
+     */
+    @Override
+    public RateLimitResult peek(String identifier, RateLimitConfig config) {
+        String key = RedisKeys.key(identifier);
+        long currentTime = System.currentTimeMillis();
+        long windowMillis = config.getWindow() * 1000L;
+        List<?> result = shardRouter.execute(key, redisTemplate -> redisTemplate.execute(
+                properties.getBucketEncoding().tokenBucketPeek(),
+                Collections.singletonList(key),
+                String.valueOf(config.getCapacity()),
+                String.valueOf(config.getRefillRate()),
+                String.valueOf(windowMillis),
+                String.valueOf(currentTime)
+        ));
+
+        long tokens = result != null ? ((Number) result.get(0)).longValue() : 0;
+        long resetTime = currentTime + windowMillis;
+        return tokens > 0 ?
+                RateLimitResult.allowed((int) tokens, resetTime, identifier) :
+                RateLimitResult.denied(resetTime, result != null ? ((Number) result.get(1)).longValue() : 0, identifier);
+    }
+
+    /**
+     * The scripts divide by the refill rate and the window: a bucket that never refills would
+     * get no expiry they can set.
+     */
+    private static void requireValid(long capacity, long refillRate, Duration window) {
+        if (capacity < 1 || refillRate < 1 || window.toMillis() < 1) {
+            throw new RateLimiterException("A token bucket needs a positive capacity, refill rate and window");
+        }
+    }
+
+    /**
+     * The refill step of the scripts, for buckets read without one: counted in millionths of a
+     * token like the scripts' refill(), so a fraction stored by the last write is not lost.
+     *
+     * @return whole tokens
+     */
+    static long refilledTokens(long microTokens, long lastRefillTime, long capacity, long refillRate,
+                               long refillTimeMillis, long currentTime) {
+        double earned = Math.floor(Math.max(0, currentTime - lastRefillTime) * (double) refillRate
+                * BucketEncoding.MICRO / refillTimeMillis);
+        return (long) Math.min(capacity * BucketEncoding.MICRO, microTokens + earned) / BucketEncoding.MICRO;
+    }
+
+    public RateLimitResult isAllowed(String identifier, RateLimitConfig config) {
+        return isAllowed(identifier, config, 1);
+    }
+
+    /**
+     * Check if request is allowed under the given policy. Policies with a lease
+     * configured, and identifiers the hot key detector flags, are served from a
+     * node-local reservation instead of Redis, unless one request takes more than a lease.
+     */
+    public RateLimitResult isAllowed(String identifier, RateLimitConfig config, int permits) {
+        return isAllowed(identifier, config, permits, !config.isLeaseEnabled() && hotKeyDetector.isHot(identifier));
+    }
+
+    private RateLimitResult isAllowed(String identifier, RateLimitConfig config, int permits, boolean hot) {
+        Duration window = Duration.ofSeconds(config.getWindow());
+        long leaseSize = config.isLeaseEnabled() ? config.getLeaseSize() :
+                hot ? properties.getHotKeyLeaseSize() : 0;
+        leaseSize = Math.min(leaseSize, config.getCapacity());
+        if (leaseSize >= permits) {
+            // For hot keys this is a shadow bucket: one Redis round trip per hotKeyLeaseSize requests
+            long leaseTtlMs = config.isLeaseEnabled() ? config.getLeaseTtlMs() : properties.getHotKeyLeaseTtlMs();
+            return isAllowedWithLease(identifier, config.getCapacity(), config.getRefillRate(), window,
+                    leaseSize, leaseTtlMs, permits);
+        }
+        return isAllowed(identifier, config.getCapacity(), config.getRefillRate(), window, permits);
+    }
+
     /**
      * Check if request is allowed with custom parameters
      */
     public RateLimitResult isAllowed(String identifier, long capacity, long refillRate, Duration window) {
-        String key = RATE_LIMIT_KEY_PREFIX + identifier;
+        return isAllowed(identifier, capacity, refillRate, window, 1);
+    }
+
+    public RateLimitResult isAllowed(String identifier, long capacity, long refillRate, Duration window, int permits) {
+        requireValid(capacity, refillRate, window);
+        String key = RedisKeys.key(identifier);
         long currentTime = System.currentTimeMillis();
+        if (permits > capacity) {
+            // More than the bucket can ever hold: no point in asking Redis or retrying
+            return RateLimitResult.denied(currentTime + window.toMillis(), identifier);
+        }
 
-        Long result = redisTemplate.execute(
-                rateLimitScript,
+        List<?> result = shardRouter.execute(key, redisTemplate -> redisTemplate.execute(
+                properties.getBucketEncoding().tokenBucket(),
                 Collections.singletonList(key),
                 String.valueOf(capacity),
                 String.valueOf(refillRate),
                 String.valueOf(window.toMillis()),
-                String.valueOf(currentTime)
-        );
+                String.valueOf(currentTime),
+                String.valueOf(permits)
+        ));
 
-        boolean allowed = result != null && result == 1;
+        boolean allowed = result != null && ((Number) result.get(0)).longValue() == 1;
         long resetTime = currentTime + window.toMillis();
 
         if (allowed) {
-            activeKeys.add(key);
-            return RateLimitResult.allowed(1, resetTime, identifier);
+            activeKeyTracker.record(key);
+            return RateLimitResult.allowed(((Number) result.get(1)).intValue(), resetTime, identifier);
         } else {
-            return RateLimitResult.denied(resetTime, identifier);
+            long retryAfterMs = result != null ? ((Number) result.get(2)).longValue() : 0;
+            return RateLimitResult.denied(resetTime, retryAfterMs, identifier);
         }
     }
 
     /**
-     * Get current bucket state for monitoring
+     * Serve the request from a local lease, reserving a new one from Redis when the
+     * current lease is exhausted or expired. A node never holds more than leaseSize
+     * tokens, and reserved tokens are only spent within leaseTtlMs of being granted,
+     * so across N nodes the global limit can be overdrawn by at most N * leaseSize.
      */
-    public Optional<TokenBucket> getBucketState(String identifier) {
-        String key = RATE_LIMIT_KEY_PREFIX + identifier;
-        Object tokensObj = redisTemplate.opsForHash().get(key, "tokens");
-        Object lastRefillTimeObj = redisTemplate.opsForHash().get(key, "lastRefillTime");
+    public RateLimitResult isAllowedWithLease(String identifier, long capacity, long refillRate,
+                                              Duration window, long leaseSize, long leaseTtlMs) {
+        return isAllowedWithLease(identifier, capacity, refillRate, window, leaseSize, leaseTtlMs, 1);
+    }
+
+    public RateLimitResult isAllowedWithLease(String identifier, long capacity, long refillRate,
+                                              Duration window, long leaseSize, long leaseTtlMs, int permits) {
+        requireValid(capacity, refillRate, window);
+        String key = RedisKeys.key(identifier);
+        long currentTime = System.currentTimeMillis();
+        long resetTime = currentTime + window.toMillis();
 
-        if (tokensObj != null && lastRefillTimeObj != null) {
+        TokenLease lease = leases.get(key);
+        long remaining = lease != null ? lease.tryTake(currentTime, permits) : -1;
+        if (remaining < 0 && lease != null && lease.deniesUntil(currentTime, permits)) {
+            // Redis said no less than retryAfterMs ago: no point in asking again before then
+            return RateLimitResult.denied(resetTime, lease.expiresAt - currentTime, identifier);
+        }
+        if (remaining < 0) {
+            if (lease == null) {
+                lease = leases.computeIfAbsent(key, k -> new TokenLease(0, 0, capacity, refillRate, window.toMillis(), 0));
+            }
+            if (!lease.refreshing.compareAndSet(false, true)) {
+                // Another thread is refreshing this lease: decide in Redis rather than wait for it
+                return isAllowed(identifier, capacity, refillRate, window, permits);
+            }
+            // Only the thread that claimed the lease goes to Redis, and holds no lock while it does
+            long returned = lease.drain();
+            TokenLease refreshed;
             try {
-                long tokens = Long.parseLong(tokensObj.toString());
-                long lastRefillTime = Long.parseLong(lastRefillTimeObj.toString());
-                return Optional.of(new TokenBucket(tokens, lastRefillTime));
-            } catch (NumberFormatException e) {
-                System.err.println("Error parsing bucket state for " + identifier + ": " + e.getMessage());
-                return Optional.empty();
+                Grant grant = reserve(key, capacity, refillRate, window.toMillis(), currentTime, returned, leaseSize, permits);
+                refreshed = grant.tokens() > 0
+                        ? new TokenLease(grant.tokens(), currentTime + leaseTtlMs, capacity, refillRate, window.toMillis(), 0)
+                        : new TokenLease(0, currentTime + grant.retryAfterMs(), capacity, refillRate, window.toMillis(), permits);
+            } catch (RuntimeException e) {
+                if (returned > 0) {
+                    // Still owed to Redis: held until the old expiry, then returned by the sweep
+                    leases.replace(key, lease, new TokenLease(returned, lease.expiresAt, capacity, refillRate, window.toMillis(), 0));
+                } else {
+                    leases.remove(key, lease);
+                }
+                throw e;
+            }
+            remaining = refreshed.tryTake(currentTime, permits);
+            if (!leases.replace(key, lease, refreshed)) {
+                // Reset meanwhile: no one else can spend what is left of the grant
+                returnTokens(key, refreshed, currentTime);
+            }
+            if (remaining < 0) {
+                return RateLimitResult.denied(resetTime, refreshed.expiresAt - currentTime, identifier);
             }
         }
 
-        return Optional.empty();
+        activeKeyTracker.record(key);
+        return RateLimitResult.allowed((int) remaining, resetTime, identifier);
+    }
+
+    /**
+     * Return the unused tokens of expired leases so other nodes can spend them.
+     */
+    @Scheduled(fixedDelayString = "${rate-limiter.lease-sweep-interval-ms:1000}")
+    public void returnExpiredLeases() {
+        long currentTime = System.currentTimeMillis();
+        for (Map.Entry<String, TokenLease> entry : leases.entrySet()) {
+            TokenLease lease = entry.getValue();
+            // A lease being refreshed is returned by the refresh
+            if (lease.isLive(currentTime) || !lease.refreshing.compareAndSet(false, true)) {
+                continue;
+            }
+            leases.remove(entry.getKey(), lease);
+            returnTokens(entry.getKey(), lease, currentTime);
+        }
+    }
+
+    private void returnTokens(String key, TokenLease lease, long currentTime) {
+        long returned = lease.drain();
+        if (returned > 0) {
+            try {
+                reserve(key, lease.capacity, lease.refillRate, lease.windowMillis, currentTime, returned, 0, 0);
+            } catch (Exception e) {
+                log.warn("Failed to return {} leased tokens for {}", returned, key, e);
+            }
+        }
+    }
+
+    /**
+     * Take tokens spent outside Redis (e.g. by the local fallback) out of the bucket. The
+     * bucket never goes below zero, so a debit larger than what is left only empties it.
+     */
+    public void debit(String identifier, RateLimitConfig config, long tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        reserve(RedisKeys.key(identifier), config.getCapacity(), config.getRefillRate(),
+                config.getWindow() * 1000L, System.currentTimeMillis(), 0, tokens, 0);
+    }
+
+    private Grant reserve(String key, long capacity, long refillRate, long windowMillis,
+                          long currentTime, long returned, long requested, long needed) {
+        List<?> result = shardRouter.execute(key, redisTemplate -> redisTemplate.execute(
+                properties.getBucketEncoding().tokenBucketLease(),
+                Collections.singletonList(key),
+                String.valueOf(capacity),
+                String.valueOf(refillRate),
+                String.valueOf(windowMillis),
+                String.valueOf(currentTime),
+                String.valueOf(returned),
+                String.valueOf(requested),
+                String.valueOf(needed)
+        ));
+        // No answer is a denial retried after a whole window
+        return result != null
+                ? new Grant(((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue())
+                : new Grant(0, windowMillis);
+    }
+
+    /**
+     * Tokens a lease call granted, or the time until the tokens needed are there if none.
+     */
+    private record Grant(long tokens, long retryAfterMs) {
+    }
+
+    /**
+     * Get current bucket state for monitoring
+     */
+    public Optional<TokenBucket> getBucketState(String identifier) {
+        return storedBucket(identifier).map(BucketEncoding.StoredBucket::toTokenBucket);
+    }
+
+    /**
+     * Bucket state under the given policy: the capacity filled in and the tokens refilled to now.
+     */
+    public Optional<TokenBucket> getBucketState(String identifier, RateLimitConfig config) {
+        long currentTime = System.currentTimeMillis();
+        return storedBucket(identifier).map(bucket -> new TokenBucket(config.getCapacity(),
+                refilledTokens(bucket.microTokens(), bucket.lastRefillTime(), config.getCapacity(),
+                        config.getRefillRate(), config.getWindow() * 1000L, currentTime),
+                bucket.lastRefillTime()));
+    }
+
+    private Optional<BucketEncoding.StoredBucket> storedBucket(String identifier) {
+        String key = RedisKeys.key(identifier);
+        try {
+            return Optional.ofNullable(shardRouter.execute(key, redisTemplate ->
+                    properties.getBucketEncoding().readStored(redisTemplate, key)));
+        } catch (NumberFormatException e) {
+            log.warn("Unreadable bucket state for {}", identifier, e);
+            return Optional.empty();
+        }
     }
 
     /**
      * Reset rate limit for specific identifier
      */
+    @Override
     public void resetRateLimit(String identifier) {
-        String key = RATE_LIMIT_KEY_PREFIX + identifier;
-        redisTemplate.delete(key);
-        activeKeys.remove(key);
-        System.out.println("Rate limit reset for identifier: " + identifier);
+        String key = RedisKeys.key(identifier);
+        shardRouter.execute(key, redisTemplate -> redisTemplate.delete(key));
+        activeKeyTracker.forget(key);
+        leases.remove(key);
+        log.debug("Rate limit reset for identifier: {}", identifier);
     }
 
     /**
-     * Get all active rate limit keys (for monitoring)
+     * Get a sample of recently active rate limit keys (for monitoring)
      */
     public Set<String> getActiveRateLimitKeys() {
-        return Collections.unmodifiableSet(activeKeys);
+        return activeKeyTracker.getSample();
+    }
+
+    /**
+     * Tokens reserved from a Redis bucket and handed out locally until they run out or expire.
+     * A lease Redis granted nothing holds no tokens and expires when enough have been earned:
+     * until then requests of at least deniedPermits are denied without asking Redis again.
+     */
+    private static final class TokenLease {
+        private final AtomicLong tokens;
+        private final long expiresAt;
+        private final long capacity;
+        private final long refillRate;
+        private final long windowMillis;
+        private final long deniedPermits;
+        // Set by the one thread that refreshes or returns this lease; never cleared
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        TokenLease(long tokens, long expiresAt, long capacity, long refillRate, long windowMillis, long deniedPermits) {
+            this.tokens = new AtomicLong(tokens);
+            this.expiresAt = expiresAt;
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+            this.windowMillis = windowMillis;
+            this.deniedPermits = deniedPermits;
+        }
+
+        /**
+         * @return tokens left after taking permits, or -1 if the lease is expired or holds fewer
+         */
+        long tryTake(long now, long permits) {
+            if (now >= expiresAt) {
+                return -1;
+            }
+            long current;
+            do {
+                current = tokens.get();
+                if (current < permits) {
+                    return -1;
+                }
+            } while (!tokens.compareAndSet(current, current - permits));
+            return current - permits;
+        }
+
+        boolean isLive(long now) {
+            return now < expiresAt;
+        }
+
+        boolean deniesUntil(long now, long permits) {
+            return deniedPermits > 0 && permits >= deniedPermits && isLive(now);
+        }
+
+        long drain() {
+            return tokens.getAndSet(0);
+        }
     }
-}
\ No newline at end of file
+}
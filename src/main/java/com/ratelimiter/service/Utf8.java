@@ -0,0 +1,65 @@
+package com.ratelimiter.service;
+
+/**
+ * UTF-8 encoding one code point at a time, for hashing a key's bytes without the byte[] of
+ * {@link String#getBytes}. Unpaired surrogates encode as '?', as {@code getBytes} does.
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * The code point starting at index i; a supplementary one spans two chars.
+     */
+    static int codePointAt(String text, int i) {
+        char c = text.charAt(i);
+        if (!Character.isSurrogate(c)) {
+            return c;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            return Character.toCodePoint(c, text.charAt(i + 1));
+        }
+        return '?';
+    }
+
+    static int charCount(int codePoint) {
+        return codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+    }
+
+    static int byteCount(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 3 : 4;
+    }
+
+    /**
+     * The code point's bytes packed into an int, first byte lowest.
+     */
+    static int encode(int codePoint) {
+        if (codePoint < 0x80) {
+            return codePoint;
+        }
+        if (codePoint < 0x800) {
+            return (0xc0 | codePoint >>> 6)
+                    | (0x80 | codePoint & 0x3f) << 8;
+        }
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return (0xe0 | codePoint >>> 12)
+                    | (0x80 | codePoint >>> 6 & 0x3f) << 8
+                    | (0x80 | codePoint & 0x3f) << 16;
+        }
+        return (0xf0 | codePoint >>> 18)
+                | (0x80 | codePoint >>> 12 & 0x3f) << 8
+                | (0x80 | codePoint >>> 6 & 0x3f) << 16
+                | (0x80 | codePoint & 0x3f) << 24;
+    }
+
+    static int length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = codePointAt(text, i);
+            i += charCount(codePoint);
+            length += byteCount(codePoint);
+        }
+        return length;
+    }
+}
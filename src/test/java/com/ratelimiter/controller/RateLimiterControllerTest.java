@@ -0,0 +1,147 @@
+package com.ratelimiter.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterExceptionHandler;
+import com.ratelimiter.service.BucketStatusScanner;
+import com.ratelimiter.service.PolicyRegistry;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The HTTP surface over a service wired by hand against an embedded Redis.
+ */
+class RateLimiterControllerTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setAllowClientConfig(true);
+        EmbeddedRedis.Services services = EmbeddedRedis.services(EmbeddedRedis.router(template), properties);
+        PolicyRegistry policyRegistry = services.policyRegistry();
+        BucketStatusScanner scanner = new BucketStatusScanner(services.router(), policyRegistry, properties);
+
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new RateLimiterController(services.rateLimiterService(), policyRegistry, scanner, new ObjectMapper()))
+                .setControllerAdvice(new RateLimiterExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void testBatchIsDecidedPerItem() throws Exception {
+        String batch = """
+                {"requests": [
+                    {"identifier": "http:user:1", "config": {"capacity": 2, "refillRate": 1, "window": 60}},
+                    {"identifier": "http:user:2", "config": {"capacity": 1, "refillRate": 1, "window": 60}, "permits": 1}
+                ]}
+                """;
+
+        mockMvc.perform(post("/check/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.allowed").value(true))
+                .andExpect(jsonPath("$.results[0].remainingTokens").value(1))
+                .andExpect(jsonPath("$.results[1].remainingTokens").value(0));
+
+        mockMvc.perform(post("/check/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.allowed").value(false))
+                .andExpect(jsonPath("$.results[0].allowed").value(true))
+                .andExpect(jsonPath("$.results[1].allowed").value(false))
+                .andExpect(jsonPath("$.results[1].retryAfterMs").isNumber());
+    }
+
+    @Test
+    void testBatchWithoutRequestsIsBadRequest() throws Exception {
+        mockMvc.perform(post("/check/batch").contentType(MediaType.APPLICATION_JSON).content("{\"requests\": null}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/check/batch").contentType(MediaType.APPLICATION_JSON).content("{\"requests\": [null]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testAllOrNothingBatchWithOtherAlgorithmIsRejected() throws Exception {
+        String batch = """
+                {"all_or_nothing": true, "requests": [
+                    {"identifier": "http:user:1"},
+                    {"identifier": "http:user:2", "config": {"algorithm": "local"}}
+                ]}
+                """;
+
+        mockMvc.perform(post("/check/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.message").exists());
+    }
+
+    @Test
+    void testSingleCheck() throws Exception {
+        String check = """
+                {"identifier": "http:user:3", "config": {"capacity": 1, "refillRate": 1, "window": 60}}
+                """;
+
+        mockMvc.perform(post("/check").contentType(MediaType.APPLICATION_JSON).content(check))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/check").contentType(MediaType.APPLICATION_JSON).content(check))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    void testStatusStreamsMatchingBucketsAsNdjson() throws Exception {
+        for (String identifier : List.of("scan:user:1", "scan:user:2", "other:user:1")) {
+            mockMvc.perform(post("/check").contentType(MediaType.APPLICATION_JSON).content(
+                    "{\"identifier\": \"" + identifier + "\", \"config\": {\"capacity\": 20, \"refillRate\": 1, \"window\": 60}}"));
+        }
+
+        MvcResult started = mockMvc.perform(get("/status").param("match", "scan:*").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = Arrays.asList(body.split("\n"));
+        assertEquals(2, lines.size());
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String line : lines) {
+            assertTrue(objectMapper.readTree(line).get("identifier").asText().startsWith("scan:user:"));
+        }
+    }
+
+    @Test
+    void testStatusOfOneIdentifierDoesNotSpend() throws Exception {
+        mockMvc.perform(post("/check").contentType(MediaType.APPLICATION_JSON).content("{\"identifier\": \"peek:user:1\"}"));
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/status/peek:user:1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.remainingTokens").value(19));
+        }
+    }
+}
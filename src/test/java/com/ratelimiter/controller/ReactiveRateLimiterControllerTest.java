@@ -0,0 +1,108 @@
+package com.ratelimiter.controller;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.BucketStatus;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.service.ActiveKeyTracker;
+import com.ratelimiter.service.BucketStatusScanner;
+import com.ratelimiter.service.HotKeyDetector;
+import com.ratelimiter.service.PolicyRegistry;
+import com.ratelimiter.service.RedisShardRouter;
+import com.ratelimiter.service.TokenBucketRateLimiter;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.reactivestreams.Subscription;
+import org.springframework.data.redis.core.RedisTemplate;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The streamed status scan of the reactive controller, subscribed to directly.
+ */
+class ReactiveRateLimiterControllerTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+
+    private final AtomicInteger offered = new AtomicInteger();
+    private final CountDownLatch scanned = new CountDownLatch(1);
+    private ReactiveRateLimiterController controller;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setStatusScanBatchSize(2);
+        RedisShardRouter router = EmbeddedRedis.router(template);
+        TokenBucketRateLimiter tokenBucket = new TokenBucketRateLimiter(router, properties,
+                new HotKeyDetector(properties), new ActiveKeyTracker(template, properties));
+        for (int i = 0; i < 50; i++) {
+            tokenBucket.isAllowed("scan:" + i, new RateLimitConfig());
+        }
+        PolicyRegistry policyRegistry = new PolicyRegistry(properties);
+        BucketStatusScanner scanner = new BucketStatusScanner(router, policyRegistry, properties) {
+            @Override
+            public void scanWhile(String match, Predicate<BucketStatus> sink) {
+                try {
+                    super.scanWhile(match, status -> {
+                        offered.incrementAndGet();
+                        return sink.test(status);
+                    });
+                } finally {
+                    scanned.countDown();
+                }
+            }
+        };
+        controller = new ReactiveRateLimiterController(null, policyRegistry, scanner);
+    }
+
+    @Test
+    void testScanWaitsForDemandAndStopsOnCancel() throws InterruptedException {
+        List<BucketStatus> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<BucketStatus> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(BucketStatus status) {
+                received.add(status);
+            }
+        };
+        controller.scanRateLimitStatus("scan:*").subscribe(subscriber);
+
+        Thread.sleep(300);
+        // One bucket sent, the next one held until it is asked for
+        assertEquals(1, received.size());
+        assertEquals(2, offered.get());
+
+        subscriber.request(2);
+        Thread.sleep(300);
+        assertEquals(3, received.size());
+
+        subscriber.cancel();
+        assertTrue(scanned.await(5, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals(4, offered.get());
+    }
+
+    @Test
+    void testScanCompletesWhenEverythingIsRequested() {
+        List<BucketStatus> statuses = controller.scanRateLimitStatus("scan:*").collectList().block();
+
+        assertEquals(50, statuses.size());
+    }
+}
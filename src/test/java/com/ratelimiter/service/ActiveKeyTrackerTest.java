@@ -0,0 +1,85 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActiveKeyTrackerTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final ActiveKeyTracker tracker = new ActiveKeyTracker(null, new RateLimiterProperties());
+    
+    @Test
+    void testEstimateWithinHyperLogLogError() {
+        int keys = 200_000;
+        for (int i = 0; i < keys; i++) {
+            String key = RedisKeys.key("ip:10.0." + (i >> 8) + "." + (i & 0xff));
+            tracker.record(key);
+            tracker.record(key);
+        }
+        
+        // Standard error at 16384 registers is 0.81%
+        assertEquals(keys, tracker.estimate(), keys * 0.03);
+    }
+    
+    @Test
+    void testSmallCountsAreNearExact() {
+        for (int i = 0; i < 100; i++) {
+            tracker.record("user:" + i);
+        }
+        
+        assertEquals(100, tracker.estimate(), 2);
+    }
+    
+    @Test
+    void testSampleIsBounded() {
+        for (int i = 0; i < 100_000; i++) {
+            tracker.record("user:" + i);
+        }
+        
+        assertTrue(tracker.getSample().size() <= new RateLimiterProperties().getActiveKeySampleSize());
+        assertFalse(tracker.getSample().isEmpty());
+    }
+    
+    @Test
+    void testFlushMergesTheSketchesOfEveryNodeIntoRedis() {
+        RedisTemplate<String, String> template = redis.getTemplate();
+        ActiveKeyTracker node1 = new ActiveKeyTracker(template, new RateLimiterProperties());
+        ActiveKeyTracker node2 = new ActiveKeyTracker(template, new RateLimiterProperties());
+        for (int i = 0; i < 5000; i++) {
+            String key = RedisKeys.key("user:" + i);
+            (i % 2 == 0 ? node1 : node2).record(key);
+            template.opsForHyperLogLog().add("reference", key);
+        }
+        
+        node1.flush();
+        node2.flush();
+        
+        // Same hash and registers as PFADD: the merged union is exactly the reference sketch
+        assertEquals(template.opsForHyperLogLog().size("reference"), node1.clusterEstimate());
+        assertEquals(node1.clusterEstimate(), node2.clusterEstimate());
+    }
+    
+    @Test
+    void testNonAsciiKeysHashLikePfadd() {
+        RedisTemplate<String, String> template = redis.getTemplate();
+        ActiveKeyTracker node = new ActiveKeyTracker(template, new RateLimiterProperties());
+        String[] suffixes = {"", "\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "\ud83d"};
+        for (int i = 0; i < 5000; i++) {
+            String key = RedisKeys.key("user:" + i + suffixes[i % suffixes.length]);
+            node.record(key);
+            template.opsForHyperLogLog().add("reference", key);
+        }
+        
+        node.flush();
+        
+        // Multi-byte, four-byte and unpaired surrogate chars hash as the UTF-8 bytes PFADD sees
+        assertEquals(template.opsForHyperLogLog().size("reference"), node.clusterEstimate());
+    }
+}
@@ -0,0 +1,222 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.BucketStatus;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.model.RateLimitTier;
+import com.ratelimiter.model.TokenBucket;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketEncodingTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+
+    private RateLimiterProperties properties;
+    private RedisShardRouter router;
+    private TokenBucketRateLimiter tokenBucket;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimiterProperties();
+        properties.setBucketEncoding(BucketEncoding.PACKED);
+        router = EmbeddedRedis.router(template);
+        tokenBucket = new TokenBucketRateLimiter(router, properties, new HotKeyDetector(properties),
+                new ActiveKeyTracker(template, properties));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisKeys.setHashedKeys(false);
+    }
+
+    @Test
+    void testPackedBucketIsOneSixteenByteString() {
+        RateLimitConfig config = new RateLimitConfig(3, 1, 60);
+        long before = System.currentTimeMillis();
+
+        assertEquals(2, tokenBucket.isAllowed("user:1", config, 1).getRemaining());
+        assertEquals(0, tokenBucket.isAllowed("user:1", config, 2).getRemaining());
+        RateLimitResult denied = tokenBucket.isAllowed("user:1", config, 1);
+
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfterMs() > 0);
+        String key = RedisKeys.key("user:1");
+        assertEquals(DataType.STRING, template.type(key));
+        assertEquals(16L, template.execute((RedisConnection connection) ->
+                connection.stringCommands().strLen(key.getBytes(StandardCharsets.UTF_8))));
+        TokenBucket bucket = tokenBucket.getBucketState("user:1").orElseThrow();
+        assertEquals(0, bucket.getTokens());
+        assertTrue(bucket.getLastRefillTime() >= before);
+    }
+
+    @Test
+    void testPackedLeaseAndPeek() {
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+        tokenBucket.debit("user:1", config, 4);
+
+        assertEquals(6, tokenBucket.peek("user:1", config).getRemaining());
+        assertEquals(6, tokenBucket.getBucketState("user:1").orElseThrow().getTokens());
+    }
+
+    @Test
+    void testPackedHierarchicalTiers() {
+        HierarchicalRateLimiter hierarchical = new HierarchicalRateLimiter(router,
+                new ActiveKeyTracker(template, properties), properties);
+        RateLimitConfig config = new RateLimitConfig();
+        config.setAlgorithm(HierarchicalRateLimiter.ALGORITHM);
+        config.setTiers(List.of(new RateLimitTier("user", null, 5, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 1, 1, 60)));
+
+        assertTrue(hierarchical.checkRateLimit("{acme}:user:1", config).isAllowed());
+        assertEquals("tenant", hierarchical.checkRateLimit("{acme}:user:2", config).getBlockedTier());
+        assertEquals("tenant", hierarchical.peek("{acme}:user:2", config).getBlockedTier());
+        assertEquals(DataType.STRING, template.type(RedisKeys.key("tier:tenant:", "{acme}")));
+    }
+
+    @Test
+    void testBucketExpiresWhenItWouldBeFull() {
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+        tokenBucket.isAllowed("user:1", config, 3);
+        properties.setBucketEncoding(BucketEncoding.HASH);
+        tokenBucket.isAllowed("user:2", config, 1);
+
+        // Three and one tokens short at one token per minute
+        assertEquals(180_000, template.getExpire(RedisKeys.key("user:1"), TimeUnit.MILLISECONDS), 1_000);
+        assertEquals(60_000, template.getExpire(RedisKeys.key("user:2"), TimeUnit.MILLISECONDS), 1_000);
+    }
+
+    @Test
+    void testFullBucketIsDeletedNotWritten() {
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+        tokenBucket.debit("user:1", config, 1);
+        String key = RedisKeys.key("user:1");
+        assertTrue(template.hasKey(key));
+
+        // Handing the token back fills the bucket: the key goes, and reads as full
+        List<?> granted = template.execute(RedisScripts.PACKED_TOKEN_BUCKET_LEASE, List.of(key),
+                "10", "1", "60000", String.valueOf(System.currentTimeMillis()), "1", "0", "0");
+
+        assertEquals(List.of(0L, 0L), granted);
+        assertFalse(template.hasKey(key));
+        assertEquals(10, tokenBucket.peek("user:1", config).getRemaining());
+    }
+
+    @Test
+    void testFractionOfATokenCarriesOverAWrite() {
+        for (BucketEncoding encoding : BucketEncoding.values()) {
+            String key = RedisKeys.key("fraction:" + encoding);
+            long start = 1_000_000;
+            // Three tokens per two seconds: one every 666.7 ms
+            assertEquals(1L, take(encoding, key, start, 10).get(0));
+            assertEquals(1L, take(encoding, key, start + 1000, 1).get(0));
+            // Half a token was left over at +1000 ms: the next one is whole at +1333 ms, not +1667 ms
+            assertEquals(0L, take(encoding, key, start + 1332, 1).get(0));
+            assertEquals(1L, take(encoding, key, start + 1334, 1).get(0));
+            List<?> denied = take(encoding, key, start + 1400, 1);
+            assertEquals(0L, denied.get(0));
+            assertEquals(600L, denied.get(2));
+        }
+    }
+
+    @Test
+    void testScanReadsPackedBuckets() {
+        RateLimitConfig config = new RateLimitConfig(5, 1, 60);
+        tokenBucket.isAllowed("user:1", config, 2);
+        tokenBucket.isAllowed("user:2", config, 1);
+        properties.getDefaults().setBurstCapacity(5);
+        BucketStatusScanner scanner = new BucketStatusScanner(router, new PolicyRegistry(properties), properties);
+
+        List<BucketStatus> found = new ArrayList<>();
+        scanner.scan("user:1", found::add);
+
+        assertEquals(1, found.size());
+        assertEquals("user:1", found.get(0).getIdentifier());
+        assertEquals(3, found.get(0).getTokens());
+    }
+
+    @Test
+    void testScanCountsTheStoredFractionLikePeek() {
+        RateLimiterProperties.Policy policy = new RateLimiterProperties.Policy();
+        policy.setName("fraction");
+        policy.setMatch(List.of("fraction:*"));
+        policy.setCapacity(10);
+        // Three tokens per two seconds: 0.6 of a token earned in 400 ms
+        policy.setRefillRate(3);
+        policy.setWindow(2);
+        properties.getPolicies().add(policy);
+        PolicyRegistry policyRegistry = new PolicyRegistry(properties);
+        BucketStatusScanner scanner = new BucketStatusScanner(router, policyRegistry, properties);
+        long lastRefillTime = System.currentTimeMillis() - 400;
+
+        for (BucketEncoding encoding : BucketEncoding.values()) {
+            properties.setBucketEncoding(encoding);
+            String identifier = "fraction:" + encoding;
+            String key = RedisKeys.key(identifier);
+            if (encoding == BucketEncoding.HASH) {
+                template.opsForHash().put(key, "tokens", "2.5");
+                template.opsForHash().put(key, "lastRefillTime", String.valueOf(lastRefillTime));
+            } else {
+                byte[] packed = ByteBuffer.allocate(16).putDouble(2.5).putDouble(lastRefillTime).array();
+                template.execute((RedisConnection connection) ->
+                        connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), packed));
+            }
+
+            List<BucketStatus> found = new ArrayList<>();
+            scanner.scan(identifier, found::add);
+
+            // 2.5 + 0.6 tokens: the half token stored by the last write makes the third whole
+            assertEquals(3, found.get(0).getTokens());
+            assertEquals(tokenBucket.peek(identifier, policyRegistry.lookup(identifier)).getRemaining(),
+                    found.get(0).getTokens());
+            assertEquals(3, tokenBucket.getBucketState(identifier, policyRegistry.lookup(identifier))
+                    .orElseThrow().getTokens());
+        }
+    }
+
+    private List<?> take(BucketEncoding encoding, String key, long currentTime, int permits) {
+        return template.execute(encoding.tokenBucket(), List.of(key),
+                "10", "3", "2000", String.valueOf(currentTime), String.valueOf(permits));
+    }
+
+    @Test
+    void testHashedKeysAreFixedWidthAndKeepTenantSlot() {
+        RedisKeys.setHashedKeys(true);
+        String longIdentifier = "tenant-0042:api-key:" + "f".repeat(200);
+
+        String key = RedisKeys.key(longIdentifier);
+        assertEquals(RedisKeys.PREFIX.length() + 18, key.length());
+        assertEquals(key, RedisKeys.key(longIdentifier));
+        assertNotEquals(key, RedisKeys.key(longIdentifier + "0"));
+        assertEquals(RedisKeys.slot(RedisKeys.key("{acme}:user:1")), RedisKeys.slot(RedisKeys.key("{acme}:user:2")));
+        // Service keys are found by every node whatever the setting
+        assertEquals("rate_limit:policies:{store}", PolicyStore.POLICIES_KEY);
+
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        assertTrue(tokenBucket.isAllowed(longIdentifier, config, 2).isAllowed());
+        assertFalse(tokenBucket.isAllowed(longIdentifier, config, 1).isAllowed());
+        assertTrue(template.hasKey(key));
+        BucketStatusScanner scanner = new BucketStatusScanner(router, new PolicyRegistry(properties), properties);
+        assertThrows(RateLimiterException.class, () -> scanner.scan("tenant-0042:*", status -> { }));
+    }
+}
@@ -0,0 +1,131 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.BucketStatus;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketStatusScannerTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private RateLimiterProperties properties;
+    private TokenBucketRateLimiter tokenBucket;
+    private BucketStatusScanner scanner;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimiterProperties();
+        properties.setStatusScanBatchSize(2);
+        RedisShardRouter router = EmbeddedRedis.router(template);
+        tokenBucket = new TokenBucketRateLimiter(router, properties, new HotKeyDetector(properties),
+                new ActiveKeyTracker(template, properties));
+        scanner = new BucketStatusScanner(router, new PolicyRegistry(properties), properties);
+    }
+    
+    @Test
+    void testPeekDoesNotConsume() {
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        tokenBucket.isAllowed("user1", config);
+        
+        for (int i = 0; i < 5; i++) {
+            RateLimitResult peek = tokenBucket.peek("user1", config);
+            assertTrue(peek.isAllowed());
+            assertEquals(1, peek.getRemaining());
+        }
+        
+        assertTrue(tokenBucket.isAllowed("user1", config).isAllowed());
+        RateLimitResult empty = tokenBucket.peek("user1", config);
+        assertFalse(empty.isAllowed());
+        assertTrue(empty.getRetryAfterMs() > 0);
+    }
+    
+    @Test
+    void testPeekOfUnknownIdentifierIsAFullBucketAndWritesNothing() {
+        RateLimitResult peek = tokenBucket.peek("nobody", new RateLimitConfig(7, 1, 60));
+        
+        assertEquals(7, peek.getRemaining());
+        assertFalse(template.hasKey(RedisKeys.key("nobody")));
+    }
+    
+    @Test
+    void testScanReadsEveryBucketInBatches() {
+        // The defaults policy: 20 tokens
+        for (int i = 0; i < 5; i++) {
+            tokenBucket.isAllowed("user" + i, new PolicyRegistry(properties).resolve("user" + i));
+        }
+        tokenBucket.isAllowed("{acme}:user:1", new RateLimitConfig(20, 1, 60));
+        // Other engines' keys are not buckets
+        template.opsForValue().set(RedisKeys.key("gcra:", "user0"), "1");
+        
+        List<BucketStatus> statuses = new ArrayList<>();
+        scanner.scan(null, statuses::add);
+        
+        Map<String, BucketStatus> byIdentifier = statuses.stream()
+                .collect(Collectors.toMap(BucketStatus::getIdentifier, status -> status));
+        assertEquals(6, byIdentifier.size());
+        assertEquals(19, byIdentifier.get("user3").getTokens());
+        assertEquals(PolicyRegistry.DEFAULT_POLICY, byIdentifier.get("user3").getPolicy());
+        assertTrue(byIdentifier.containsKey("{acme}:user:1"));
+    }
+    
+    @Test
+    void testScanFiltersByIdentifierPattern() {
+        tokenBucket.isAllowed("api:free:1", new RateLimitConfig());
+        tokenBucket.isAllowed("api:free:2", new RateLimitConfig());
+        tokenBucket.isAllowed("api:pro:1", new RateLimitConfig());
+        
+        List<BucketStatus> statuses = new ArrayList<>();
+        scanner.scan("api:free:*", statuses::add);
+        
+        assertEquals(2, statuses.size());
+    }
+    
+    @Test
+    void testGlobCharactersInPatternAreLiteral() {
+        tokenBucket.isAllowed("api:[a]:1", new RateLimitConfig());
+        tokenBucket.isAllowed("api:a:1", new RateLimitConfig());
+        tokenBucket.isAllowed("api:?:1", new RateLimitConfig());
+        
+        List<BucketStatus> statuses = new ArrayList<>();
+        scanner.scan("api:[a]:*", statuses::add);
+        scanner.scan("api:?:1", statuses::add);
+        
+        assertEquals(List.of("api:[a]:1", "api:?:1"), statuses.stream().map(BucketStatus::getIdentifier).toList());
+        assertEquals("api:\\[a\\]:*", BucketStatusScanner.matchGlob("api:[a]:*"));
+    }
+    
+    @Test
+    void testScanWhileStopsWhenTheSinkDoes() {
+        for (int i = 0; i < 10; i++) {
+            tokenBucket.isAllowed("user" + i, new RateLimitConfig());
+        }
+        
+        List<BucketStatus> statuses = new ArrayList<>();
+        scanner.scanWhile(null, status -> statuses.add(status) && statuses.size() < 3);
+        
+        assertEquals(3, statuses.size());
+    }
+    
+    @Test
+    void testIdentifierOfKey() {
+        assertEquals("user1", BucketStatusScanner.identifierOf(RedisKeys.key("user1")));
+        assertEquals("{acme}:user:1", BucketStatusScanner.identifierOf(RedisKeys.key("{acme}:user:1")));
+    }
+}
@@ -0,0 +1,71 @@
+package com.ratelimiter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.model.RateLimitMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionCountersTest {
+    
+    private final DecisionCounters counters = new DecisionCounters();
+    
+    @Test
+    void testWindowsCoverOnlyTheirHistory() {
+        record(30, 10);
+        // 7 snapshots: the 1m window now starts at the first one, the longer windows still at start
+        for (int i = 0; i < 7; i++) {
+            counters.snapshot();
+        }
+        record(5, 1);
+        
+        Map<String, RateLimitMetrics.Window> windows = counters.windows();
+        assertEquals(5, windows.get("1m").getAllowedRequests());
+        assertEquals(1, windows.get("1m").getDeniedRequests());
+        assertEquals(35, windows.get("5m").getAllowedRequests());
+        assertEquals(46, windows.get("15m").getTotalRequests());
+        assertEquals(35, counters.getAllowed());
+        assertEquals(11, counters.getDenied());
+    }
+    
+    @Test
+    void testClusterMergeSumsNodes() throws Exception {
+        RateLimitMetrics a = RateLimitMetrics.builder()
+                .allowedRequests(8).deniedRequests(2).activeKeys(3).lastResetTime(100).snapshotTime(500)
+                .topRateLimitedKeys(Map.of("user:1", 40L, "user:2", 5L))
+                .windows(Map.of("1m", new RateLimitMetrics.Window(8, 2, 1.0)))
+                .build();
+        RateLimitMetrics b = RateLimitMetrics.builder()
+                .allowedRequests(1).deniedRequests(9).activeKeys(4).lastResetTime(50).snapshotTime(400)
+                .topRateLimitedKeys(Map.of("user:2", 60L))
+                .windows(Map.of("1m", new RateLimitMetrics.Window(1, 9, 0.5)))
+                .build();
+        
+        // Snapshots travel through Redis as JSON
+        ObjectMapper objectMapper = new ObjectMapper();
+        b = objectMapper.readValue(objectMapper.writeValueAsString(b), RateLimitMetrics.class);
+        
+        RateLimitMetrics merged = ClusterMetricsAggregator.merge(List.of(a, b));
+        
+        assertEquals(2, merged.getNodes());
+        assertEquals(20, merged.getTotalRequests());
+        assertEquals(0.45, merged.getAllowedRate(), 1e-9);
+        assertEquals(7, merged.getActiveKeys());
+        assertEquals(List.of("user:2", "user:1"), List.copyOf(merged.getTopRateLimitedKeys().keySet()));
+        assertEquals(1.5, merged.getWindows().get("1m").getRequestsPerSecond(), 1e-9);
+        assertEquals(50, merged.getLastResetTime());
+        assertEquals(500, merged.getSnapshotTime());
+    }
+    
+    private void record(int allowed, int denied) {
+        for (int i = 0; i < allowed; i++) {
+            counters.record(true);
+        }
+        for (int i = 0; i < denied; i++) {
+            counters.record(false);
+        }
+    }
+}
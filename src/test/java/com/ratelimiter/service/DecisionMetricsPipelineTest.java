@@ -0,0 +1,71 @@
+package com.ratelimiter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionMetricsPipelineTest {
+    
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DecisionMetricsPipeline pipeline = new DecisionMetricsPipeline(registry);
+    
+    @Test
+    void testConcurrentProducersAreAllCounted() throws InterruptedException {
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread producer = new Thread(() -> {
+                // Threads may share a stripe; stay within one stripe's capacity
+                for (int i = 0; i < 1_000; i++) {
+                    pipeline.record("api", "token_bucket", i % 4 != 0, 1_000);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        // Drain alongside the producers like the drain thread does
+        while (producers.stream().anyMatch(Thread::isAlive)) {
+            pipeline.drain();
+        }
+        pipeline.drain();
+        
+        assertEquals(3_000, count("api", "token_bucket", "allowed"));
+        assertEquals(1_000, count("api", "token_bucket", "denied"));
+        assertEquals(4_000, registry.get("rate_limit_decision_time").tag("policy", "api").timer().count());
+    }
+    
+    @Test
+    void testPolicyTagsAreBounded() {
+        for (int i = 0; i < 1000; i++) {
+            pipeline.record("tenant-" + i, "gcra", true, 1_000);
+        }
+        pipeline.drain();
+        
+        assertEquals(DecisionMetricsPipeline.MAX_POLICIES,
+                registry.find("rate_limit_decisions").counters().size());
+        assertTrue(count("other", "gcra", "allowed") > 0);
+    }
+    
+    @Test
+    void testFullRingDropsInsteadOfBlocking() {
+        // One thread writes into one stripe
+        for (int i = 0; i < DecisionMetricsPipeline.CAPACITY + 10; i++) {
+            pipeline.record("api", "token_bucket", true, 1_000);
+        }
+        
+        assertEquals(DecisionMetricsPipeline.CAPACITY, pipeline.drain());
+        assertEquals(DecisionMetricsPipeline.CAPACITY, count("api", "token_bucket", "allowed"));
+    }
+    
+    private double count(String policy, String algorithm, String outcome) {
+        return registry.get("rate_limit_decisions")
+                .tag("policy", policy)
+                .tag("algorithm", algorithm)
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeniedCacheTest {
+    
+    @Test
+    void testDeniedUntilRetryTime() {
+        DeniedCache cache = new DeniedCache(new RateLimiterProperties());
+        cache.deny("api", "user:1", 1_500);
+        
+        assertEquals(500, cache.retryAfter("api", "user:1", 1_000));
+        assertEquals(0, cache.retryAfter("search", "user:1", 1_000));
+        assertEquals(0, cache.retryAfter("api", "user:2", 1_000));
+        // Expired entries are dropped on read
+        assertEquals(0, cache.retryAfter("api", "user:1", 1_500));
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    void testInvalidateClearsEveryPolicy() {
+        DeniedCache cache = new DeniedCache(new RateLimiterProperties());
+        cache.deny("api", "user:1", Long.MAX_VALUE);
+        cache.deny("search", "user:1", Long.MAX_VALUE);
+        
+        cache.invalidate("user:1");
+        
+        assertEquals(0, cache.retryAfter("api", "user:1", 0));
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    void testBoundedAndSwept() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setDeniedCacheMaxEntries(100);
+        DeniedCache cache = new DeniedCache(properties);
+        for (int i = 0; i < 1000; i++) {
+            cache.deny("api", "user:" + i, 1);
+        }
+        assertEquals(100, cache.size());
+        
+        cache.evictExpired();
+        
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterLoadTest} on an embedded Redis with the services wired by hand,
+ * so it runs without a Redis on localhost.
+ */
+class EmbeddedRedisLoadTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private RateLimiterService rateLimiterService;
+    
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        rateLimiterService = EmbeddedRedis.services(EmbeddedRedis.router(template), properties).rateLimiterService();
+    }
+    
+    @Test
+    void testConcurrentRequests() throws InterruptedException {
+        String identifier = "load:test:user";
+        int threadCount = 10;
+        int requestsPerThread = 5;
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger allowedCount = new AtomicInteger(0);
+        AtomicInteger deniedCount = new AtomicInteger(0);
+        
+        RateLimitConfig config = new RateLimitConfig(10, 1, 1);
+        
+        // Create multiple threads making concurrent requests
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        RateLimitResult result = rateLimiterService.checkRateLimit(identifier, config);
+                        if (result.isAllowed()) {
+                            allowedCount.incrementAndGet();
+                        } else {
+                            deniedCount.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        
+        latch.await(10, TimeUnit.SECONDS);
+        
+        int totalRequests = allowedCount.get() + deniedCount.get();
+        assertEquals(threadCount * requestsPerThread, totalRequests);
+        
+        // Should allow exactly 10 requests (capacity)
+        assertEquals(10, allowedCount.get());
+        assertEquals(40, deniedCount.get());
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RateLimiterPerformanceTest} on an embedded Redis with the services wired by hand,
+ * so it runs without a Redis on localhost.
+ */
+class EmbeddedRedisPerformanceTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private RateLimiterService rateLimiterService;
+    
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        rateLimiterService = EmbeddedRedis.services(EmbeddedRedis.router(template), properties).rateLimiterService();
+    }
+    
+    @Test
+    void testPerformanceBenchmark() {
+        String identifier = "perf:test:user";
+        int iterations = 1000;
+        
+        long startTime = System.currentTimeMillis();
+        
+        for (int i = 0; i < iterations; i++) {
+            rateLimiterService.checkRateLimit(identifier + ":" + i);
+        }
+        
+        long endTime = System.currentTimeMillis();
+        long duration = endTime - startTime;
+        double requestsPerSecond = (double) iterations / (duration / 1000.0);
+        
+        System.out.println("Performance Test Results:");
+        System.out.println("Total requests: " + iterations);
+        System.out.println("Duration: " + duration + "ms");
+        System.out.println("Requests/second: " + String.format("%.2f", requestsPerSecond));
+        
+        // Should handle at least 100 requests per second
+        assertTrue(requestsPerSecond > 100, "Performance too slow: " + requestsPerSecond + " req/s");
+    }
+} 
\ No newline at end of file
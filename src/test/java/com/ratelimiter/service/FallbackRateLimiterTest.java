@@ -0,0 +1,192 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RedisUnavailableException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import com.ratelimiter.util.LatencyInjectingProxy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FallbackRateLimiterTest {
+    
+    private static final long SLOW_CALL_MS = 100;
+    private static final long OPEN_MS = 300;
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private static LatencyInjectingProxy proxy;
+    
+    private JedisConnectionFactory connectionFactory;
+    private RedisShardRouter shardRouter;
+    private FallbackRateLimiter fallback;
+    private RateLimiterServiceImpl rateLimiter;
+    
+    @BeforeAll
+    static void startProxy() throws IOException {
+        proxy = new LatencyInjectingProxy("127.0.0.1", redis.getPort());
+    }
+    
+    @AfterAll
+    static void stopProxy() throws IOException {
+        proxy.close();
+    }
+    
+    @BeforeEach
+    void setUp() {
+        proxy.setDelayMs(0);
+        connectionFactory = EmbeddedRedis.connectionFactory(proxy.getPort());
+        RedisTemplate<String, String> template = EmbeddedRedis.stringTemplate(connectionFactory);
+        
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setFallbackNodeCount(2);
+        shardRouter = new RedisShardRouter(List.of(template), List.of(),
+                () -> new RedisCircuitBreaker(10, 5, 50, SLOW_CALL_MS, OPEN_MS));
+        EmbeddedRedis.Services services = EmbeddedRedis.services(shardRouter, properties);
+        fallback = services.fallback();
+        rateLimiter = services.rateLimiterService();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        proxy.setDelayMs(0);
+        connectionFactory.destroy();
+    }
+    
+    @Test
+    void testSlowRedisTripsToLocalShareAndIsReconciled() throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+        assertTrue(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+        assertTrue(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+        
+        // Slow answers (still under the client timeout) count as failures: 3 of 5 calls opens the circuit
+        proxy.setDelayMs(2 * SLOW_CALL_MS);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RedisCircuitBreaker.State.CLOSED, shardRouter.getCircuitState(0));
+            assertTrue(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+        }
+        assertEquals(RedisCircuitBreaker.State.OPEN, shardRouter.getCircuitState(0));
+        
+        // Two nodes: this node may spend ceil(10 / 2) tokens on its own, without waiting on Redis
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+        }
+        assertFalse(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+        assertTrue((System.nanoTime() - start) / 1_000_000 < SLOW_CALL_MS);
+        assertTrue(fallback.isActive());
+        
+        // Redis recovers: the probe debits the 5 local tokens, leaving the bucket empty (10 - 5 - 5)
+        proxy.setDelayMs(0);
+        Thread.sleep(OPEN_MS + 50);
+        fallback.reconcile();
+        assertEquals(RedisCircuitBreaker.State.CLOSED, shardRouter.getCircuitState(0));
+        assertEquals(0, fallback.getPendingDebits());
+        assertFalse(rateLimiter.checkRateLimit("user:1", config).isAllowed());
+    }
+    
+    @Test
+    void testOpenAndClosedFailureModes() {
+        RateLimitConfig open = new RateLimitConfig(1, 1, 60);
+        open.setFailureMode(FallbackRateLimiter.MODE_OPEN);
+        RateLimitConfig closed = new RateLimitConfig(1, 1, 60);
+        closed.setFailureMode(FallbackRateLimiter.MODE_CLOSED);
+        
+        proxy.setDelayMs(2 * SLOW_CALL_MS);
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.checkRateLimit("warmup:" + i, open);
+        }
+        assertEquals(RedisCircuitBreaker.State.OPEN, shardRouter.getCircuitState(0));
+        
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.checkRateLimit("user:open", open).isAllowed());
+            assertFalse(rateLimiter.checkRateLimit("user:closed", closed).isAllowed());
+        }
+        // Nothing was taken locally, so nothing is owed to Redis
+        assertEquals(0, fallback.getPendingDebits());
+    }
+    
+    @Test
+    void testUnsetFailureModeDecidesLocally() {
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        config.setFailureMode(null);
+        RedisUnavailableException down = new RedisUnavailableException("down");
+        
+        assertTrue(fallback.checkRateLimit("user:unset", config, 1, down).isAllowed());
+        assertFalse(fallback.checkRateLimit("user:unset", config, 1, down).isAllowed());
+        assertEquals(1, fallback.getPendingDebits());
+    }
+    
+    @Test
+    void testDebitsRecordedDuringReconcileAreNotLost() throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(100_000, 1, 60);
+        RedisUnavailableException down = new RedisUnavailableException("down");
+        int threads = 8;
+        int perThread = 5_000;
+        Thread[] spenders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            spenders[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    assertTrue(fallback.checkRateLimit("user:racing", config, 1, down).isAllowed());
+                }
+            });
+            spenders[t].start();
+        }
+        while (spenders[threads - 1].isAlive()) {
+            fallback.reconcile();
+        }
+        for (Thread spender : spenders) {
+            spender.join();
+        }
+        fallback.reconcile();
+        
+        assertEquals(0, fallback.getPendingDebits());
+        assertEquals(100_000 - threads * perThread, rateLimiter.getRateLimitStatus("user:racing").orElseThrow().getTokens());
+    }
+    
+    @Test
+    void testReconcileGoesOnPastAShardThatIsStillDown() throws IOException {
+        JedisConnectionFactory deadFactory = EmbeddedRedis.connectionFactory(EmbeddedRedis.freePort());
+        try {
+            RateLimiterProperties properties = new RateLimiterProperties();
+            RedisTemplate<String, String> template = EmbeddedRedis.stringTemplate(connectionFactory);
+            RedisShardRouter router = new RedisShardRouter(List.of(template, EmbeddedRedis.stringTemplate(deadFactory)),
+                    List.of(), () -> new RedisCircuitBreaker(10, 5, 50, SLOW_CALL_MS, OPEN_MS));
+            FallbackRateLimiter shardedFallback = EmbeddedRedis.services(router, properties).fallback();
+            
+            RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+            int onDeadShard = 0;
+            for (int i = 0; i < 20; i++) {
+                String identifier = "user:" + i;
+                shardedFallback.checkRateLimit(identifier, config, 1, new RedisUnavailableException("down"));
+                onDeadShard += router.shardFor(RedisKeys.key(identifier));
+            }
+            assertTrue(onDeadShard > 0 && onDeadShard < 20);
+            
+            shardedFallback.reconcile();
+            
+            // Only the debits owed to the dead shard are left
+            assertEquals(onDeadShard, shardedFallback.getPendingDebits());
+            for (int i = 0; i < 20; i++) {
+                String key = RedisKeys.key("user:" + i);
+                assertEquals(router.shardFor(key) == 0, template.hasKey(key));
+            }
+        } finally {
+            deadFactory.destroy();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcraRateLimiterTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+
+    private GcraRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new GcraRateLimiter(EmbeddedRedis.router(template));
+    }
+
+    @Test
+    void testBurstThenExactRetryAfter() {
+        String identifier = "gcra:user:1";
+        // Burst of 3, then one request every 30 seconds
+        RateLimitConfig config = new RateLimitConfig(3, 2, 60);
+
+        for (int i = 0; i < 3; i++) {
+            RateLimitResult result = rateLimiter.checkRateLimit(identifier, config);
+            assertTrue(result.isAllowed());
+            assertEquals(2 - i, result.getRemaining());
+        }
+
+        RateLimitResult denied = rateLimiter.checkRateLimit(identifier, config);
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfterMs() > 29_000 && denied.getRetryAfterMs() <= 30_000);
+    }
+
+    @Test
+    void testTokensRecoverAfterEmissionInterval() throws InterruptedException {
+        String identifier = "gcra:user:2";
+        // One request every 500ms, no burst
+        RateLimitConfig config = new RateLimitConfig(1, 2, 1);
+
+        assertTrue(rateLimiter.checkRateLimit(identifier, config).isAllowed());
+        assertFalse(rateLimiter.checkRateLimit(identifier, config).isAllowed());
+
+        Thread.sleep(550);
+
+        assertTrue(rateLimiter.checkRateLimit(identifier, config).isAllowed());
+    }
+
+    @Test
+    void testResetClearsTheArrivalTime() {
+        RateLimitConfig config = new RateLimitConfig(1, 1, 60);
+        assertTrue(rateLimiter.checkRateLimit("gcra:user:3", config).isAllowed());
+        assertFalse(rateLimiter.checkRateLimit("gcra:user:3", config).isAllowed());
+
+        rateLimiter.resetRateLimit("gcra:user:3");
+
+        assertFalse(template.hasKey(RedisKeys.key("gcra:", "gcra:user:3")));
+        assertTrue(rateLimiter.checkRateLimit("gcra:user:3", config).isAllowed());
+    }
+
+    @Test
+    void testMoreThanTheBurstIsDeniedWithoutRedis() {
+        long before = System.currentTimeMillis();
+        RateLimitResult denied = rateLimiter.checkRateLimit("gcra:user:4", new RateLimitConfig(3, 1, 60), 4);
+
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getResetTime() >= before + 60_000);
+        assertFalse(template.hasKey(RedisKeys.key("gcra:", "gcra:user:4")));
+    }
+
+    @Test
+    void testPeekReadsTheArrivalTimeWithoutMovingIt() {
+        RateLimitConfig config = new RateLimitConfig(3, 2, 60);
+        assertEquals(3, rateLimiter.peek("gcra:user:6", config).getRemaining());
+        assertFalse(template.hasKey(RedisKeys.key("gcra:", "gcra:user:6")));
+
+        rateLimiter.checkRateLimit("gcra:user:6", config);
+        assertEquals(2, rateLimiter.peek("gcra:user:6", config).getRemaining());
+        assertEquals(2, rateLimiter.peek("gcra:user:6", config).getRemaining());
+        rateLimiter.checkRateLimit("gcra:user:6", config, 2);
+
+        RateLimitResult denied = rateLimiter.peek("gcra:user:6", config);
+        assertFalse(denied.isAllowed());
+        assertEquals(30_000, denied.getRetryAfterMs(), 1_000);
+    }
+
+    @Test
+    void testZeroRefillRateIsRejected() {
+        assertThrows(RateLimiterException.class,
+                () -> rateLimiter.checkRateLimit("gcra:user:5", new RateLimitConfig(3, 0, 60)));
+    }
+}
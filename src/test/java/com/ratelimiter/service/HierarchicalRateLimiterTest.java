@@ -0,0 +1,170 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.model.RateLimitTier;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalRateLimiterTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private HierarchicalRateLimiter rateLimiter;
+    
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new HierarchicalRateLimiter(router(1),
+                new ActiveKeyTracker(template, new RateLimiterProperties()), new RateLimiterProperties());
+    }
+    
+    @Test
+    void testTenantTierDeniesWithoutChargingTheUser() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 5, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 2, 1, 60));
+        
+        assertTrue(rateLimiter.checkRateLimit("{acme}:user:1", config).isAllowed());
+        assertTrue(rateLimiter.checkRateLimit("{acme}:user:1", config).isAllowed());
+        RateLimitResult denied = rateLimiter.checkRateLimit("{acme}:user:2", config);
+        
+        assertFalse(denied.isAllowed());
+        assertEquals("tenant", denied.getBlockedTier());
+        assertTrue(denied.getRetryAfterMs() > 0);
+        // Nothing was written for the denied user
+        assertFalse(template.hasKey(RedisKeys.key("tier:user:", "{acme}:user:2")));
+    }
+    
+    @Test
+    void testUserTierDenialLeavesTenantTokens() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 1, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 10, 1, 60));
+        
+        RateLimitResult allowed = rateLimiter.checkRateLimit("{acme}:user:1", config);
+        RateLimitResult denied = rateLimiter.checkRateLimit("{acme}:user:1", config);
+        
+        // Remaining is the tightest tier
+        assertEquals(0, allowed.getRemaining());
+        assertEquals("user", denied.getBlockedTier());
+        assertEquals(9, tokens(RedisKeys.key("tier:tenant:", "{acme}")));
+    }
+    
+    @Test
+    void testPermitsAreTakenFromEveryTier() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 10, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 5, 1, 60));
+        
+        assertEquals(1, rateLimiter.checkRateLimit("{acme}:user:1", config, 4).getRemaining());
+        RateLimitResult denied = rateLimiter.checkRateLimit("{acme}:user:1", config, 2);
+        
+        assertEquals("tenant", denied.getBlockedTier());
+        // One token short at one token per 60s
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        assertEquals("tenant", rateLimiter.checkRateLimit("{acme}:user:1", config, 6).getBlockedTier());
+        assertEquals(6, tokens(RedisKeys.key("tier:user:", "{acme}:user:1")));
+    }
+    
+    @Test
+    void testTiersSpanningShardsAreRejected() {
+        RedisShardRouter router = router(2);
+        HierarchicalRateLimiter sharded = new HierarchicalRateLimiter(router,
+                new ActiveKeyTracker(template, new RateLimiterProperties()), new RateLimiterProperties());
+        String tenant = null;
+        for (int i = 0; tenant == null; i++) {
+            if (router.shardFor(RedisKeys.key("{t" + i + "}")) != router.shardFor(RedisKeys.key("user:1"))) {
+                tenant = "{t" + i + "}";
+            }
+        }
+        RateLimitConfig config = config(new RateLimitTier("user", null, 5, 1, 60),
+                new RateLimitTier("tenant", tenant, 5, 1, 60));
+        
+        assertThrows(RateLimiterException.class, () -> sharded.checkRateLimit("user:1", config));
+    }
+    
+    @Test
+    void testTierThatNeverRefillsIsRejected() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 5, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 5, 0, 60));
+        
+        assertThrows(RateLimiterException.class, () -> rateLimiter.checkRateLimit("{acme}:user:1", config));
+        assertFalse(template.hasKey(RedisKeys.key("tier:user:", "{acme}:user:1")));
+    }
+    
+    @Test
+    void testResetClearsOnlyTiersOfTheIdentifier() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 1, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 10, 1, 60));
+        rateLimiter.checkRateLimit("{acme}:user:1", config);
+        assertFalse(rateLimiter.checkRateLimit("{acme}:user:1", config).isAllowed());
+        
+        rateLimiter.resetRateLimit("{acme}:user:1", config);
+        
+        assertTrue(rateLimiter.checkRateLimit("{acme}:user:1", config).isAllowed());
+        assertEquals(8, tokens(RedisKeys.key("tier:tenant:", "{acme}")));
+    }
+    
+    @Test
+    void testResetDeletesOnlyTheKeysOfThePolicyTiers() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 1, 1, 60));
+        RateLimitConfig other = config(new RateLimitTier("team:user", null, 1, 1, 60));
+        rateLimiter.checkRateLimit("user:1", config);
+        rateLimiter.checkRateLimit("user:*", config);
+        rateLimiter.checkRateLimit("user:*", other);
+        
+        rateLimiter.resetRateLimit("user:*", config);
+        
+        assertTrue(template.hasKey(RedisKeys.key("tier:user:", "user:1")));
+        assertFalse(template.hasKey(RedisKeys.key("tier:user:", "user:*")));
+        assertTrue(template.hasKey(RedisKeys.key("tier:team:user:", "user:*")));
+        assertThrows(RateLimiterException.class, () -> rateLimiter.resetRateLimit("user:*"));
+    }
+    
+    @Test
+    void testPeekNamesTheBlockedTierWithoutTakingTokens() {
+        RateLimitConfig config = config(new RateLimitTier("user", null, 5, 1, 60),
+                new RateLimitTier("tenant", "{acme}", 2, 1, 60));
+        assertEquals(2, rateLimiter.peek("{acme}:user:1", config).getRemaining());
+        rateLimiter.checkRateLimit("{acme}:user:1", config, 2);
+        
+        RateLimitResult denied = rateLimiter.peek("{acme}:user:2", config);
+        
+        assertFalse(denied.isAllowed());
+        assertEquals("tenant", denied.getBlockedTier());
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        assertFalse(template.hasKey(RedisKeys.key("tier:user:", "{acme}:user:2")));
+        // The user tier alone still holds 3 of its 5
+        assertEquals(3, rateLimiter.peek("{acme}:user:1",
+                config(new RateLimitTier("user", null, 5, 1, 60))).getRemaining());
+    }
+    
+    /**
+     * Whole tokens of a tier bucket; the stored value also carries the fraction refilled since.
+     */
+    private long tokens(String key) {
+        return (long) Double.parseDouble((String) template.opsForHash().get(key, "tokens"));
+    }
+    
+    private RedisShardRouter router(int shards) {
+        return EmbeddedRedis.router(Collections.nCopies(shards, template));
+    }
+    
+    private static RateLimitConfig config(RateLimitTier... tiers) {
+        RateLimitConfig config = new RateLimitConfig();
+        config.setAlgorithm(HierarchicalRateLimiter.ALGORITHM);
+        config.setTiers(List.of(tiers));
+        return config;
+    }
+}
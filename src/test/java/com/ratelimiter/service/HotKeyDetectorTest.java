@@ -0,0 +1,69 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotKeyDetectorTest {
+    
+    private final HotKeyDetector detector = new HotKeyDetector(new RateLimiterProperties());
+    
+    @Test
+    void testHeavyHittersRiseToTheTop() {
+        for (int i = 0; i < 50_000; i++) {
+            detector.record("noise:" + i);
+            if (i % 10 == 0) {
+                detector.record("abuser:1");
+            }
+            if (i % 20 == 0) {
+                detector.record("abuser:2");
+            }
+        }
+        
+        Map<String, Long> top = detector.getTopKeys();
+        assertEquals(List.of("abuser:1", "abuser:2"), top.keySet().stream().limit(2).toList());
+        assertEquals(5000, top.get("abuser:1"), 100);
+        assertTrue(detector.isHot("abuser:1"));
+        assertTrue(detector.isHot("abuser:2"));
+        assertFalse(detector.isHot("noise:7"));
+    }
+    
+    @Test
+    void testDecayCoolsKeysDown() {
+        for (int i = 0; i < 1600; i++) {
+            detector.record("burst:user");
+        }
+        assertTrue(detector.isHot("burst:user"));
+        
+        detector.decay();
+        
+        assertFalse(detector.isHot("burst:user"));
+        assertEquals(800, detector.getTopKeys().get("burst:user"));
+    }
+    
+    @Test
+    void testStringHashCollisionsDoNotShareCounts() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        for (int i = 0; i < 1000; i++) {
+            detector.record("Aa");
+        }
+        
+        assertEquals(1000, detector.estimate("Aa"));
+        assertEquals(0, detector.estimate("BB"));
+    }
+    
+    @Test
+    void testRecordReportsWhetherTheKeyIsHot() {
+        int threshold = (int) new RateLimiterProperties().getHotKeyThreshold();
+        for (int i = 1; i < threshold; i++) {
+            assertFalse(detector.record("rising:user"));
+        }
+        
+        assertTrue(detector.record("rising:user"));
+        assertTrue(detector.isHot("rising:user"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalTokenBucketEngineTest {
+    
+    private final LocalTokenBucketEngine engine = new LocalTokenBucketEngine(new RateLimiterProperties());
+    
+    @Test
+    void testCapacityThenDenied() {
+        RateLimitConfig config = new RateLimitConfig(3, 1, 60);
+        config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        
+        assertEquals(2, engine.checkRateLimit("local:user:1", config).getRemaining());
+        assertTrue(engine.checkRateLimit("local:user:1", config).isAllowed());
+        assertTrue(engine.checkRateLimit("local:user:1", config).isAllowed());
+        assertFalse(engine.checkRateLimit("local:user:1", config).isAllowed());
+    }
+    
+    @Test
+    void testPermitsAreTakenAllOrNothing() {
+        assertEquals(3, engine.tryAcquire("local:weighted", 10, 1, 60_000, 0, 7));
+        assertEquals(-1, engine.tryAcquire("local:weighted", 10, 1, 60_000, 0, 4));
+        assertEquals(0, engine.tryAcquire("local:weighted", 10, 1, 60_000, 0, 3));
+    }
+    
+    @Test
+    void testFractionalRefillCarriesOver() {
+        // 10 tokens per second: one token every 100ms
+        assertEquals(0, engine.tryAcquire("local:refill", 1, 10, 1000, 0));
+        assertEquals(-1, engine.tryAcquire("local:refill", 1, 10, 1000, 60));
+        // 60ms + 60ms add up to a full token even though neither step did on its own
+        assertEquals(0, engine.tryAcquire("local:refill", 1, 10, 1000, 120));
+        assertEquals(-1, engine.tryAcquire("local:refill", 1, 10, 1000, 150));
+    }
+    
+    @Test
+    void testDenialCarriesTheTimeUntilEnoughTokens() {
+        RateLimitConfig config = new RateLimitConfig(1, 1, 60);
+        config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        engine.checkRateLimit("local:retry", config);
+        
+        assertEquals(60_000, engine.checkRateLimit("local:retry", config).getRetryAfterMs(), 1_000);
+        
+        // One token every 100ms, three short: 300ms after the last whole token, 60ms ago
+        assertEquals(0, engine.tryAcquire("local:deficit", 5, 10, 1000, 0, 5));
+        assertEquals(-1, engine.tryAcquire("local:deficit", 5, 10, 1000, 60, 3));
+        assertEquals(240, engine.retryAfter("local:deficit", 10, 1000, 60, 3));
+    }
+    
+    @Test
+    void testPeekTakesNothing() {
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        assertEquals(2, engine.peek("local:peek", config).getRemaining());
+        assertEquals(0, engine.getBucketCount());
+        
+        engine.checkRateLimit("local:peek", config, 2);
+        
+        assertFalse(engine.peek("local:peek", config).isAllowed());
+        assertEquals(60_000, engine.peek("local:peek", config).getRetryAfterMs(), 1_000);
+    }
+    
+    @Test
+    void testEvictedBucketIsRecreatedFull() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setLocalBucketIdleTimeoutMs(-1);
+        LocalTokenBucketEngine evicting = new LocalTokenBucketEngine(properties);
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        evicting.checkRateLimit("local:evicted", config, 2);
+        assertFalse(evicting.checkRateLimit("local:evicted", config).isAllowed());
+        
+        evicting.evictIdleBuckets();
+        
+        assertEquals(0, evicting.getBucketCount());
+        assertEquals(2, evicting.peek("local:evicted", config).getRemaining());
+        assertEquals(1, evicting.checkRateLimit("local:evicted", config).getRemaining());
+    }
+    
+    @Test
+    void testConcurrentAcquireNeverExceedsCapacity() throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(100, 1, 3600);
+        config.setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        int threadCount = 8;
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger allowedCount = new AtomicInteger();
+        
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < 1000; j++) {
+                        if (engine.checkRateLimit("local:contended", config).isAllowed()) {
+                            allowedCount.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(100, allowedCount.get());
+    }
+}
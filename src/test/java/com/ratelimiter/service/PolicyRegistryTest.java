@@ -0,0 +1,132 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitTier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyRegistryTest {
+    
+    private RateLimiterProperties properties;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimiterProperties();
+        properties.setPolicies(List.of(
+                policy("free", 20, "api:free:*"),
+                policy("free-search", 5, "api:free:search:*"),
+                policy("acme", 500, "api:free:acme"),
+                policy("uploads", 2, "api:*:upload")));
+    }
+    
+    @Test
+    void testLongestPrefixWins() {
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        assertEquals("free", registry.resolve("api:free:user1").getPolicy());
+        assertEquals("free-search", registry.resolve("api:free:search:user1").getPolicy());
+    }
+    
+    @Test
+    void testExactPatternBeatsWildcardOnSamePrefix() {
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        assertEquals("acme", registry.resolve("api:free:acme").getPolicy());
+        assertEquals("free", registry.resolve("api:free:acme2").getPolicy());
+    }
+    
+    @Test
+    void testWildcardInTheMiddle() {
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        assertEquals("uploads", registry.resolve("api:pro:upload").getPolicy());
+        assertEquals("default", registry.resolve("api:pro:download").getPolicy());
+        // A longer literal prefix wins even over a more selective pattern
+        assertEquals("free", registry.resolve("api:free:upload").getPolicy());
+    }
+    
+    @Test
+    void testUnmatchedIdentifiersGetTheDefaults() {
+        RateLimiterProperties.Defaults defaults = properties.getDefaults();
+        defaults.setRequestsPerMinute(120);
+        defaults.setBurstCapacity(30);
+        defaults.setWindowSize(30);
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        RateLimitConfig config = registry.resolve("web:user1");
+        
+        assertEquals(PolicyRegistry.DEFAULT_POLICY, config.getPolicy());
+        assertEquals(30, config.getCapacity());
+        assertEquals(60, config.getRefillRate());
+        assertEquals(30, config.getWindow());
+    }
+    
+    @Test
+    void testResolvedPolicyIsCachedAndShared() {
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        RateLimitConfig first = registry.resolve("api:free:user1");
+        
+        assertSame(first, registry.resolve("api:free:user1"));
+        assertSame(first, registry.resolve("api:free:user2"));
+    }
+    
+    @Test
+    void testFullCacheStillResolves() {
+        properties.setPolicyCacheMaxEntries(1);
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        
+        registry.resolve("api:free:user1");
+        
+        assertEquals("free-search", registry.resolve("api:free:search:user2").getPolicy());
+        assertEquals("free-search", registry.resolve("api:free:search:user2").getPolicy());
+    }
+    
+    @Test
+    void testClientConfigIgnoredUnlessAllowed() {
+        RateLimitConfig clientConfig = new RateLimitConfig(1_000_000, 1_000_000, 1);
+        
+        assertEquals("free", new PolicyRegistry(properties).resolve("api:free:user1", clientConfig).getPolicy());
+        
+        properties.setAllowClientConfig(true);
+        assertSame(clientConfig, new PolicyRegistry(properties).resolve("api:free:user1", clientConfig));
+        assertThrows(RateLimiterException.class,
+                () -> new PolicyRegistry(properties).resolve("api:free:user1", new RateLimitConfig(10, 0, 60)));
+    }
+    
+    @Test
+    void testTiersNeedAPositiveRefillRate() {
+        RateLimiterProperties.Policy policy = policy("tiered", 10, "api:*");
+        policy.setTiers(List.of(new RateLimitTier("user", null, 10, 1, 60), new RateLimitTier("tenant", "acme", 100, 0, 60)));
+        assertThrows(RateLimiterException.class, () -> PolicyRegistry.validate(policy));
+        
+        properties.setAllowClientConfig(true);
+        RateLimitConfig clientConfig = new RateLimitConfig(10, 1, 60);
+        clientConfig.setTiers(policy.getTiers());
+        assertThrows(RateLimiterException.class,
+                () -> new PolicyRegistry(properties).resolve("api:free:user1", clientConfig));
+    }
+    
+    @Test
+    void testGlobMatching() {
+        assertTrue(PolicyTrie.globMatches("*", "", 0));
+        assertTrue(PolicyTrie.globMatches("a*b*c", "axxbyyc", 0));
+        assertTrue(PolicyTrie.globMatches("*:upload", "pro:x:upload", 0));
+        assertFalse(PolicyTrie.globMatches("a*b", "axxbc", 0));
+        assertFalse(PolicyTrie.globMatches("abc", "ab", 0));
+    }
+    
+    private static RateLimiterProperties.Policy policy(String name, int capacity, String... patterns) {
+        RateLimiterProperties.Policy policy = new RateLimiterProperties.Policy();
+        policy.setName(name);
+        policy.setCapacity(capacity);
+        policy.setMatch(List.of(patterns));
+        return policy;
+    }
+}
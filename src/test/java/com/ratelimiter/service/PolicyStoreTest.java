@@ -0,0 +1,149 @@
+package com.ratelimiter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolicyStoreTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private PolicyRegistry adminRegistry;
+    private PolicyStore adminStore;
+    private PolicyRegistry peerRegistry;
+    private PolicyStore peerStore;
+    private DeniedCache peerDeniedCache;
+    private RedisMessageListenerContainer container;
+    
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setPolicies(List.of(policy("free", 20, "api:free:*")));
+        
+        adminRegistry = new PolicyRegistry(properties);
+        adminStore = new PolicyStore(template, adminRegistry, new DeniedCache(properties), new ObjectMapper());
+        adminStore.start();
+        peerRegistry = new PolicyRegistry(properties);
+        peerDeniedCache = new DeniedCache(properties);
+        peerStore = new PolicyStore(template, peerRegistry, peerDeniedCache, new ObjectMapper());
+        peerStore.start();
+        
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redis.getConnectionFactory());
+        container.addMessageListener(peerStore, new ChannelTopic(PolicyStore.CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        container.destroy();
+    }
+    
+    @Test
+    void testChangeReachesPeersThroughPubSub() throws InterruptedException {
+        adminStore.save(policy("free", 50, "api:free:*"));
+        
+        // Applied on the writing node at once
+        assertEquals(50, adminRegistry.resolve("api:free:user1").getCapacity());
+        awaitCapacity(peerRegistry, "api:free:user1", 50);
+        
+        adminStore.delete("free");
+        
+        // Back to the configured policy
+        assertEquals(20, adminRegistry.resolve("api:free:user1").getCapacity());
+        awaitCapacity(peerRegistry, "api:free:user1", 20);
+    }
+    
+    @Test
+    void testChangeClearsCachedDenials() throws InterruptedException {
+        long until = System.currentTimeMillis() + 60_000;
+        peerDeniedCache.deny("free", "api:free:user1", until);
+        
+        adminStore.save(policy("free", 50, "api:free:*"));
+        
+        long deadline = System.currentTimeMillis() + 5000;
+        while (peerDeniedCache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, peerDeniedCache.retryAfter("free", "api:free:user1", System.currentTimeMillis()));
+        assertEquals(50, peerRegistry.resolve("api:free:user1").getCapacity());
+    }
+    
+    @Test
+    void testRuntimePolicyAddsNewPatterns() throws InterruptedException {
+        assertEquals(PolicyRegistry.DEFAULT_POLICY, peerRegistry.resolve("api:pro:user1").getPolicy());
+        
+        adminStore.save(policy("pro", 1000, "api:pro:*"));
+        
+        awaitCapacity(peerRegistry, "api:pro:user1", 1000);
+        assertEquals("pro", peerRegistry.resolve("api:pro:user1").getPolicy());
+        assertEquals(1, peerStore.getPolicies().size());
+    }
+    
+    @Test
+    void testPollCatchesUpOnMissedEvents() {
+        // A node that was not subscribed when the change went out
+        RateLimiterProperties properties = new RateLimiterProperties();
+        PolicyRegistry lateRegistry = new PolicyRegistry(properties);
+        PolicyStore lateStore = new PolicyStore(template, lateRegistry, new DeniedCache(properties), new ObjectMapper());
+        lateStore.start();
+        
+        adminStore.save(policy("pro", 1000, "api:pro:*"));
+        assertEquals(PolicyRegistry.DEFAULT_POLICY, lateRegistry.resolve("api:pro:user1").getPolicy());
+        
+        lateStore.poll();
+        
+        assertEquals("pro", lateRegistry.resolve("api:pro:user1").getPolicy());
+    }
+    
+    @Test
+    void testStartupLoadsStoredPolicies() {
+        adminStore.save(policy("pro", 1000, "api:pro:*"));
+        
+        RateLimiterProperties properties = new RateLimiterProperties();
+        PolicyRegistry registry = new PolicyRegistry(properties);
+        new PolicyStore(template, registry, new DeniedCache(properties), new ObjectMapper()).start();
+        
+        assertEquals(1000, registry.resolve("api:pro:user1").getCapacity());
+    }
+    
+    @Test
+    void testInvalidPolicyIsRejectedBeforeWriting() {
+        RateLimiterProperties.Policy invalid = policy("broken", 0, "api:*");
+        
+        assertThrows(RateLimiterException.class, () -> adminStore.save(invalid));
+        assertFalse(template.hasKey(PolicyStore.POLICIES_KEY));
+    }
+    
+    private static void awaitCapacity(PolicyRegistry registry, String identifier, int capacity) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.resolve(identifier).getCapacity() != capacity && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(capacity, registry.resolve(identifier).getCapacity());
+    }
+    
+    private static RateLimiterProperties.Policy policy(String name, int capacity, String... patterns) {
+        RateLimiterProperties.Policy policy = new RateLimiterProperties.Policy();
+        policy.setName(name);
+        policy.setCapacity(capacity);
+        policy.setMatch(List.of(patterns));
+        return policy;
+    }
+}
@@ -0,0 +1,128 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitRequest;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterBatchTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+
+    private SimpleMeterRegistry meterRegistry;
+    private DecisionMetricsPipeline decisionMetrics;
+    private HotKeyDetector hotKeyDetector;
+    private DeniedCache deniedCache;
+    private RateLimiterServiceImpl rateLimiterService;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        EmbeddedRedis.Services services = EmbeddedRedis.services(EmbeddedRedis.router(template), properties);
+        hotKeyDetector = services.hotKeyDetector();
+        meterRegistry = services.meterRegistry();
+        decisionMetrics = services.decisionMetrics();
+        deniedCache = services.deniedCache();
+        rateLimiterService = services.rateLimiterService();
+    }
+
+    @Test
+    void testBatchEvaluatesEachItem() {
+        List<RateLimitRequest> requests = List.of(
+                request("batch:user:1", 2),
+                request("batch:ip:1", 1),
+                request("batch:user:1", 2));
+
+        List<RateLimitResult> first = rateLimiterService.checkRateLimitBatch(requests);
+        assertEquals(3, first.size());
+        assertTrue(first.stream().allMatch(RateLimitResult::isAllowed));
+
+        // Both buckets are now empty
+        List<RateLimitResult> second = rateLimiterService.checkRateLimitBatch(requests);
+        assertTrue(second.stream().noneMatch(RateLimitResult::isAllowed));
+    }
+
+    @Test
+    void testAllOrNothingDoesNotConsumeOnDenial() {
+        rateLimiterService.checkRateLimitBatch(List.of(request("batch:aon:limited", 1)));
+
+        List<RateLimitResult> results = rateLimiterService.checkRateLimitBatch(List.of(
+                request("batch:aon:free", 1),
+                request("batch:aon:limited", 1)), true);
+        assertFalse(results.get(0).isAllowed());
+        assertFalse(results.get(1).isAllowed());
+
+        // The free bucket kept its only token
+        assertTrue(rateLimiterService.checkRateLimitBatch(List.of(request("batch:aon:free", 1))).get(0).isAllowed());
+    }
+
+    @Test
+    void testOtherAlgorithmsGoThroughTheirEngine() {
+        RateLimitRequest local = request("batch:local:1", 1);
+        local.getConfig().setAlgorithm(LocalTokenBucketEngine.ALGORITHM);
+        List<RateLimitRequest> requests = List.of(request("batch:bucket:1", 5), local);
+
+        List<RateLimitResult> first = rateLimiterService.checkRateLimitBatch(requests);
+        assertTrue(first.get(0).isAllowed());
+        assertTrue(first.get(1).isAllowed());
+        List<RateLimitResult> second = rateLimiterService.checkRateLimitBatch(requests);
+        assertTrue(second.get(0).isAllowed());
+        assertFalse(second.get(1).isAllowed());
+
+        // Decided in process, not as a token bucket in Redis
+        assertFalse(template.hasKey(RedisKeys.key("batch:local:1")));
+        assertThrows(RateLimiterException.class, () -> rateLimiterService.checkRateLimitBatch(requests, true));
+    }
+
+    @Test
+    void testBatchDenialsAreCachedAndMeasured() {
+        List<RateLimitRequest> requests = List.of(request("batch:cached:1", 1));
+        assertTrue(rateLimiterService.checkRateLimitBatch(requests).get(0).isAllowed());
+
+        RateLimitResult denied = rateLimiterService.checkRateLimitBatch(requests).get(0);
+        assertFalse(denied.isAllowed());
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        assertTrue(deniedCache.retryAfter("default", "batch:cached:1", System.currentTimeMillis()) > 0);
+
+        // Answered from the cache: an all-or-nothing batch is denied without touching its other bucket
+        List<RateLimitResult> results = rateLimiterService.checkRateLimitBatch(List.of(
+                request("batch:cached:2", 1), request("batch:cached:1", 1)), true);
+        assertTrue(results.stream().noneMatch(RateLimitResult::isAllowed));
+        assertFalse(template.hasKey(RedisKeys.key("batch:cached:2")));
+
+        assertEquals(3, hotKeyDetector.estimate("batch:cached:1"));
+        assertEquals(4, rateLimiterService.getMetrics().getTotalRequests());
+        decisionMetrics.drain();
+        assertEquals(3, meterRegistry.get("rate_limit_decisions").tag("outcome", "denied").counter().count());
+    }
+
+    @Test
+    void testStatusReadsTheBucketABatchLeft() {
+        rateLimiterService.checkRateLimitBatch(List.of(request("batch:status:1", 5)));
+
+        // The shared plumbing gets its router and encoding from the constructor, also when wired by hand
+        assertEquals(4, rateLimiterService.getRateLimitStatus("batch:status:1").orElseThrow().getTokens());
+    }
+
+    private static RateLimitRequest request(String identifier, int capacity) {
+        RateLimitRequest request = new RateLimitRequest();
+        request.setIdentifier(identifier);
+        request.setConfig(new RateLimitConfig(capacity, 1, 60));
+        return request;
+    }
+}
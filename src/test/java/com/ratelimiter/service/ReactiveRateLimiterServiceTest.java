@@ -0,0 +1,123 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitRequest;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveRateLimiterServiceTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+
+    private final RateLimiterProperties properties = new RateLimiterProperties();
+    private LettuceConnectionFactory lettuceFactory;
+    private RedisTemplate<String, String> template;
+    private RedisShardRouter shardRouter;
+    private DecisionCounters decisionCounters;
+    private FallbackRateLimiter fallback;
+    private RateLimiterServiceImpl rateLimiterService;
+
+    @BeforeEach
+    void setUp() {
+        template = redis.getTemplate();
+
+        EmbeddedRedis.Services services = EmbeddedRedis.services(EmbeddedRedis.router(template), properties);
+        shardRouter = services.router();
+        decisionCounters = services.decisionCounters();
+        fallback = services.fallback();
+        rateLimiterService = services.rateLimiterService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (lettuceFactory != null) {
+            lettuceFactory.destroy();
+        }
+    }
+
+    @Test
+    void testDenialIsCountedAndCached() {
+        ReactiveRateLimiterService service = reactiveService(redis.getPort());
+        RateLimitConfig config = new RateLimitConfig(1, 1, 60);
+
+        assertTrue(service.checkRateLimit("user:1", config).block().isAllowed());
+        RateLimitResult denied = service.checkRateLimit("user:1", config).block();
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfterMs() > 0);
+        assertEquals(1, decisionCounters.getAllowed());
+        assertEquals(1, decisionCounters.getDenied());
+
+        // Answered by the denied cache: an emptied bucket in Redis is not asked
+        template.delete(RedisKeys.key("user:1"));
+        assertFalse(service.checkRateLimit("user:1", config).block().isAllowed());
+        assertEquals(2, decisionCounters.getDenied());
+    }
+
+    @Test
+    void testUnreachableRedisIsDecidedByTheFallback() throws IOException {
+        ReactiveRateLimiterService service = reactiveService(EmbeddedRedis.freePort());
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+
+        assertTrue(service.checkRateLimit("user:1", config).block().isAllowed());
+        assertTrue(fallback.isActive());
+        assertEquals(1, decisionCounters.getAllowed());
+    }
+
+    @Test
+    void testUnreachableRedisDecidesBatchesByTheFallback() throws IOException {
+        ReactiveRateLimiterService service = reactiveService(EmbeddedRedis.freePort());
+
+        List<RateLimitResult> results = service.checkRateLimitBatch(
+                List.of(request("user:1"), request("user:2")), false).block();
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(RateLimitResult::isAllowed));
+        assertTrue(fallback.isActive());
+        assertEquals(2, decisionCounters.getAllowed());
+    }
+
+    @Test
+    void testBatchDenialsAreCached() {
+        ReactiveRateLimiterService service = reactiveService(redis.getPort());
+        RateLimitRequest request = request("user:1");
+        request.getConfig().setCapacity(1);
+
+        assertTrue(service.checkRateLimitBatch(List.of(request), false).block().get(0).isAllowed());
+        assertFalse(service.checkRateLimitBatch(List.of(request), false).block().get(0).isAllowed());
+
+        template.delete(RedisKeys.key("user:1"));
+        assertFalse(service.checkRateLimitBatch(List.of(request), false).block().get(0).isAllowed());
+        assertEquals(2, decisionCounters.getDenied());
+    }
+
+    private ReactiveRateLimiterService reactiveService(int port) {
+        lettuceFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        lettuceFactory.afterPropertiesSet();
+        lettuceFactory.start();
+        return new ReactiveRateLimiterService(new ReactiveStringRedisTemplate(lettuceFactory), rateLimiterService,
+                shardRouter, new ActiveKeyTracker(template, properties), fallback, new PolicyRegistry(properties), properties);
+    }
+
+    private static RateLimitRequest request(String identifier) {
+        RateLimitRequest request = new RateLimitRequest();
+        request.setIdentifier(identifier);
+        request.setConfig(new RateLimitConfig(10, 1, 60));
+        return request;
+    }
+}
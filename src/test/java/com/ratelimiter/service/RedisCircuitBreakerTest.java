@@ -0,0 +1,98 @@
+package com.ratelimiter.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisCircuitBreakerTest {
+    
+    @Test
+    void testOpensOnceFailureRateIsReached() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 4, 50, 100, 60_000);
+        
+        record(breaker, false, 0);
+        record(breaker, false, 0);
+        record(breaker, true, 0);
+        // Below minimumCalls nothing trips
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        
+        record(breaker, true, 0);
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(RedisCircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermission());
+    }
+    
+    @Test
+    void testSlowCallsCountAsFailures() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 4, 50, 100, 60_000);
+        
+        for (int i = 0; i < 4; i++) {
+            record(breaker, true, 200_000_000L);
+        }
+        
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+    
+    @Test
+    void testOldOutcomesLeaveTheWindow() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(4, 4, 75, 100, 60_000);
+        
+        record(breaker, false, 0);
+        record(breaker, false, 0);
+        for (int i = 0; i < 20; i++) {
+            record(breaker, true, 0);
+        }
+        record(breaker, false, 0);
+        record(breaker, false, 0);
+        
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+    
+    @Test
+    void testSingleProbeClosesOrReopens() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(4, 1, 50, 100, 20);
+        record(breaker, false, 0);
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        
+        Thread.sleep(30);
+        long probe = breaker.tryAcquirePermission();
+        assertNotEquals(RedisCircuitBreaker.NOT_PERMITTED, probe);
+        assertEquals(RedisCircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermission());
+        breaker.onResult(probe, false, 0);
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        
+        Thread.sleep(30);
+        probe = breaker.tryAcquirePermission();
+        assertNotEquals(RedisCircuitBreaker.NOT_PERMITTED, probe);
+        breaker.onResult(probe, true, 0);
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotEquals(RedisCircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermission());
+    }
+    
+    @Test
+    void testCallsFromBeforeTheProbeDoNotSettleIt() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(4, 1, 50, 100, 20);
+        long stale = breaker.tryAcquirePermission();
+        record(breaker, false, 0);
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        
+        Thread.sleep(30);
+        long probe = breaker.tryAcquirePermission();
+        // A call admitted while closed finishes during the probe, either way
+        breaker.onResult(stale, true, 0);
+        assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(stale, false, 0);
+        assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        
+        breaker.onResult(probe, true, 0);
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onResult(stale, false, 0);
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+    
+    /**
+     * The outcome of a call admitted now.
+     */
+    private static void record(RedisCircuitBreaker breaker, boolean succeeded, long elapsedNanos) {
+        breaker.onResult(breaker.tryAcquirePermission(), succeeded, elapsedNanos);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisKeysTest {
+    
+    @Test
+    void testIdentifierIsWrappedInHashTag() {
+        assertEquals("rate_limit:{user:123}", RedisKeys.key("user:123"));
+        assertEquals("rate_limit:sw:{user:123}", RedisKeys.key("sw:", "user:123"));
+    }
+    
+    @Test
+    void testExistingHashTagIsKept() {
+        assertEquals("rate_limit:{acme}:user:1", RedisKeys.key("{acme}:user:1"));
+        assertEquals(RedisKeys.slot(RedisKeys.key("{acme}:user:1")),
+                RedisKeys.slot(RedisKeys.key("gcra:", "{acme}:user:2")));
+        // An empty tag is not a hash tag
+        assertEquals("rate_limit:{{}user}", RedisKeys.key("{}user"));
+    }
+    
+    @Test
+    void testKeysOfOneIdentifierShareASlot() {
+        assertEquals(RedisKeys.slot(RedisKeys.key("sw:", "user:1") + ":100"),
+                RedisKeys.slot(RedisKeys.key("sw:", "user:1") + ":99"));
+    }
+    
+    @Test
+    void testBatchGroupedBySlot() {
+        List<RateLimitRequest> requests = List.of(
+                request("{acme}:user:1"), request("{globex}:user:1"), request("{acme}:user:2"));
+        
+        List<List<Integer>> groups = RateLimiterService.batchSlotGroups(requests, false);
+        
+        assertEquals(List.of(List.of(0, 2), List.of(1)), groups);
+        assertThrows(RateLimiterException.class, () -> RateLimiterService.batchSlotGroups(requests, true));
+        assertEquals(1, RateLimiterService.batchSlotGroups(List.of(requests.get(0), requests.get(2)), true).size());
+    }
+    
+    @Test
+    void testGlobCharactersAreEscaped() {
+        assertEquals("user:\\*:\\?\\[a\\]\\\\", RedisKeys.escapeGlob("user:*:?[a]\\"));
+    }
+    
+    private static RateLimitRequest request(String identifier) {
+        RateLimitRequest request = new RateLimitRequest();
+        request.setIdentifier(identifier);
+        return request;
+    }
+}
@@ -0,0 +1,106 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.exception.RedisUnavailableException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisShardRouterTest {
+    
+    @Test
+    void testAddingShardMovesAboutOneNth() {
+        int keys = 100_000;
+        int moved = 0;
+        int[] perShard = new int[5];
+        for (int i = 0; i < keys; i++) {
+            int before = RedisShardRouter.jumpHash(i * 0x9E3779B97F4A7C15L, 4);
+            int after = RedisShardRouter.jumpHash(i * 0x9E3779B97F4A7C15L, 5);
+            if (before != after) {
+                moved++;
+                // Keys only ever move to the new shard
+                assertEquals(4, after);
+            }
+            perShard[after]++;
+        }
+        
+        assertEquals(keys / 5.0, moved, keys * 0.01);
+        for (int count : perShard) {
+            assertEquals(keys / 5.0, count, keys * 0.01);
+        }
+    }
+    
+    @Test
+    void testKeysHashLikeTheirUtf8Bytes() {
+        for (String key : List.of("", "user:1", "na\u00efve:\u043a\u043b\u044e\u0447", "emoji:\uD83D\uDE00", "lone:\uD83D:x", "{tenant-\u20ac}:user:1")) {
+            long tag = RedisKeys.hashTagRange(key);
+            assertEquals(fnv1a64(RedisKeys.hashTag(key).getBytes(StandardCharsets.UTF_8)),
+                    RedisShardRouter.fnv1a64(key, (int) (tag >>> 32), (int) tag), key);
+        }
+    }
+    
+    @Test
+    void testKeysOfOneTagShareAShard() {
+        RedisShardRouter router = router(16);
+        
+        assertEquals(router.shardFor(RedisKeys.key("{acme}:user:1")),
+                router.shardFor(RedisKeys.key("gcra:", "{acme}:user:2")));
+    }
+    
+    @Test
+    void testDeadShardFailsFastOnlyForItsKeys() {
+        RedisShardRouter router = router(2);
+        String key = RedisKeys.key("user:1");
+        int dead = router.shardFor(key);
+        
+        // One dropped connection is only a failure on the breaker
+        failOnce(router, key);
+        assertTrue(router.isHealthy(dead));
+        assertEquals("served", router.execute(key, template -> "served"));
+        
+        // Nine failures in the breaker's first ten calls open it
+        for (int i = 0; i < 8; i++) {
+            failOnce(router, key);
+        }
+        assertEquals(RedisCircuitBreaker.State.OPEN, router.getCircuitState(dead));
+        assertThrows(RedisUnavailableException.class, () -> router.execute(key, template -> "unreachable"));
+        assertEquals("served", router.executeOnShard(1 - dead, template -> "served"));
+    }
+    
+    @Test
+    void testHealthCheckMarksUnreachableShardsDown() {
+        // Templates without a connection factory cannot answer a PING
+        RedisShardRouter router = router(2);
+        
+        router.checkHealth();
+        
+        assertFalse(router.isHealthy(0));
+        assertFalse(router.isHealthy(1));
+        assertThrows(RedisUnavailableException.class, () -> router.executeOnShard(0, template -> "unreachable"));
+    }
+    
+    private static void failOnce(RedisShardRouter router, String key) {
+        assertThrows(RedisConnectionFailureException.class, () -> router.execute(key, template -> {
+            throw new RedisConnectionFailureException("connection refused");
+        }));
+    }
+    
+    private static RedisShardRouter router(int shards) {
+        return new RedisShardRouter(Collections.nCopies(shards, new RedisTemplate<>()), List.of(),
+                () -> new RedisCircuitBreaker(20, 10, 50, 250, 1000));
+    }
+    
+    private static long fnv1a64(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
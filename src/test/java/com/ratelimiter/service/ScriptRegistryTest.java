@@ -0,0 +1,100 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptRegistryTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private ScriptRegistry registry;
+    
+    @BeforeEach
+    void setUp() {
+        flushScripts();
+        registry = new ScriptRegistry(EmbeddedRedis.router(template));
+    }
+    
+    @Test
+    void testEveryScriptIsLoadedAndRegistered() {
+        registry.loadAll();
+        
+        for (RedisScripts.Script<?> script : RedisScripts.all()) {
+            assertTrue(scriptExists(script.getSha1()), script.getName());
+            assertEquals(script.getVersion() + ":" + script.getSha1(),
+                    template.opsForHash().get(ScriptRegistry.VERSIONS_KEY, script.getName()));
+        }
+    }
+    
+    @Test
+    void testScriptNamesAndShasAreUnique() {
+        Set<String> names = new HashSet<>();
+        Set<String> shas = new HashSet<>();
+        for (RedisScripts.Script<?> script : RedisScripts.all()) {
+            assertTrue(names.add(script.getName()), script.getName());
+            assertTrue(shas.add(script.getSha1()), script.getName());
+        }
+    }
+    
+    @Test
+    void testNewerRegisteredVersionIsKept() {
+        RedisScripts.Script<?> script = RedisScripts.TOKEN_BUCKET;
+        String newer = (script.getVersion() + 1) + ":0123";
+        template.opsForHash().put(ScriptRegistry.VERSIONS_KEY, script.getName(), newer);
+        
+        registry.loadAll();
+        
+        assertEquals(newer, template.opsForHash().get(ScriptRegistry.VERSIONS_KEY, script.getName()));
+    }
+    
+    @Test
+    void testFlushedScriptIsReloadedAndRunBySha() {
+        RedisShardRouter router = EmbeddedRedis.router(template);
+        RateLimiterProperties properties = new RateLimiterProperties();
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(router, properties,
+                new HotKeyDetector(properties), new ActiveKeyTracker(template, properties));
+        assertFalse(scriptExists(RedisScripts.TOKEN_BUCKET.getSha1()));
+        
+        assertTrue(rateLimiter.isAllowed("user1", new RateLimitConfig(2, 1, 60)).isAllowed());
+        
+        assertTrue(scriptExists(RedisScripts.TOKEN_BUCKET.getSha1()));
+        flushScripts();
+        assertTrue(rateLimiter.isAllowed("user1", new RateLimitConfig(2, 1, 60)).isAllowed());
+        assertFalse(rateLimiter.isAllowed("user1", new RateLimitConfig(2, 1, 60)).isAllowed());
+    }
+    
+    @Test
+    void testNoScriptIsRecognisedThroughCauses() {
+        RuntimeException e = new RuntimeException("wrapped", new IllegalStateException("NOSCRIPT No matching script"));
+        
+        assertTrue(ShaScriptExecutor.isNoScript(e));
+        assertFalse(ShaScriptExecutor.isNoScript(new RuntimeException("WRONGTYPE")));
+    }
+    
+    private boolean scriptExists(String sha) {
+        return template.execute((RedisCallback<Boolean>) connection ->
+                connection.scriptingCommands().scriptExists(sha).get(0));
+    }
+    
+    private void flushScripts() {
+        template.execute((RedisCallback<Void>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+    }
+}
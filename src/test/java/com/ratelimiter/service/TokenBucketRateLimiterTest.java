@@ -1,38 +1,41 @@
 package com.ratelimiter.service;
 
-import com.ratelimiter.config.RateLimiterTestConfig;
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.exception.RateLimiterException;
+import com.ratelimiter.model.RateLimitConfig;
 import com.ratelimiter.model.RateLimitResult;
 import com.ratelimiter.model.TokenBucket;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.test.annotation.DirtiesContext;
 
 import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
 @TestMethodOrder(OrderAnnotation.class)
-@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 class TokenBucketRateLimiterTest {
     
-    @Autowired
-    private TokenBucketRateLimiter rateLimiter;
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
     
-    @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private TokenBucketRateLimiter rateLimiter;
     
     @BeforeEach
     void setUp() {
-        // Clean up Redis before each test
-        redisTemplate.getConnectionFactory().getConnection().flushAll();
+        RateLimiterProperties properties = new RateLimiterProperties();
+        RedisShardRouter router = EmbeddedRedis.router(template);
+        rateLimiter = new TokenBucketRateLimiter(router, properties, new HotKeyDetector(properties),
+                new ActiveKeyTracker(template, properties));
     }
     
     @Test
@@ -95,6 +98,15 @@ class TokenBucketRateLimiterTest {
         assertEquals(1, result2.getRemaining());
     }
     
+    @Test
+    void testBucketThatNeverRefillsIsRejected() {
+        assertThrows(RateLimiterException.class,
+                () -> rateLimiter.isAllowed("user:no-refill", 10, 0, Duration.ofSeconds(60)));
+        assertThrows(RateLimiterException.class,
+                () -> rateLimiter.isAllowedWithLease("user:no-refill", 10, 0, Duration.ofSeconds(60), 5, 1000));
+        assertFalse(template.hasKey(RedisKeys.key("user:no-refill")));
+    }
+    
     @Test
     @Order(4)
     void testBucketStateRetrieval() {
@@ -103,7 +115,7 @@ class TokenBucketRateLimiterTest {
         // Make a request to create bucket
         rateLimiter.isAllowed(identifier, 10, 5, Duration.ofMinutes(1));
         
-        Optional<TokenBucket> bucket = rateLimiter.getBucketState(identifier);
+        Optional<TokenBucket> bucket = rateLimiter.getBucketState(identifier, new RateLimitConfig(10, 5, 60));
         assertTrue(bucket.isPresent());
         assertEquals(10, bucket.get().getCapacity());
         assertEquals(9, bucket.get().getTokens()); // One token consumed
@@ -130,4 +142,79 @@ class TokenBucketRateLimiterTest {
         RateLimitResult allowed = rateLimiter.isAllowed(identifier, 5, 1, Duration.ofSeconds(1));
         assertTrue(allowed.isAllowed());
     }
-} 
\ No newline at end of file
+    
+    @Test
+    @Order(6)
+    void testLeaseModeHonoursCapacity() {
+        String identifier = "user:lease:test";
+        RateLimitConfig config = new RateLimitConfig(25, 1, 60);
+        config.setLeaseSize(10);
+        config.setLeaseTtlMs(60000);
+        
+        int allowed = 0;
+        for (int i = 0; i < 30; i++) {
+            if (rateLimiter.isAllowed(identifier, config).isAllowed()) {
+                allowed++;
+            }
+        }
+        
+        // Leases of 10, 10 and 5 tokens drain the bucket, nothing more
+        assertEquals(25, allowed);
+    }
+    
+    @Test
+    @Order(7)
+    void testLeaseDenialCarriesRetryAfterAndIsAnsweredLocally() {
+        String identifier = "user:lease:denied";
+        RateLimitConfig config = new RateLimitConfig(2, 1, 60);
+        config.setLeaseSize(2);
+        config.setLeaseTtlMs(60000);
+        
+        assertTrue(rateLimiter.isAllowed(identifier, config).isAllowed());
+        assertTrue(rateLimiter.isAllowed(identifier, config).isAllowed());
+        RateLimitResult denied = rateLimiter.isAllowed(identifier, config);
+        assertFalse(denied.isAllowed());
+        // One token a minute, and the bucket is empty
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        
+        // Refilled behind the node's back: it does not ask Redis again before the retry time
+        template.delete(RedisKeys.key(identifier));
+        RateLimitResult local = rateLimiter.isAllowed(identifier, config);
+        assertFalse(local.isAllowed());
+        assertTrue(local.getRetryAfterMs() > 0 && local.getRetryAfterMs() <= denied.getRetryAfterMs());
+        assertFalse(template.hasKey(RedisKeys.key(identifier)));
+        
+        rateLimiter.resetRateLimit(identifier);
+        assertTrue(rateLimiter.isAllowed(identifier, config).isAllowed());
+    }
+    
+    @Test
+    @Order(8)
+    void testTokensOfAFailedLeaseRefreshAreReturnedLater() throws InterruptedException {
+        String identifier = "user:lease:failed";
+        String key = RedisKeys.key(identifier);
+        RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+        config.setLeaseSize(10);
+        config.setLeaseTtlMs(50);
+        assertTrue(rateLimiter.isAllowed(identifier, config).isAllowed());
+        
+        // The lease expires holding 9 tokens, and the refresh that returns them fails
+        Thread.sleep(100);
+        template.delete(key);
+        template.opsForList().leftPush(key, "not a bucket");
+        assertThrows(RuntimeException.class, () -> rateLimiter.isAllowed(identifier, config));
+        
+        template.delete(key);
+        Duration window = Duration.ofSeconds(60);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rateLimiter.isAllowed(identifier, 10, 1, window).isAllowed());
+        }
+        rateLimiter.returnExpiredLeases();
+        
+        int allowed = 0;
+        while (rateLimiter.isAllowed(identifier, 10, 1, window).isAllowed()) {
+            allowed++;
+        }
+        assertEquals(9, allowed);
+    }
+}
@@ -0,0 +1,101 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitConfig;
+import com.ratelimiter.model.RateLimitRequest;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Requests taking several permits at once, through each Redis engine and the batch script.
+ */
+class WeightedAcquireTest {
+    
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+    
+    private final RedisTemplate<String, String> template = redis.getTemplate();
+    
+    private final RateLimitConfig config = new RateLimitConfig(10, 1, 60);
+    private final RedisShardRouter router = EmbeddedRedis.router(template);
+    
+    @Test
+    void testTokenBucket() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(router, properties,
+                new HotKeyDetector(properties), new ActiveKeyTracker(template, properties));
+        
+        assertEquals(3, rateLimiter.checkRateLimit("user:1", config, 7).getRemaining());
+        RateLimitResult denied = rateLimiter.checkRateLimit("user:1", config, 4);
+        assertFalse(denied.isAllowed());
+        // One token short at one token per 60s
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        assertEquals(0, rateLimiter.checkRateLimit("user:1", config, 3).getRemaining());
+        
+        // More than the capacity is denied outright and leaves the bucket alone
+        assertFalse(rateLimiter.checkRateLimit("user:2", config, 11).isAllowed());
+        assertFalse(template.hasKey(RedisKeys.key("user:2")));
+    }
+    
+    @Test
+    void testSlidingWindow() {
+        SlidingWindowRateLimiter rateLimiter = new SlidingWindowRateLimiter(router);
+        
+        assertEquals(4, rateLimiter.checkRateLimit("user:1", config, 6).getRemaining());
+        assertFalse(rateLimiter.checkRateLimit("user:1", config, 5).isAllowed());
+        assertEquals(0, rateLimiter.checkRateLimit("user:1", config, 4).getRemaining());
+    }
+    
+    @Test
+    void testFixedWindow() {
+        FixedWindowRateLimiter rateLimiter = new FixedWindowRateLimiter(router);
+        
+        assertEquals(4, rateLimiter.checkRateLimit("user:1", config, 6).getRemaining());
+        assertFalse(rateLimiter.checkRateLimit("user:1", config, 5).isAllowed());
+        assertEquals(0, rateLimiter.checkRateLimit("user:1", config, 4).getRemaining());
+    }
+    
+    @Test
+    void testGcra() {
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(router);
+        
+        assertTrue(rateLimiter.checkRateLimit("user:1", config, 6).isAllowed());
+        RateLimitResult denied = rateLimiter.checkRateLimit("user:1", config, 5);
+        assertFalse(denied.isAllowed());
+        assertEquals(60_000, denied.getRetryAfterMs(), 1_000);
+        assertTrue(rateLimiter.checkRateLimit("user:1", config, 4).isAllowed());
+    }
+    
+    @Test
+    void testBatchChargesEachItemItsPermits() {
+        List<RateLimitRequest> requests = List.of(request("user:1", 6), request("user:1", 5), request("user:1", 4));
+        long currentTime = System.currentTimeMillis();
+        
+        List<?> raw = template.execute(
+                RedisScripts.TOKEN_BUCKET_BATCH,
+                RateLimiterService.batchKeys(requests),
+                RateLimiterService.batchArgs(requests, currentTime, false));
+        List<RateLimitResult> results = RateLimiterService.batchResults(requests, raw, currentTime);
+        
+        assertTrue(results.get(0).isAllowed());
+        assertFalse(results.get(1).isAllowed());
+        assertTrue(results.get(2).isAllowed());
+        assertEquals(0, results.get(2).getRemaining());
+    }
+    
+    private RateLimitRequest request(String identifier, int permits) {
+        RateLimitRequest request = new RateLimitRequest();
+        request.setIdentifier(identifier);
+        request.setConfig(config);
+        request.setPermits(permits);
+        return request;
+    }
+}
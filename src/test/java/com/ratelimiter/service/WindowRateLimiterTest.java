@@ -0,0 +1,144 @@
+package com.ratelimiter.service;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.model.RateLimitResult;
+import com.ratelimiter.util.EmbeddedRedis;
+import com.ratelimiter.util.EmbeddedRedisExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowRateLimiterTest {
+
+    @RegisterExtension
+    static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension(2);
+
+    private final List<RedisTemplate<String, String>> templates = redis.getTemplates();
+
+    private RedisShardRouter router;
+    private RateLimiterServiceImpl rateLimiterService;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiterService = service(templates.subList(0, 1));
+    }
+
+    @Test
+    void testSlidingWindowAlgorithm() {
+        assertWindowLimit("sw:user");
+    }
+
+    @Test
+    void testFixedWindowAlgorithm() {
+        assertWindowLimit("fw:user");
+    }
+
+    @Test
+    void testWindowKeysLiveOnTheShardOfTheirIdentifier() {
+        rateLimiterService = service(templates);
+        for (int i = 0; i < 8; i++) {
+            assertWindowLimit("sw:sharded:" + i);
+            assertWindowLimit("fw:sharded:" + i);
+
+            String key = RedisKeys.key("fw:", "fw:sharded:" + i);
+            int shard = router.shardFor(key);
+            assertTrue(templates.get(shard).hasKey(key));
+            assertFalse(templates.get(1 - shard).hasKey(key));
+            String windows = RedisKeys.key("sw:", "sw:sharded:" + i) + ":";
+            shard = router.shardFor(windows);
+            assertFalse(templates.get(shard).keys(windows + "*").isEmpty());
+            assertTrue(templates.get(1 - shard).keys(windows + "*").isEmpty());
+        }
+    }
+
+    @Test
+    void testSlidingWindowResetDeletesOnlyItsOwnWindows() {
+        for (String identifier : List.of("sw:{acme}:user:1", "sw:{acme}:user:1:2", "sw:{acme}:user:[1]")) {
+            for (int i = 0; i < 3; i++) {
+                rateLimiterService.checkRateLimit(identifier);
+            }
+        }
+
+        rateLimiterService.resetRateLimit("sw:{acme}:user:1");
+
+        assertTrue(rateLimiterService.checkRateLimit("sw:{acme}:user:1").isAllowed());
+        assertFalse(rateLimiterService.checkRateLimit("sw:{acme}:user:1:2").isAllowed());
+        assertFalse(rateLimiterService.checkRateLimit("sw:{acme}:user:[1]").isAllowed());
+    }
+
+    @Test
+    void testPeekDoesNotCountTowardsTheWindow() {
+        for (String identifier : List.of("sw:peek", "fw:peek")) {
+            assertEquals(3, rateLimiterService.peek(identifier).getRemaining());
+            rateLimiterService.checkRateLimit(identifier);
+            assertEquals(2, rateLimiterService.peek(identifier).getRemaining());
+            assertEquals(2, rateLimiterService.peek(identifier).getRemaining());
+            rateLimiterService.tryAcquire(identifier, 2);
+
+            assertFalse(rateLimiterService.peek(identifier).isAllowed());
+        }
+    }
+
+    @Test
+    void testFixedWindowReportsWhenTheWindowResets() {
+        String identifier = "fw:reset";
+        long windowMillis = rateLimiterService.checkRateLimit(identifier).getResetTime() - System.currentTimeMillis();
+        assertTrue(windowMillis > 50_000, "a new window resets a whole window away");
+
+        // Partway through the window: 20 s of it are left
+        String key = RedisKeys.key("fw:", identifier);
+        templates.get(0).expire(key, Duration.ofSeconds(20));
+
+        RateLimitResult allowed = rateLimiterService.checkRateLimit(identifier);
+        assertTrue(allowed.isAllowed());
+        assertResetsWithin20Seconds(allowed.getResetTime());
+        rateLimiterService.checkRateLimit(identifier);
+
+        RateLimitResult denied = rateLimiterService.checkRateLimit(identifier);
+        assertFalse(denied.isAllowed());
+        assertResetsWithin20Seconds(denied.getResetTime());
+        assertTrue(denied.getRetryAfterMs() > 15_000 && denied.getRetryAfterMs() <= 20_000);
+        assertResetsWithin20Seconds(rateLimiterService.peek(identifier).getResetTime());
+    }
+
+    private static void assertResetsWithin20Seconds(long resetTime) {
+        long resetAfter = resetTime - System.currentTimeMillis();
+        assertTrue(resetAfter > 15_000 && resetAfter <= 20_000, "resets in " + resetAfter + " ms");
+    }
+
+    private void assertWindowLimit(String identifier) {
+        for (int i = 0; i < 3; i++) {
+            RateLimitResult result = rateLimiterService.checkRateLimit(identifier);
+            assertTrue(result.isAllowed());
+            assertEquals(2 - i, result.getRemaining());
+        }
+        assertFalse(rateLimiterService.checkRateLimit(identifier).isAllowed());
+
+        rateLimiterService.resetRateLimit(identifier);
+        assertTrue(rateLimiterService.checkRateLimit(identifier).isAllowed());
+    }
+
+    private RateLimiterServiceImpl service(List<RedisTemplate<String, String>> shards) {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.getPolicies().add(policy(SlidingWindowRateLimiter.ALGORITHM, "sw:*"));
+        properties.getPolicies().add(policy(FixedWindowRateLimiter.ALGORITHM, "fw:*"));
+        router = EmbeddedRedis.router(shards);
+        return EmbeddedRedis.services(router, properties,
+                new SlidingWindowRateLimiter(router), new FixedWindowRateLimiter(router)).rateLimiterService();
+    }
+
+    private static RateLimiterProperties.Policy policy(String algorithm, String match) {
+        RateLimiterProperties.Policy policy = new RateLimiterProperties.Policy();
+        policy.setName(algorithm);
+        policy.setMatch(List.of(match));
+        policy.setCapacity(3);
+        policy.setAlgorithm(algorithm);
+        return policy;
+    }
+}
@@ -0,0 +1,147 @@
+package com.ratelimiter.util;
+
+import com.ratelimiter.config.RateLimiterProperties;
+import com.ratelimiter.service.ActiveKeyTracker;
+import com.ratelimiter.service.DecisionCounters;
+import com.ratelimiter.service.DecisionMetricsPipeline;
+import com.ratelimiter.service.DeniedCache;
+import com.ratelimiter.service.FallbackRateLimiter;
+import com.ratelimiter.service.HotKeyDetector;
+import com.ratelimiter.service.LocalTokenBucketEngine;
+import com.ratelimiter.service.PolicyRegistry;
+import com.ratelimiter.service.RateLimitEngine;
+import com.ratelimiter.service.RateLimiterServiceImpl;
+import com.ratelimiter.service.RedisCircuitBreaker;
+import com.ratelimiter.service.RedisShardRouter;
+import com.ratelimiter.service.ShaScriptExecutor;
+import com.ratelimiter.service.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A throwaway Redis server on a free port, for plain JUnit tests that build the services by hand,
+ * and the factories those tests share: templates, shard routers and a wired rate limiter service.
+ */
+public class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final int port;
+    private final JedisConnectionFactory connectionFactory;
+    private final RedisTemplate<String, String> template;
+
+    public EmbeddedRedis() throws IOException {
+        port = freePort();
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = connectionFactory(port);
+        template = stringTemplate(connectionFactory);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * A string template on this server, closed with it.
+     */
+    public RedisTemplate<String, String> getTemplate() {
+        return template;
+    }
+
+    public JedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public static JedisConnectionFactory connectionFactory(int port) {
+        JedisConnectionFactory factory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    /**
+     * A template with string serializers for keys, values and hash entries.
+     */
+    public static RedisTemplate<String, String> stringTemplate(JedisConnectionFactory factory) {
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
+        template.setScriptExecutor(new ShaScriptExecutor<>(template));
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    public static void flushAll(RedisTemplate<String, String> template) {
+        template.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+    }
+
+    /**
+     * A router over these shards with the breaker settings the tests share, loose enough that
+     * a slow test machine does not open it.
+     */
+    public static RedisShardRouter router(List<RedisTemplate<String, String>> shards) {
+        return new RedisShardRouter(shards, List.of(), () -> new RedisCircuitBreaker(20, 10, 50, 250, 1000));
+    }
+
+    public static RedisShardRouter router(RedisTemplate<String, String> template) {
+        return router(List.of(template));
+    }
+
+    /**
+     * The services as the application wires them, over the given router: token bucket and local
+     * engines plus any extra ones, with active keys counted on the router's first shard.
+     */
+    public static Services services(RedisShardRouter router, RateLimiterProperties properties,
+                                    RateLimitEngine... extraEngines) {
+        HotKeyDetector hotKeyDetector = new HotKeyDetector(properties);
+        ActiveKeyTracker activeKeyTracker = new ActiveKeyTracker(router.templateFor(0), properties);
+        TokenBucketRateLimiter tokenBucket = new TokenBucketRateLimiter(router, properties, hotKeyDetector, activeKeyTracker);
+        LocalTokenBucketEngine localEngine = new LocalTokenBucketEngine(properties);
+        List<RateLimitEngine> engines = new ArrayList<>(List.of(tokenBucket, localEngine));
+        engines.addAll(List.of(extraEngines));
+        DecisionCounters decisionCounters = new DecisionCounters();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DecisionMetricsPipeline decisionMetrics = new DecisionMetricsPipeline(meterRegistry);
+        DeniedCache deniedCache = new DeniedCache(properties);
+        FallbackRateLimiter fallback = new FallbackRateLimiter(localEngine, tokenBucket, router, properties);
+        PolicyRegistry policyRegistry = new PolicyRegistry(properties);
+        RateLimiterServiceImpl rateLimiterService = new RateLimiterServiceImpl(router, engines, hotKeyDetector,
+                decisionCounters, activeKeyTracker, decisionMetrics, deniedCache, fallback, policyRegistry, properties);
+        return new Services(router, hotKeyDetector, activeKeyTracker, tokenBucket, localEngine, decisionCounters,
+                meterRegistry, decisionMetrics, deniedCache, fallback, policyRegistry, rateLimiterService);
+    }
+
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    public record Services(RedisShardRouter router, HotKeyDetector hotKeyDetector, ActiveKeyTracker activeKeyTracker,
+                           TokenBucketRateLimiter tokenBucket, LocalTokenBucketEngine localEngine,
+                           DecisionCounters decisionCounters, SimpleMeterRegistry meterRegistry,
+                           DecisionMetricsPipeline decisionMetrics, DeniedCache deniedCache,
+                           FallbackRateLimiter fallback, PolicyRegistry policyRegistry,
+                           RateLimiterServiceImpl rateLimiterService) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.ratelimiter.util;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Embedded Redis servers shared by the tests of one class: started before the first test,
+ * flushed before each, stopped after the last. Register it on a static field, so each test
+ * only builds its subject:
+ *
+ * <pre>
+ * &#64;RegisterExtension
+ * static final EmbeddedRedisExtension redis = new EmbeddedRedisExtension();
+ * </pre>
+ */
+public class EmbeddedRedisExtension implements BeforeAllCallback, BeforeEachCallback, AfterAllCallback {
+
+    private final int count;
+    private final List<EmbeddedRedis> servers = new ArrayList<>();
+
+    public EmbeddedRedisExtension() {
+        this(1);
+    }
+
+    /**
+     * @param count servers to start, e.g. one per shard
+     */
+    public EmbeddedRedisExtension(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws Exception {
+        for (int i = 0; i < count; i++) {
+            servers.add(new EmbeddedRedis());
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        getTemplates().forEach(EmbeddedRedis::flushAll);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        servers.forEach(EmbeddedRedis::close);
+        servers.clear();
+    }
+
+    /**
+     * A string template on the first server.
+     */
+    public RedisTemplate<String, String> getTemplate() {
+        return servers.get(0).getTemplate();
+    }
+
+    /**
+     * A string template per server, in start order.
+     */
+    public List<RedisTemplate<String, String>> getTemplates() {
+        return servers.stream().map(EmbeddedRedis::getTemplate).toList();
+    }
+
+    public int getPort() {
+        return servers.get(0).getPort();
+    }
+
+    public JedisConnectionFactory getConnectionFactory() {
+        return servers.get(0).getConnectionFactory();
+    }
+}
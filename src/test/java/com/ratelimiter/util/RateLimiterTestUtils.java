@@ -1,6 +1,7 @@
 package com.ratelimiter.util;
 
 import com.ratelimiter.model.TokenBucket;
+import com.ratelimiter.service.RedisKeys;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
@@ -25,7 +26,7 @@ public class RateLimiterTestUtils {
     
     public void createTestBucket(String identifier, long capacity, long tokens) {
         TokenBucket bucket = new TokenBucket(capacity, tokens, System.currentTimeMillis());
-        redisTemplate.opsForValue().set("rate_limit:" + identifier, bucket);
+        redisTemplate.opsForValue().set(RedisKeys.key(identifier), bucket);
     }
     
     public long getRedisKeyCount(String pattern) {